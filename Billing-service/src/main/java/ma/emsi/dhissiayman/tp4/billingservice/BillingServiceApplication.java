@@ -13,11 +13,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.util.Collection;
 
 @SpringBootApplication
 @EnableFeignClients
+@EnableScheduling
 public class BillingServiceApplication {
 
     public static void main(String[] args) {
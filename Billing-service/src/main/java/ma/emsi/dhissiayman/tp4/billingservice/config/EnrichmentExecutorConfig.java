@@ -0,0 +1,36 @@
+package ma.emsi.dhissiayman.tp4.billingservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor used to fan out customer/product lookups of a single bill
+ *
+ * Billing-service targets Java 17, so this is a bounded pool of platform threads
+ * rather than virtual threads. Lookups are blocking Feign calls: the pool is sized
+ * for I/O wait (billing.enrichment.pool-size) and the queue is bounded so a burst
+ * fails fast instead of piling up work that would miss its deadline anyway.
+ */
+@Configuration
+public class EnrichmentExecutorConfig {
+
+    @Bean(name = "enrichmentExecutor", destroyMethod = "shutdown")
+    public ExecutorService enrichmentExecutor(@Value("${billing.enrichment.pool-size:32}") int poolSize,
+                                              @Value("${billing.enrichment.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolExecutor executor = new TracingThreadPoolExecutor(
+                poolSize, poolSize,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("bill-enrichment-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,29 @@
+package ma.emsi.dhissiayman.tp4.billingservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor running background bill-generation jobs
+ *
+ * One worker per partition of the customer list; billing.generation.parallelism
+ * defaults to the number of available cores.
+ */
+@Configuration
+public class GenerationExecutorConfig {
+
+    @Bean(name = "generationExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService generationExecutor(@Value("${billing.generation.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new TracingThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("bill-generation-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
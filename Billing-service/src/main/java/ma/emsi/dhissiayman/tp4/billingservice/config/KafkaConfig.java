@@ -1,6 +1,7 @@
 package ma.emsi.dhissiayman.tp4.billingservice.config;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
@@ -8,9 +9,13 @@ import org.springframework.kafka.config.TopicBuilder;
 @Configuration
 public class KafkaConfig {
 
+    /**
+     * Partitioned so that consumers such as Sales-Analytics-service can read it concurrently
+     */
     @Bean
-    public NewTopic billTopic() {
+    public NewTopic billTopic(@Value("${billing.kafka.bill-topic.partitions:6}") int partitions) {
         return TopicBuilder.name("bill-topic")
+                .partitions(partitions)
                 .build();
     }
 }
@@ -0,0 +1,45 @@
+package ma.emsi.dhissiayman.tp4.billingservice.config;
+
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pool that runs each task with the MDC of the thread that submitted it,
+ * so the trace id of the request follows its work onto the pool
+ */
+public class TracingThreadPoolExecutor extends ThreadPoolExecutor {
+
+    public TracingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                     BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                     RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        if (context == null) {
+            super.execute(command);
+            return;
+        }
+        super.execute(() -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            MDC.setContextMap(context);
+            try {
+                command.run();
+            } finally {
+                if (previous != null) {
+                    MDC.setContextMap(previous);
+                } else {
+                    MDC.clear();
+                }
+            }
+        });
+    }
+}
@@ -3,27 +3,37 @@ package ma.emsi.dhissiayman.tp4.billingservice.entities;
 import jakarta.persistence.*;
 import lombok.*;
 import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Customer;
+import ma.emsi.dhissiayman.tp4.billingservice.events.BillCreatedEvent;
+import org.springframework.data.domain.AbstractAggregateRoot;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 @Entity
+@Table(indexes = @Index(name = "idx_bill_customer_id", columnList = "customerId"))
 @NoArgsConstructor @AllArgsConstructor @Getter @Setter @Builder
-public class Bill {
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+public class Bill extends AbstractAggregateRoot<Bill> {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "bill_seq")
+    @SequenceGenerator(name = "bill_seq", sequenceName = "bill_seq", allocationSize = 50)
     private Long id;
     private Date billingDate;
     private long customerId;
     @OneToMany(mappedBy = "bill")
+    @Builder.Default
     private List<ProductItem> productItems = new ArrayList<>();
     @Transient private Customer customer;
+    /**
+     * Denormalized sum of unitPrice * quantity over the product items
+     * Kept up to date by bill generation and ProductItemEventHandler
+     */
+    private double total;
 
-    public double getTotal() {
-        double total = 0;
-        for (ProductItem pi : productItems) {
-            total += pi.getUnitPrice() * pi.getQuantity();
-        }
-        return total;
+    /**
+     * Register a BillCreatedEvent, published by the repository on the next save
+     */
+    public void registerCreated() {
+        registerEvent(new BillCreatedEvent(this));
     }
 }
@@ -0,0 +1,12 @@
+package ma.emsi.dhissiayman.tp4.billingservice.entities;
+
+/**
+ * Aggregates over the whole bill table, computed by the database
+ */
+public interface BillTotals {
+    long getBillCount();
+    double getRevenue();
+    double getAverage();
+    double getMinimum();
+    double getMaximum();
+}
@@ -0,0 +1,10 @@
+package ma.emsi.dhissiayman.tp4.billingservice.entities;
+
+/**
+ * Revenue billed to one customer, computed by the database
+ */
+public interface CustomerRevenue {
+    long getCustomerId();
+    long getBillCount();
+    double getRevenue();
+}
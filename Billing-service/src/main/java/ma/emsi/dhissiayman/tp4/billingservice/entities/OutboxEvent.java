@@ -0,0 +1,28 @@
+package ma.emsi.dhissiayman.tp4.billingservice.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Kafka message waiting to be published by the OutboxRelay
+ * Rows are written in the same transaction as the change they describe
+ */
+@Entity
+@Table(name = "outbox_event")
+@NoArgsConstructor @AllArgsConstructor @Getter @Setter @Builder
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq", allocationSize = 50)
+    private Long id;
+    @Column(nullable = false)
+    private String topic;
+    private String messageKey;
+    @Lob
+    @Column(nullable = false)
+    private byte[] payload;
+    @Column(nullable = false)
+    private Instant createdAt;
+}
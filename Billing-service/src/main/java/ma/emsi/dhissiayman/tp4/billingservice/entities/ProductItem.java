@@ -9,7 +9,9 @@ import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Product;
 @Entity
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class ProductItem {
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_item_seq")
+    @SequenceGenerator(name = "product_item_seq", sequenceName = "product_item_seq", allocationSize = 500)
     private Long id;
     private String productId;
     @ManyToOne
@@ -0,0 +1,9 @@
+package ma.emsi.dhissiayman.tp4.billingservice.events;
+
+import ma.emsi.dhissiayman.tp4.billingservice.entities.Bill;
+
+/**
+ * Domain event registered on a Bill created through the REST repository
+ */
+public record BillCreatedEvent(Bill bill) {
+}
@@ -0,0 +1,12 @@
+package ma.emsi.dhissiayman.tp4.billingservice.events;
+
+import java.util.List;
+
+/**
+ * Payload of bill-topic messages, encoded with {@link BillEventCodec}
+ */
+public record BillEvent(long billId, long customerId, long billingDate, double total, List<LineItem> lineItems) {
+
+    public record LineItem(String productId, int quantity, double unitPrice) {
+    }
+}
@@ -0,0 +1,65 @@
+package ma.emsi.dhissiayman.tp4.billingservice.events;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoder of bill-topic messages
+ *
+ * Layout (version 1), integers as unsigned LEB128 varints, doubles as 8 bytes big-endian:
+ * <pre>
+ * version:byte billId:varint customerId:varint billingDate:varint(epoch ms) total:double
+ * itemCount:varint { productId:string quantity:varint unitPrice:double }*
+ * string = length:varint utf8-bytes
+ * </pre>
+ * New versions only append fields, so a reader decodes any version at least
+ * equal to its own and ignores the trailing bytes it does not know.
+ * Decoded by EventDecoder in Sales-Analytics-service; BillEventCodecTest and
+ * EventDecoderTest pin the same bytes on both sides.
+ */
+public final class BillEventCodec {
+    public static final byte VERSION = 1;
+
+    private BillEventCodec() {
+    }
+
+    public static byte[] encode(BillEvent event) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + event.lineItems().size() * 24);
+        out.write(VERSION);
+        writeVarLong(out, event.billId());
+        writeVarLong(out, event.customerId());
+        writeVarLong(out, event.billingDate());
+        writeDouble(out, event.total());
+        writeVarLong(out, event.lineItems().size());
+        for (BillEvent.LineItem item : event.lineItems()) {
+            writeString(out, item.productId());
+            writeVarLong(out, item.quantity());
+            writeDouble(out, item.unitPrice());
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift));
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] utf8 = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, utf8.length);
+        out.writeBytes(utf8);
+    }
+}
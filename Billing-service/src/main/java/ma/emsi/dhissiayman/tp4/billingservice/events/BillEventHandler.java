@@ -1,26 +1,61 @@
 package ma.emsi.dhissiayman.tp4.billingservice.events;
 
 import ma.emsi.dhissiayman.tp4.billingservice.entities.Bill;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.OutboxEvent;
+import ma.emsi.dhissiayman.tp4.billingservice.repository.OutboxEventRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.rest.core.annotation.HandleAfterCreate;
+import org.springframework.data.rest.core.annotation.HandleBeforeCreate;
 import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Publishes bill creations on bill-topic through the transactional outbox
+ *
+ * The outbox row is written in the transaction that inserts the bill, so the
+ * REST call never waits on Kafka and a bill is never stored without its event.
+ * {@link OutboxRelay} sends the rows to Kafka afterwards. Messages are
+ * {@link BillEventCodec} encoded and keyed by customer id, so all the bills
+ * of a customer land on the same partition.
+ */
 @Component
 @RepositoryEventHandler(Bill.class)
 public class BillEventHandler {
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final OutboxEventRepository outboxEventRepository;
     private static final Logger logger = LoggerFactory.getLogger(BillEventHandler.class);
 
-    public BillEventHandler(KafkaTemplate<String, String> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
+    public BillEventHandler(OutboxEventRepository outboxEventRepository) {
+        this.outboxEventRepository = outboxEventRepository;
     }
 
-    @HandleAfterCreate
+    @HandleBeforeCreate
     public void handleBillCreate(Bill bill) {
+        // Published by BillRepository.save, inside its transaction
+        bill.registerCreated();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onBillCreated(BillCreatedEvent event) {
+        Bill bill = event.bill();
         logger.info("New bill created with ID: {}", bill.getId());
-        kafkaTemplate.send("bill-topic", "New Bill Created for Customer: " + bill.getCustomerId() + " with Amount: " + bill.getTotal());
+        outboxEventRepository.save(OutboxEvent.builder()
+                .topic("bill-topic")
+                .messageKey(String.valueOf(bill.getCustomerId()))
+                .payload(BillEventCodec.encode(toEvent(bill)))
+                .createdAt(Instant.now())
+                .build());
+    }
+
+    private static BillEvent toEvent(Bill bill) {
+        List<BillEvent.LineItem> lineItems = bill.getProductItems() == null ? List.of() : bill.getProductItems().stream()
+                .map(item -> new BillEvent.LineItem(item.getProductId(), item.getQuantity(), item.getUnitPrice()))
+                .toList();
+        long billingDate = bill.getBillingDate() != null ? bill.getBillingDate().getTime() : System.currentTimeMillis();
+        return new BillEvent(bill.getId(), bill.getCustomerId(), billingDate, bill.getTotal(), lineItems);
     }
 }
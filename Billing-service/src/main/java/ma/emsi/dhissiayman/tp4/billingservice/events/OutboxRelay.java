@@ -0,0 +1,87 @@
+package ma.emsi.dhissiayman.tp4.billingservice.events;
+
+import ma.emsi.dhissiayman.tp4.billingservice.entities.OutboxEvent;
+import ma.emsi.dhissiayman.tp4.billingservice.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbox Relay
+ *
+ * Drains the outbox_event table to Kafka. Each run takes up to
+ * {@code billing.outbox.batch-size} rows, hands them all to the producer
+ * (which groups them per partition, see linger.ms and compression.type),
+ * waits for the broker acknowledgements and only then deletes the rows.
+ * Delivery is at-least-once: a row is sent again if the relay stops
+ * between the send and the delete.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long sendTimeoutMs;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       KafkaTemplate<String, byte[]> kafkaTemplate,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${billing.outbox.batch-size:500}") int batchSize,
+                       @Value("${billing.outbox.send-timeout-ms:10000}") long sendTimeoutMs) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+
+    @Scheduled(fixedDelayString = "${billing.outbox.poll-interval-ms:200}")
+    public void relay() {
+        try {
+            Integer sent;
+            do {
+                sent = transactionTemplate.execute(status -> relayBatch());
+            } while (sent != null && sent == batchSize);
+        } catch (RuntimeException e) {
+            // Rows stay in the outbox and are retried on the next run
+            logger.warn("Outbox relay failed: {}", e.getMessage());
+        }
+    }
+
+    private int relayBatch() {
+        List<OutboxEvent> pending = outboxEventRepository.findPending(PageRequest.of(0, batchSize));
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        List<CompletableFuture<?>> sends = new ArrayList<>(pending.size());
+        for (OutboxEvent event : pending) {
+            sends.add(kafkaTemplate.send(event.getTopic(), event.getMessageKey(), event.getPayload()));
+        }
+        kafkaTemplate.flush();
+        try {
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while relaying outbox events", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("could not send " + pending.size() + " events", e);
+        }
+        outboxEventRepository.deleteAllInBatch(pending);
+        logger.debug("Relayed {} outbox events", pending.size());
+        return pending.size();
+    }
+}
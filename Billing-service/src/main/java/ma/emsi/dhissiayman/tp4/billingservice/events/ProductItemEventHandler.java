@@ -0,0 +1,49 @@
+package ma.emsi.dhissiayman.tp4.billingservice.events;
+
+import ma.emsi.dhissiayman.tp4.billingservice.entities.ProductItem;
+import ma.emsi.dhissiayman.tp4.billingservice.repository.BillRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.rest.core.annotation.HandleAfterCreate;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps Bill.total in sync when product items are changed through the REST repository
+ */
+@Component
+@RepositoryEventHandler(ProductItem.class)
+public class ProductItemEventHandler {
+    private final BillRepository billRepository;
+    private static final Logger logger = LoggerFactory.getLogger(ProductItemEventHandler.class);
+
+    public ProductItemEventHandler(BillRepository billRepository) {
+        this.billRepository = billRepository;
+    }
+
+    @HandleAfterCreate
+    public void handleProductItemCreate(ProductItem productItem) {
+        recomputeTotal(productItem);
+    }
+
+    @HandleAfterSave
+    public void handleProductItemSave(ProductItem productItem) {
+        recomputeTotal(productItem);
+    }
+
+    @HandleAfterDelete
+    public void handleProductItemDelete(ProductItem productItem) {
+        recomputeTotal(productItem);
+    }
+
+    private void recomputeTotal(ProductItem productItem) {
+        if (productItem.getBill() == null || productItem.getBill().getId() == null) {
+            return;
+        }
+        Long billId = productItem.getBill().getId();
+        billRepository.recomputeTotal(billId);
+        logger.debug("Recomputed total of bill {}", billId);
+    }
+}
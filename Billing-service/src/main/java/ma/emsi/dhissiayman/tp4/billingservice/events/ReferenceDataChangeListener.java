@@ -0,0 +1,44 @@
+package ma.emsi.dhissiayman.tp4.billingservice.events;
+
+import ma.emsi.dhissiayman.tp4.billingservice.service.ReferenceDataCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the customer/product near-cache consistent with the owning services
+ *
+ * Every Billing-service instance uses its own consumer group so that each
+ * instance receives every change and evicts it from its local cache. The group
+ * is named after the instance address and port (billing.cache.consumer-group),
+ * so a restarted instance rejoins its group instead of leaving one behind.
+ */
+@Component
+public class ReferenceDataChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceDataChangeListener.class);
+    private static final String GROUP_ID = "${billing.cache.consumer-group:"
+            + "${spring.application.name}-cache-${spring.cloud.client.ip-address}-${server.port}}";
+
+    private final ReferenceDataCache referenceDataCache;
+
+    public ReferenceDataChangeListener(ReferenceDataCache referenceDataCache) {
+        this.referenceDataCache = referenceDataCache;
+    }
+
+    @KafkaListener(topics = "customer-topic", groupId = GROUP_ID)
+    public void onCustomerChanged(String customerId) {
+        logger.debug("Evicting customer {} from cache", customerId);
+        try {
+            referenceDataCache.evictCustomer(Long.valueOf(customerId));
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring malformed customer change event: {}", customerId);
+        }
+    }
+
+    @KafkaListener(topics = "product-topic", groupId = GROUP_ID)
+    public void onProductChanged(String productId) {
+        logger.debug("Evicting product {} from cache", productId);
+        referenceDataCache.evictProduct(productId);
+    }
+}
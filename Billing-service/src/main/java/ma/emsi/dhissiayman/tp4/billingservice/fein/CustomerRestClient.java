@@ -3,9 +3,13 @@ package ma.emsi.dhissiayman.tp4.billingservice.fein;
 
 import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Customer;
 import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.PagedModel;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.Collection;
 
 @FeignClient(name = "CUSTOMER-SERVICE")
 public interface CustomerRestClient {
@@ -15,4 +19,10 @@ public interface CustomerRestClient {
     @GetMapping("/api/customers")
     PagedModel<Customer> getAllCustomers();
 
-}
\ No newline at end of file
+    @GetMapping("/api/customers")
+    PagedModel<Customer> getCustomers(@RequestParam("page") int page, @RequestParam("size") int size);
+
+    @GetMapping("/api/customers/search/byIds")
+    CollectionModel<Customer> getCustomersByIds(@RequestParam("ids") Collection<Long> ids);
+
+}
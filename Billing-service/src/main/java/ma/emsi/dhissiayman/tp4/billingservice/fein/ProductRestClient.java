@@ -2,9 +2,13 @@ package ma.emsi.dhissiayman.tp4.billingservice.fein;
 
 import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Product;
 import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.PagedModel;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.Collection;
 
 @FeignClient(name = "INVENTORY-SERVICE")
 public interface ProductRestClient {
@@ -12,4 +16,8 @@ public interface ProductRestClient {
     Product getProductById(@PathVariable String id);
     @GetMapping("/api/products")
     PagedModel<Product> getAllProducts();
+    @GetMapping("/api/products")
+    PagedModel<Product> getProducts(@RequestParam("page") int page, @RequestParam("size") int size);
+    @GetMapping("/api/products/search/byIds")
+    CollectionModel<Product> getProductsByIds(@RequestParam("ids") Collection<String> ids);
 }
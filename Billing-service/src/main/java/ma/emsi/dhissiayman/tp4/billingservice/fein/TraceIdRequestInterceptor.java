@@ -0,0 +1,23 @@
+package ma.emsi.dhissiayman.tp4.billingservice.fein;
+
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+import ma.emsi.dhissiayman.tp4.billingservice.config.TraceIdFilter;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+
+/**
+ * Forwards the trace id of the current request on every Feign call,
+ * so CUSTOMER-SERVICE and INVENTORY-SERVICE logs can be joined with the gateway access log
+ */
+@Component
+public class TraceIdRequestInterceptor implements RequestInterceptor {
+
+    @Override
+    public void apply(RequestTemplate template) {
+        String traceId = MDC.get(TraceIdFilter.MDC_KEY);
+        if (traceId != null) {
+            template.header(TraceIdFilter.TRACE_ID_HEADER, traceId);
+        }
+    }
+}
@@ -1,8 +1,66 @@
 package ma.emsi.dhissiayman.tp4.billingservice.repository;
 
 import ma.emsi.dhissiayman.tp4.billingservice.entities.Bill;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.BillTotals;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.CustomerRevenue;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 
 public interface BillRepository extends JpaRepository<Bill, Long> {
+
+    /**
+     * Keyset (cursor) page, phase one: ids of the bills after the cursor, in id order
+     * Only the first page of the Pageable is ever requested, so no OFFSET scan is needed
+     */
+    @Query("select b.id from Bill b where b.id > :afterId order by b.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Keyset (cursor) page, phase two: the bills of those ids with their product items
+     * Paginating ids first keeps LIMIT on the bill rows instead of the joined item rows
+     */
+    @EntityGraph(attributePaths = "productItems")
+    @Query("select b from Bill b where b.id in :ids order by b.id")
+    List<Bill> findWithProductItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @EntityGraph(attributePaths = "productItems")
+    @Query("select b from Bill b order by b.id")
+    List<Bill> findAllWithProductItems();
+
+    @EntityGraph(attributePaths = "productItems")
+    Optional<Bill> findWithProductItemsById(Long id);
+
+    @Query("select distinct b.customerId from Bill b")
+    Set<Long> findDistinctCustomerIds();
+
+    @Query("select count(b) as billCount, coalesce(sum(b.total), 0) as revenue, coalesce(avg(b.total), 0) as average, "
+            + "coalesce(min(b.total), 0) as minimum, coalesce(max(b.total), 0) as maximum from Bill b")
+    BillTotals computeTotals();
+
+    @Query("select b.customerId as customerId, count(b) as billCount, sum(b.total) as revenue "
+            + "from Bill b group by b.customerId order by sum(b.total) desc")
+    List<CustomerRevenue> findTopCustomersByRevenue(Pageable pageable);
+
+    /**
+     * Recompute the denormalized total of one bill from its product items
+     * Not exported by Spring Data REST: it would otherwise be reachable through a GET
+     */
+    @RestResource(exported = false)
+    @Modifying
+    @Transactional
+    @Query("update Bill b set b.total = (select coalesce(sum(pi.unitPrice * pi.quantity), 0) "
+            + "from ProductItem pi where pi.bill.id = :billId) where b.id = :billId")
+    int recomputeTotal(@Param("billId") Long billId);
 }
@@ -0,0 +1,229 @@
+package ma.emsi.dhissiayman.tp4.billingservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Customer;
+import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Product;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.Bill;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.ProductItem;
+import ma.emsi.dhissiayman.tp4.billingservice.fein.CustomerRestClient;
+import ma.emsi.dhissiayman.tp4.billingservice.fein.ProductRestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bill Enrichment Service
+ *
+ * Populates the transient customer and product data of bills.
+ * Instead of one Feign call per bill and per product item, the distinct
+ * ids of the whole result are collected and resolved through the bulk
+ * "byIds" search endpoints of CUSTOMER-SERVICE and INVENTORY-SERVICE,
+ * in chunks of {@code billing.enrichment.batch-size} ids, then joined in memory.
+ *
+ * Single-bill reads fan the remaining per-id calls out on the enrichment
+ * executor, so their latency is the slowest call rather than the sum of all calls.
+ *
+ * Both paths read through the {@link ReferenceDataCache} first.
+ */
+@Service
+public class BillEnrichmentService {
+    private static final Logger logger = LoggerFactory.getLogger(BillEnrichmentService.class);
+
+    private final CustomerRestClient customerRestClient;
+    private final ProductRestClient productRestClient;
+    private final ReferenceDataCache referenceDataCache;
+    private final ExecutorService enrichmentExecutor;
+    private final int batchSize;
+    private final long callTimeoutMs;
+    private final long deadlineMs;
+
+    public BillEnrichmentService(CustomerRestClient customerRestClient,
+                                 ProductRestClient productRestClient,
+                                 ReferenceDataCache referenceDataCache,
+                                 @Qualifier("enrichmentExecutor") ExecutorService enrichmentExecutor,
+                                 @Value("${billing.enrichment.batch-size:200}") int batchSize,
+                                 @Value("${billing.enrichment.call-timeout-ms:2000}") long callTimeoutMs,
+                                 @Value("${billing.enrichment.deadline-ms:3000}") long deadlineMs) {
+        this.customerRestClient = customerRestClient;
+        this.productRestClient = productRestClient;
+        this.referenceDataCache = referenceDataCache;
+        this.enrichmentExecutor = enrichmentExecutor;
+        this.batchSize = batchSize;
+        this.callTimeoutMs = callTimeoutMs;
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Enrich bills with customer and product data using batched lookups
+     * If a remote service is unavailable, bills are returned without that data
+     */
+    public void enrich(List<Bill> bills) {
+        if (bills.isEmpty()) {
+            return;
+        }
+        Set<Long> customerIds = new LinkedHashSet<>();
+        Set<String> productIds = new LinkedHashSet<>();
+        for (Bill bill : bills) {
+            customerIds.add(bill.getCustomerId());
+            for (ProductItem productItem : bill.getProductItems()) {
+                productIds.add(productItem.getProductId());
+            }
+        }
+
+        Map<Long, Customer> customers = fetchCustomers(customerIds);
+        Map<String, Product> products = fetchProducts(productIds);
+        logger.debug("Resolved {}/{} customers and {}/{} products for {} bills",
+                customers.size(), customerIds.size(), products.size(), productIds.size(), bills.size());
+
+        for (Bill bill : bills) {
+            bill.setCustomer(customers.get(bill.getCustomerId()));
+            for (ProductItem productItem : bill.getProductItems()) {
+                productItem.setProduct(products.get(productItem.getProductId()));
+            }
+        }
+    }
+
+    /**
+     * Enrich a single bill, resolving its customer and every distinct product in parallel
+     * Each lookup is bounded by billing.enrichment.call-timeout-ms and the whole fan-out by
+     * billing.enrichment.deadline-ms; lookups that miss their budget are left empty
+     */
+    public void enrichConcurrently(Bill bill) {
+        CompletableFuture<Customer> customerCall = cachedLookup(referenceDataCache.customers(),
+                bill.getCustomerId(), customerRestClient::getCustomerById);
+        Map<String, CompletableFuture<Product>> productCalls = new HashMap<>();
+        for (ProductItem productItem : bill.getProductItems()) {
+            productCalls.computeIfAbsent(productItem.getProductId(),
+                    productId -> cachedLookup(referenceDataCache.products(), productId, productRestClient::getProductById));
+        }
+
+        List<CompletableFuture<?>> calls = new ArrayList<>(productCalls.values());
+        calls.add(customerCall);
+        try {
+            CompletableFuture.allOf(calls.toArray(new CompletableFuture[0]))
+                    .get(deadlineMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Enrichment of bill {} exceeded its {} ms deadline", bill.getId(), deadlineMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Individual failures are reported below, the other results are still used
+        }
+
+        bill.setCustomer(resultOrNull(customerCall, "customer " + bill.getCustomerId(), bill));
+        for (ProductItem productItem : bill.getProductItems()) {
+            CompletableFuture<Product> call = productCalls.get(productItem.getProductId());
+            productItem.setProduct(resultOrNull(call, "product " + productItem.getProductId(), bill));
+        }
+        calls.forEach(call -> call.cancel(false));
+    }
+
+    private <K, V> CompletableFuture<V> cachedLookup(Cache<K, V> cache, K id, Function<K, V> loader) {
+        V cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return lookup(() -> loader.apply(id)).thenApply(value -> {
+            if (value != null) {
+                cache.put(id, value);
+            }
+            return value;
+        });
+    }
+
+    private <T> CompletableFuture<T> lookup(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, enrichmentExecutor)
+                    .orTimeout(callTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private <T> T resultOrNull(CompletableFuture<T> call, String what, Bill bill) {
+        if (call.isDone() && !call.isCompletedExceptionally()) {
+            return call.join();
+        }
+        if (call.isDone()) {
+            Throwable cause = call.handle((value, error) -> error).join();
+            logger.warn("Failed to fetch {} for bill {}: {}", what, bill.getId(),
+                    cause instanceof CompletionException && cause.getCause() != null
+                            ? cause.getCause().toString() : String.valueOf(cause));
+        } else {
+            logger.warn("Failed to fetch {} for bill {}: deadline exceeded", what, bill.getId());
+        }
+        // If the remote service is unavailable or slow, continue without this data
+        return null;
+    }
+
+    /**
+     * Resolve customers from the near-cache, fetching only the missing ids in batches
+     */
+    public Map<Long, Customer> fetchCustomers(Collection<Long> ids) {
+        return referenceDataCache.customers().getAll(ids, missing -> fetchInBatches(new ArrayList<Long>(missing),
+                batch -> customerRestClient.getCustomersByIds(batch).getContent(),
+                Customer::getId, "customers"));
+    }
+
+    /**
+     * Resolve products from the near-cache, fetching only the missing ids in batches
+     */
+    public Map<String, Product> fetchProducts(Collection<String> ids) {
+        return referenceDataCache.products().getAll(ids, missing -> fetchInBatches(new ArrayList<String>(missing),
+                batch -> productRestClient.getProductsByIds(batch).getContent(),
+                Product::getId, "products"));
+    }
+
+    private <K, V> Map<K, V> fetchInBatches(Collection<K> ids,
+                                             Function<List<K>, Collection<V>> loader,
+                                             Function<V, K> idExtractor,
+                                             String what) {
+        Map<K, V> result = new HashMap<>();
+        List<K> batch = new ArrayList<>(Math.min(batchSize, ids.size()));
+        for (K id : ids) {
+            batch.add(id);
+            if (batch.size() == batchSize) {
+                loadBatch(batch, loader, idExtractor, result, what);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            loadBatch(batch, loader, idExtractor, result, what);
+        }
+        return result;
+    }
+
+    private <K, V> void loadBatch(List<K> batch,
+                                  Function<List<K>, Collection<V>> loader,
+                                  Function<V, K> idExtractor,
+                                  Map<K, V> result,
+                                  String what) {
+        try {
+            for (V value : loader.apply(batch)) {
+                result.put(idExtractor.apply(value), value);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to fetch {} {}: {}", batch.size(), what, e.getMessage());
+            // If the remote service is unavailable, continue without this data
+        }
+    }
+}
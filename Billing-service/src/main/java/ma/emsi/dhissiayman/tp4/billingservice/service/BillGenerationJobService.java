@@ -0,0 +1,184 @@
+package ma.emsi.dhissiayman.tp4.billingservice.service;
+
+import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Customer;
+import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Product;
+import ma.emsi.dhissiayman.tp4.billingservice.repository.BillRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * Bill Generation Job Service
+ *
+ * Runs bill generation in the background. A job reads customers and products,
+ * splits the customers without a bill into contiguous ranges (one per worker
+ * of the generation executor) and generates each range in parallel through
+ * {@link BillGenerationService}. Only one job runs at a time so two jobs never
+ * bill the same customer.
+ */
+@Service
+public class BillGenerationJobService {
+    private static final Logger logger = LoggerFactory.getLogger(BillGenerationJobService.class);
+
+    private final BillGenerationService billGenerationService;
+    private final BillRepository billRepository;
+    private final ExecutorService generationExecutor;
+    private final int parallelism;
+    private final int retainedJobs;
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+    private volatile GenerationJob activeJob;
+
+    public BillGenerationJobService(BillGenerationService billGenerationService,
+                                    BillRepository billRepository,
+                                    @Qualifier("generationExecutor") ExecutorService generationExecutor,
+                                    @Value("${billing.generation.parallelism:0}") int parallelism,
+                                    @Value("${billing.generation.retained-jobs:20}") int retainedJobs) {
+        this.billGenerationService = billGenerationService;
+        this.billRepository = billRepository;
+        this.generationExecutor = generationExecutor;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.retainedJobs = retainedJobs;
+    }
+
+    /**
+     * Submit a generation job, or return empty if another job is still running
+     */
+    public synchronized Optional<GenerationJob> submit() {
+        if (activeJob != null && !activeJob.isFinished()) {
+            return Optional.empty();
+        }
+        GenerationJob job = new GenerationJob(UUID.randomUUID().toString());
+        evictFinishedJobs();
+        jobs.put(job.getId(), job);
+        activeJob = job;
+
+        CompletableFuture.supplyAsync(() -> plan(job), generationExecutor)
+                .thenCompose(partitions -> runPartitions(job, partitions))
+                .whenComplete((ignored, error) -> complete(job, error));
+        logger.info("Submitted bill generation job {}", job.getId());
+        return Optional.of(job);
+    }
+
+    public Optional<GenerationJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * Ask a job to stop; workers stop after their current chunk
+     */
+    public Optional<GenerationJob> cancel(String jobId) {
+        GenerationJob job = jobs.get(jobId);
+        if (job != null && !job.isFinished()) {
+            job.requestCancel();
+            logger.info("Cancellation requested for bill generation job {}", jobId);
+        }
+        return Optional.ofNullable(job);
+    }
+
+    private Plan plan(GenerationJob job) {
+        List<Customer> customers = billGenerationService.fetchAllCustomers();
+        List<Product> products = billGenerationService.fetchAllProducts();
+        if (customers.isEmpty()) {
+            throw new IllegalStateException("No customers found. Please create customers first.");
+        }
+        if (products.isEmpty()) {
+            throw new IllegalStateException("No products found. Please create products first.");
+        }
+        Set<Long> customersWithBills = billRepository.findDistinctCustomerIds();
+        List<Long> customerIds = customers.stream()
+                .map(Customer::getId)
+                .filter(customerId -> !customersWithBills.contains(customerId))
+                .sorted()
+                .collect(Collectors.toList());
+
+        int workers = Math.max(1, Math.min(parallelism, customerIds.size()));
+        int rangeSize = (customerIds.size() + workers - 1) / workers;
+        List<List<Long>> ranges = new ArrayList<>(workers);
+        for (int from = 0; from < customerIds.size(); from += rangeSize) {
+            ranges.add(customerIds.subList(from, Math.min(from + rangeSize, customerIds.size())));
+        }
+        job.start(customerIds.size(), ranges.size());
+        logger.info("Job {}: {} customers to bill with {} products in {} range(s)",
+                job.getId(), customerIds.size(), products.size(), ranges.size());
+        return new Plan(ranges, products);
+    }
+
+    private CompletableFuture<Void> runPartitions(GenerationJob job, Plan plan) {
+        CompletableFuture<?>[] workers = plan.ranges().stream()
+                .map(range -> CompletableFuture.runAsync(() -> runPartition(job, range, plan.products()), generationExecutor))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(workers);
+    }
+
+    private void runPartition(GenerationJob job, List<Long> customerIds, List<Product> products) {
+        try {
+            billGenerationService.generate(customerIds, products, new BillGenerationService.ProgressListener() {
+                private int lastBills;
+                private long lastItems;
+
+                @Override
+                public void onChunk(int billsCreated, long productItemsCreated) {
+                    job.addProgress(billsCreated - lastBills, productItemsCreated - lastItems);
+                    lastBills = billsCreated;
+                    lastItems = productItemsCreated;
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return job.isCancelRequested();
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Job {}: partition starting at customer {} failed", job.getId(), customerIds.get(0), e);
+            job.addError("Customers " + customerIds.get(0) + ".." + customerIds.get(customerIds.size() - 1)
+                    + ": " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private void complete(GenerationJob job, Throwable error) {
+        if (error != null) {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            if (job.getStatus() == GenerationJob.Status.PENDING) {
+                job.addError(cause.getMessage());
+            }
+            job.finish(GenerationJob.Status.FAILED, "Error generating bills: " + cause.getMessage());
+        } else if (job.isCancelRequested()) {
+            job.finish(GenerationJob.Status.CANCELLED, "Bill generation cancelled");
+        } else {
+            job.finish(GenerationJob.Status.COMPLETED, "Bills generated successfully!");
+        }
+        logger.info("Bill generation job {} finished: {}", job.getId(), job.toView());
+    }
+
+    private void evictFinishedJobs() {
+        if (jobs.size() < retainedJobs) {
+            return;
+        }
+        Iterator<GenerationJob> it = jobs.values().stream()
+                .filter(GenerationJob::isFinished)
+                .sorted(Comparator.comparingLong(GenerationJob::getSubmittedAt))
+                .iterator();
+        while (jobs.size() >= retainedJobs && it.hasNext()) {
+            jobs.remove(it.next().getId());
+        }
+    }
+
+    private record Plan(List<List<Long>> ranges, List<Product> products) {
+    }
+}
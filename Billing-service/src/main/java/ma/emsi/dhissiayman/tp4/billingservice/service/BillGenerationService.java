@@ -0,0 +1,149 @@
+package ma.emsi.dhissiayman.tp4.billingservice.service;
+
+import jakarta.persistence.EntityManager;
+import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Customer;
+import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Product;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.Bill;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.ProductItem;
+import ma.emsi.dhissiayman.tp4.billingservice.fein.CustomerRestClient;
+import ma.emsi.dhissiayman.tp4.billingservice.fein.ProductRestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.hateoas.PagedModel;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+
+/**
+ * Bill Generation Service
+ *
+ * Bulk path behind POST /bills/generate. Bills and product items use pooled
+ * sequence ids, so Hibernate can group the inserts into JDBC batches
+ * (see hibernate.jdbc.batch_size). Customers are written in chunks of about
+ * {@code billing.generation.items-per-chunk} product items, each chunk in its
+ * own transaction, and the persistence context is cleared after every chunk.
+ */
+@Service
+public class BillGenerationService {
+    private static final Logger logger = LoggerFactory.getLogger(BillGenerationService.class);
+    private static final int REMOTE_PAGE_SIZE = 1000;
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final CustomerRestClient customerRestClient;
+    private final ProductRestClient productRestClient;
+    private final int itemsPerChunk;
+
+    public BillGenerationService(EntityManager entityManager,
+                                 PlatformTransactionManager transactionManager,
+                                 CustomerRestClient customerRestClient,
+                                 ProductRestClient productRestClient,
+                                 @Value("${billing.generation.items-per-chunk:5000}") int itemsPerChunk) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.customerRestClient = customerRestClient;
+        this.productRestClient = productRestClient;
+        this.itemsPerChunk = itemsPerChunk;
+    }
+
+    /**
+     * Progress callback, invoked after each committed chunk with the running totals
+     * Generation stops before the next chunk once isCancelled() returns true
+     */
+    public interface ProgressListener {
+        void onChunk(int billsCreated, long productItemsCreated);
+
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    /**
+     * Read every customer from CUSTOMER-SERVICE, page by page
+     */
+    public List<Customer> fetchAllCustomers() {
+        return fetchAllPages(page -> customerRestClient.getCustomers(page, REMOTE_PAGE_SIZE));
+    }
+
+    /**
+     * Read every product from INVENTORY-SERVICE, page by page
+     */
+    public List<Product> fetchAllProducts() {
+        return fetchAllPages(page -> productRestClient.getProducts(page, REMOTE_PAGE_SIZE));
+    }
+
+    private <T> List<T> fetchAllPages(IntFunction<PagedModel<T>> pageLoader) {
+        List<T> all = new ArrayList<>();
+        int page = 0;
+        while (true) {
+            PagedModel<T> model = pageLoader.apply(page);
+            all.addAll(model.getContent());
+            PagedModel.PageMetadata metadata = model.getMetadata();
+            if (metadata == null || page + 1 >= metadata.getTotalPages() || model.getContent().isEmpty()) {
+                return all;
+            }
+            page++;
+        }
+    }
+
+    /**
+     * Create one bill per customer, holding one product item per product
+     * Chunks already committed are kept if generation is cancelled
+     *
+     * @return the number of bills created
+     */
+    public int generate(List<Long> customerIds, List<Product> products, ProgressListener progress) {
+        if (customerIds.isEmpty() || products.isEmpty()) {
+            return 0;
+        }
+        int billsPerChunk = Math.max(1, itemsPerChunk / products.size());
+        int billsCreated = 0;
+        long itemsCreated = 0;
+        for (int from = 0; from < customerIds.size() && !progress.isCancelled(); from += billsPerChunk) {
+            List<Long> chunk = customerIds.subList(from, Math.min(from + billsPerChunk, customerIds.size()));
+            transactionTemplate.executeWithoutResult(status -> persistChunk(chunk, products));
+            billsCreated += chunk.size();
+            itemsCreated += (long) chunk.size() * products.size();
+            progress.onChunk(billsCreated, itemsCreated);
+        }
+        return billsCreated;
+    }
+
+    private void persistChunk(List<Long> customerIds, List<Product> products) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Date billingDate = new Date();
+        List<ProductItem> productItems = new ArrayList<>(products.size());
+        for (Long customerId : customerIds) {
+            Bill bill = Bill.builder()
+                    .billingDate(billingDate)
+                    .customerId(customerId)
+                    .build();
+            double total = 0;
+            productItems.clear();
+            for (Product product : products) {
+                ProductItem productItem = ProductItem.builder()
+                        .bill(bill)
+                        .productId(product.getId())
+                        .quantity(1 + random.nextInt(10))
+                        .unitPrice(product.getPrice())
+                        .build();
+                total += productItem.getUnitPrice() * productItem.getQuantity();
+                productItems.add(productItem);
+            }
+            // Total is set before persist so the bill row is inserted once, never updated
+            bill.setTotal(total);
+            entityManager.persist(bill);
+            productItems.forEach(entityManager::persist);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        logger.debug("Persisted chunk of {} bills", customerIds.size());
+    }
+}
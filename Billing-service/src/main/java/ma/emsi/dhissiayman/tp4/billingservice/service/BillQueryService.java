@@ -0,0 +1,157 @@
+package ma.emsi.dhissiayman.tp4.billingservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Customer;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.Bill;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.BillTotals;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.CustomerRevenue;
+import ma.emsi.dhissiayman.tp4.billingservice.repository.BillRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bill Query Service
+ *
+ * Keyset (cursor) pagination and NDJSON streaming over the bill table.
+ * Each page is read inside its own read-only transaction, so the persistence
+ * context is discarded after every page and memory stays flat whatever the
+ * size of the table. Pages are enriched and serialized after the transaction,
+ * so no connection is held during the calls to customer-service and Inventory-service.
+ */
+@Service
+public class BillQueryService {
+    private static final Logger logger = LoggerFactory.getLogger(BillQueryService.class);
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final BillRepository billRepository;
+    private final BillEnrichmentService billEnrichmentService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public BillQueryService(BillRepository billRepository,
+                            BillEnrichmentService billEnrichmentService,
+                            ObjectMapper objectMapper,
+                            PlatformTransactionManager transactionManager) {
+        this.billRepository = billRepository;
+        this.billEnrichmentService = billEnrichmentService;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Read one enriched page of bills with an id greater than the cursor
+     */
+    public List<Bill> findPage(long afterId, int size) {
+        List<Bill> bills = readPage(afterId, clamp(size));
+        billEnrichmentService.enrich(bills);
+        return bills;
+    }
+
+    /**
+     * Cursor of the page following {@code page}, or null if it was the last one
+     */
+    public static Long nextCursor(List<Bill> page, int size) {
+        return page.size() < clamp(size) ? null : page.get(page.size() - 1).getId();
+    }
+
+    /**
+     * Write every bill after the cursor as one JSON document per line
+     * The output is flushed after each chunk so the first bytes leave immediately
+     *
+     * @return the number of bills written
+     */
+    public long streamAll(long afterId, int chunkSize, OutputStream out) {
+        int size = clamp(chunkSize);
+        long cursor = afterId;
+        long written = 0;
+        while (true) {
+            List<Bill> chunk = readPage(cursor, size);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            billEnrichmentService.enrich(chunk);
+            write(chunk, out);
+            written += chunk.size();
+            cursor = chunk.get(chunk.size() - 1).getId();
+            if (chunk.size() < size) {
+                break;
+            }
+        }
+        logger.debug("Streamed {} bills after cursor {}", written, afterId);
+        return written;
+    }
+
+    /**
+     * Bills with an id greater than the cursor, read in one read-only transaction
+     * Two queries whatever the page size: the page of ids, then the bills with their items
+     */
+    private List<Bill> readPage(long afterId, int size) {
+        List<Bill> bills = readOnlyTransaction.execute(status -> {
+            List<Long> ids = billRepository.findIdsAfter(afterId, PageRequest.of(0, size));
+            return ids.isEmpty() ? List.<Bill>of() : billRepository.findWithProductItemsByIdIn(ids);
+        });
+        return bills == null ? List.of() : bills;
+    }
+
+    private void write(List<Bill> bills, OutputStream out) {
+        try {
+            for (Bill bill : bills) {
+                out.write(objectMapper.writeValueAsBytes(bill));
+                out.write(NEW_LINE);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Bill statistics computed with SQL aggregates over the persisted totals
+     * Only the top customers are read into memory, and resolved to names in one batched call
+     */
+    public Map<String, Object> computeStats(int top) {
+        BillTotals totals = billRepository.computeTotals();
+        List<CustomerRevenue> topCustomers =
+                billRepository.findTopCustomersByRevenue(PageRequest.of(0, Math.max(1, Math.min(top, 100))));
+        Map<Long, Customer> customers = billEnrichmentService.fetchCustomers(
+                topCustomers.stream().map(CustomerRevenue::getCustomerId).toList());
+
+        List<Map<String, Object>> ranking = new ArrayList<>(topCustomers.size());
+        for (CustomerRevenue revenue : topCustomers) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            Customer customer = customers.get(revenue.getCustomerId());
+            entry.put("customerId", revenue.getCustomerId());
+            entry.put("customerName", customer != null ? customer.getName() : null);
+            entry.put("billCount", revenue.getBillCount());
+            entry.put("revenue", revenue.getRevenue());
+            ranking.add(entry);
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("billCount", totals.getBillCount());
+        stats.put("totalRevenue", totals.getRevenue());
+        stats.put("averageBill", totals.getAverage());
+        stats.put("minBill", totals.getMinimum());
+        stats.put("maxBill", totals.getMaximum());
+        stats.put("topCustomers", ranking);
+        return stats;
+    }
+
+    private static int clamp(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+}
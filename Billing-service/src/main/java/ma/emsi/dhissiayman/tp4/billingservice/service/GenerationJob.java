@@ -0,0 +1,112 @@
+package ma.emsi.dhissiayman.tp4.billingservice.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of one background bill-generation job
+ * Counters are updated concurrently by the partition workers
+ */
+public class GenerationJob {
+
+    public enum Status { PENDING, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    private final String id;
+    private final long submittedAt = System.currentTimeMillis();
+    private final AtomicInteger billsCreated = new AtomicInteger();
+    private final AtomicLong productItemsCreated = new AtomicLong();
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+    private volatile Status status = Status.PENDING;
+    private volatile boolean cancelRequested;
+    private volatile int totalBills;
+    private volatile int partitions;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String message = "Job submitted";
+
+    public GenerationJob(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    void start(int totalBills, int partitions) {
+        this.totalBills = totalBills;
+        this.partitions = partitions;
+        this.startedAt = System.currentTimeMillis();
+        this.status = Status.RUNNING;
+        this.message = "Generating " + totalBills + " bills on " + partitions + " worker(s)";
+    }
+
+    void addProgress(int bills, long productItems) {
+        billsCreated.addAndGet(bills);
+        productItemsCreated.addAndGet(productItems);
+    }
+
+    void addError(String error) {
+        errors.add(error);
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    void finish(Status status, String message) {
+        this.finishedAt = System.currentTimeMillis();
+        if (startedAt == 0) {
+            startedAt = finishedAt;
+        }
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * Point-in-time view of the job, as returned by GET /bills/generate/{jobId}
+     */
+    public Map<String, Object> toView() {
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        long elapsedMs = startedAt > 0 ? end - startedAt : 0;
+        int bills = billsCreated.get();
+        long items = productItemsCreated.get();
+        double seconds = elapsedMs / 1000.0;
+
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("jobId", id);
+        view.put("status", status);
+        view.put("success", status != Status.FAILED);
+        view.put("message", message);
+        view.put("totalBills", totalBills);
+        view.put("billsCreated", bills);
+        view.put("productItemsCreated", items);
+        view.put("progress", totalBills > 0 ? (double) bills / totalBills : (isFinished() ? 1.0 : 0.0));
+        view.put("partitions", partitions);
+        view.put("elapsedMs", elapsedMs);
+        view.put("billsPerSecond", seconds > 0 ? bills / seconds : 0.0);
+        view.put("productItemsPerSecond", seconds > 0 ? items / seconds : 0.0);
+        view.put("submittedAt", submittedAt);
+        view.put("errors", List.copyOf(errors));
+        return view;
+    }
+}
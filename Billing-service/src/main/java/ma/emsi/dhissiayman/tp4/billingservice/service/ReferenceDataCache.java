@@ -0,0 +1,64 @@
+package ma.emsi.dhissiayman.tp4.billingservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Customer;
+import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Reference Data Cache
+ *
+ * Bounded in-process near-cache for the customers and products Billing-service
+ * reads through its Feign clients. Entries expire after a TTL and are evicted as
+ * soon as CUSTOMER-SERVICE or INVENTORY-SERVICE publish a change on Kafka.
+ *
+ * Hit/miss/eviction counts are published to Micrometer under the cache names
+ * "billing.customers" and "billing.products" (see /actuator/metrics/cache.gets).
+ */
+@Component
+public class ReferenceDataCache {
+
+    private final Cache<Long, Customer> customers;
+    private final Cache<String, Product> products;
+
+    public ReferenceDataCache(MeterRegistry meterRegistry,
+                              @Value("${billing.cache.customers.max-size:10000}") long customersMaxSize,
+                              @Value("${billing.cache.customers.ttl:10m}") Duration customersTtl,
+                              @Value("${billing.cache.products.max-size:10000}") long productsMaxSize,
+                              @Value("${billing.cache.products.ttl:10m}") Duration productsTtl) {
+        this.customers = Caffeine.newBuilder()
+                .maximumSize(customersMaxSize)
+                .expireAfterWrite(customersTtl)
+                .recordStats()
+                .build();
+        this.products = Caffeine.newBuilder()
+                .maximumSize(productsMaxSize)
+                .expireAfterWrite(productsTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, customers, "billing.customers");
+        CaffeineCacheMetrics.monitor(meterRegistry, products, "billing.products");
+    }
+
+    public Cache<Long, Customer> customers() {
+        return customers;
+    }
+
+    public Cache<String, Product> products() {
+        return products;
+    }
+
+    public void evictCustomer(Long id) {
+        customers.invalidate(id);
+    }
+
+    public void evictProduct(String id) {
+        products.invalidate(id);
+    }
+}
@@ -0,0 +1,12 @@
+package ma.emsi.dhissiayman.tp4.billingservice.web;
+
+import ma.emsi.dhissiayman.tp4.billingservice.entities.Bill;
+
+import java.util.List;
+
+/**
+ * One keyset page of bills
+ * nextCursor is the id to pass as "after" for the next page, or null on the last page
+ */
+public record BillPage(List<Bill> content, int size, Long nextCursor) {
+}
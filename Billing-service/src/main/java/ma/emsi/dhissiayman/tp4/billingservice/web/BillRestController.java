@@ -1,31 +1,27 @@
 package ma.emsi.dhissiayman.tp4.billingservice.web;
 
 
-import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Customer;
-import ma.emsi.dhissiayman.tp4.billingservice.MODEL.Product;
 import ma.emsi.dhissiayman.tp4.billingservice.entities.Bill;
-import ma.emsi.dhissiayman.tp4.billingservice.entities.ProductItem;
-import ma.emsi.dhissiayman.tp4.billingservice.fein.CustomerRestClient;
-import ma.emsi.dhissiayman.tp4.billingservice.fein.ProductRestClient;
 import ma.emsi.dhissiayman.tp4.billingservice.repository.BillRepository;
-import ma.emsi.dhissiayman.tp4.billingservice.repository.ProductItemRepository;
+import ma.emsi.dhissiayman.tp4.billingservice.service.BillEnrichmentService;
+import ma.emsi.dhissiayman.tp4.billingservice.service.BillGenerationJobService;
+import ma.emsi.dhissiayman.tp4.billingservice.service.BillQueryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Collection;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Bill REST Controller
@@ -41,11 +37,11 @@ public class BillRestController {
     @Autowired
     private BillRepository billRepository;
     @Autowired
-    private ProductItemRepository productItemRepository;
+    private BillEnrichmentService billEnrichmentService;
     @Autowired
-    private CustomerRestClient customerRestClient;
+    private BillQueryService billQueryService;
     @Autowired
-    private ProductRestClient productRestClient;
+    private BillGenerationJobService billGenerationJobService;
 
     /**
      * Get all bills
@@ -55,33 +51,55 @@ public class BillRestController {
     @GetMapping(path = "/bills")
     public List<Bill> getAllBills() {
         logger.info("Fetching all bills");
-        List<Bill> bills = billRepository.findAll();
+        List<Bill> bills = billRepository.findAllWithProductItems();
         logger.debug("Found {} bills in database", bills.size());
         
-        bills.forEach(bill -> {
-            // Populate customer information
-            try {
-                bill.setCustomer(customerRestClient.getCustomerById(bill.getCustomerId()));
-            } catch (Exception e) {
-                logger.warn("Failed to fetch customer {} for bill {}: {}", 
-                    bill.getCustomerId(), bill.getId(), e.getMessage());
-                // If customer service is unavailable, continue without customer data
-            }
-            // Populate product information for each product item
-            bill.getProductItems().forEach(productItem -> {
-                try {
-                    productItem.setProduct(productRestClient.getProductById(productItem.getProductId()));
-                } catch (Exception e) {
-                    logger.warn("Failed to fetch product {} for bill {}: {}", 
-                        productItem.getProductId(), bill.getId(), e.getMessage());
-                    // If product service is unavailable, continue without product data
-                }
-            });
-        });
+        // Resolve customers and products for the whole listing in a few batched calls
+        billEnrichmentService.enrich(bills);
         logger.info("Returning {} bills", bills.size());
         return bills;
     }
 
+    /**
+     * Get one page of bills using keyset (cursor) pagination
+     * GET /bills/page?after={lastId}&size={size}
+     * Pass the returned nextCursor as "after" to read the following page
+     */
+    @GetMapping(path = "/bills/page")
+    public BillPage getBillsPage(@RequestParam(defaultValue = "0") long after,
+                                 @RequestParam(defaultValue = "50") int size) {
+        logger.info("Fetching bills page after id {} (size {})", after, size);
+        List<Bill> bills = billQueryService.findPage(after, size);
+        return new BillPage(bills, bills.size(), BillQueryService.nextCursor(bills, size));
+    }
+
+    /**
+     * Stream all bills as newline-delimited JSON
+     * GET /bills/stream?after={lastId}&chunk={size}
+     * Bills are written chunk by chunk as they are read and enriched
+     */
+    @GetMapping(path = "/bills/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamBills(@RequestParam(defaultValue = "0") long after,
+                                                             @RequestParam(defaultValue = "200") int chunk) {
+        logger.info("Streaming bills after id {} (chunk {})", after, chunk);
+        StreamingResponseBody body = out -> billQueryService.streamAll(after, chunk, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    /**
+     * Get bill statistics
+     * GET /bills/stats?top={n}
+     * Count, sum, average, min and max of bill totals plus the top customers by revenue,
+     * all computed by the database from the persisted bill totals
+     */
+    @GetMapping(path = "/bills/stats")
+    public Map<String, Object> getBillStats(@RequestParam(defaultValue = "10") int top) {
+        logger.info("Computing bill statistics (top {})", top);
+        return billQueryService.computeStats(top);
+    }
+
     /**
      * Get bill by ID
      * GET /bills/{id}
@@ -90,27 +108,13 @@ public class BillRestController {
     @GetMapping(path = "/bills/{id}")
     public ResponseEntity<Bill> getBill(@PathVariable Long id){
         logger.info("Fetching bill with id: {}", id);
-        Bill bill = billRepository.findById(id).orElse(null);
+        Bill bill = billRepository.findWithProductItemsById(id).orElse(null);
         if (bill == null) {
             logger.warn("Bill with id {} not found", id);
             return ResponseEntity.notFound().build();
         }
-        try {
-            bill.setCustomer(customerRestClient.getCustomerById(bill.getCustomerId()));
-        } catch (Exception e) {
-            logger.warn("Failed to fetch customer {} for bill {}: {}", 
-                bill.getCustomerId(), bill.getId(), e.getMessage());
-            // If customer service is unavailable, continue without customer data
-        }
-        bill.getProductItems().forEach(productItem -> {
-            try {
-                productItem.setProduct(productRestClient.getProductById(productItem.getProductId()));
-            } catch (Exception e) {
-                logger.warn("Failed to fetch product {} for bill {}: {}", 
-                    productItem.getProductId(), bill.getId(), e.getMessage());
-                // If product service is unavailable, continue without product data
-            }
-        });
+        // Resolve the customer and all products in parallel
+        billEnrichmentService.enrichConcurrently(bill);
         logger.info("Returning bill with id: {}", id);
         return ResponseEntity.ok(bill);
     }
@@ -118,84 +122,45 @@ public class BillRestController {
     /**
      * Generate bills for all customers
      * POST /bills/generate
-     * Creates bills automatically for all existing customers with all existing products
-     * No need to restart the service!
+     * Submits a background job that creates bills for all customers without one,
+     * with all existing products, and returns its id immediately (202 Accepted).
+     * Poll GET /bills/generate/{jobId} for progress.
      */
     @PostMapping(path = "/bills/generate")
     public ResponseEntity<Map<String, Object>> generateBills() {
-        logger.info("Generating bills for all customers");
-        Map<String, Object> response = new HashMap<>();
-        
-        try {
-            Collection<Customer> customers = customerRestClient.getAllCustomers().getContent();
-            Collection<Product> products = productRestClient.getAllProducts().getContent();
-            logger.info("Found {} customers and {} products", customers.size(), products.size());
+        logger.info("Submitting bill generation job");
+        return billGenerationJobService.submit()
+                .map(job -> ResponseEntity.accepted().body(job.toView()))
+                .orElseGet(() -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", false);
+                    response.put("message", "A bill generation job is already running.");
+                    response.put("billsCreated", 0);
+                    return ResponseEntity.status(409).body(response);
+                });
+    }
 
-            if (customers.isEmpty()) {
-                response.put("success", false);
-                response.put("message", "No customers found. Please create customers first.");
-                response.put("billsCreated", 0);
-                return ResponseEntity.badRequest().body(response);
-            }
-            
-            if (products.isEmpty()) {
-                response.put("success", false);
-                response.put("message", "No products found. Please create products first.");
-                response.put("billsCreated", 0);
-                return ResponseEntity.badRequest().body(response);
-            }
+    /**
+     * Get bill generation job progress
+     * GET /bills/generate/{jobId}
+     * Returns status, progress, throughput and errors of the job
+     */
+    @GetMapping(path = "/bills/generate/{jobId}")
+    public ResponseEntity<Map<String, Object>> getGenerationJob(@PathVariable String jobId) {
+        return billGenerationJobService.find(jobId)
+                .map(job -> ResponseEntity.ok(job.toView()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
-            int billsCreated = 0;
-            int existingBillsCount = (int) billRepository.count();
-            
-            // Get all existing bills once to avoid multiple queries
-            List<Bill> existingBills = billRepository.findAll();
-            Set<Long> customersWithBills = existingBills.stream()
-                    .map(Bill::getCustomerId)
-                    .collect(Collectors.toSet());
-            
-            // Create a bill for each customer
-            for (Customer customer : customers) {
-                // Check if bill already exists for this customer
-                if (!customersWithBills.contains(customer.getId())) {
-                    Bill bill = Bill.builder()
-                            .billingDate(new Date())
-                            .customerId(customer.getId())
-                            .build();
-                    billRepository.save(bill);
-                    
-                    // Add all products to this bill
-                    for (Product product : products) {
-                        ProductItem productItem = ProductItem.builder()
-                                .bill(bill)
-                                .productId(product.getId())
-                                .quantity(1 + new Random().nextInt(10))
-                                .unitPrice((double) product.getPrice())
-                                .build();
-                        productItemRepository.save(productItem);
-                    }
-                    billsCreated++;
-                }
-            }
-            
-            int totalBills = (int) billRepository.count();
-            logger.info("Successfully created {} bills. Total bills: {}", billsCreated, totalBills);
-            
-            response.put("success", true);
-            response.put("message", "Bills generated successfully!");
-            response.put("billsCreated", billsCreated);
-            response.put("totalBills", totalBills);
-            response.put("customersCount", customers.size());
-            response.put("productsCount", products.size());
-            
-            return ResponseEntity.ok(response);
-            
-        } catch (Exception e) {
-            logger.error("Error generating bills", e);
-            response.put("success", false);
-            response.put("message", "Error generating bills: " + e.getMessage());
-            response.put("billsCreated", 0);
-            return ResponseEntity.status(500).body(response);
-        }
+    /**
+     * Cancel a bill generation job
+     * DELETE /bills/generate/{jobId}
+     * Workers stop after their current chunk; bills already committed are kept
+     */
+    @DeleteMapping(path = "/bills/generate/{jobId}")
+    public ResponseEntity<Map<String, Object>> cancelGenerationJob(@PathVariable String jobId) {
+        return billGenerationJobService.cancel(jobId)
+                .map(job -> ResponseEntity.ok(job.toView()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 }
@@ -0,0 +1,40 @@
+package ma.emsi.dhissiayman.tp4.billingservice.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Wire format of bill-topic messages. Sales-Analytics-service EventDecoderTest decodes
+ * the same bytes back into this event, which makes the round trip across both services.
+ */
+class BillEventCodecTest {
+
+    static final BillEvent EVENT = new BillEvent(42, 7, 1_700_000_000_000L, 59.97, List.of(
+            new BillEvent.LineItem("P-1", 3, 19.99),
+            new BillEvent.LineItem("Café", 1, 0.0)));
+    static final String ENCODED = "012a0780d095ffbc31404dfc28f5c28f5c0203502d31034033fd70a3d70a3d"
+            + "05436166c3a9010000000000000000";
+
+    @Test
+    void encodesVersionVarintsDoublesAndStrings() {
+        assertThat(HexFormat.of().formatHex(BillEventCodec.encode(EVENT))).isEqualTo(ENCODED);
+    }
+
+    @Test
+    void encodesBillWithoutLineItems() {
+        byte[] bytes = BillEventCodec.encode(new BillEvent(1, 2, 3, 0.0, List.of()));
+
+        assertThat(HexFormat.of().formatHex(bytes)).isEqualTo("01" + "010203" + "0000000000000000" + "00");
+    }
+
+    @Test
+    void rejectsNegativeIds() {
+        assertThatThrownBy(() -> BillEventCodec.encode(new BillEvent(-1, 2, 3, 0.0, List.of())))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,86 @@
+package ma.emsi.dhissiayman.tp4.billingservice.repository;
+
+import ma.emsi.dhissiayman.tp4.billingservice.entities.Bill;
+import ma.emsi.dhissiayman.tp4.billingservice.entities.ProductItem;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class BillRepositoryTest {
+
+    @Autowired
+    private BillRepository billRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Statistics statistics;
+
+    // Keeps the JPA slice away from the Feign clients enabled on BillingServiceApplication
+    @Configuration
+    @EntityScan(basePackageClasses = Bill.class)
+    @EnableJpaRepositories(basePackageClasses = BillRepository.class)
+    static class JpaConfig {
+    }
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 30; i++) {
+            Bill bill = entityManager.persist(Bill.builder().billingDate(new Date()).customerId(i).build());
+            for (int j = 0; j < 3; j++) {
+                entityManager.persist(ProductItem.builder()
+                        .bill(bill).productId("P" + j).quantity(1).unitPrice(10).build());
+            }
+        }
+        entityManager.flush();
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void pageOfBillsIsLoadedWithConstantNumberOfStatements() {
+        long smallPage = statementsToLoadPage(5);
+        long largePage = statementsToLoadPage(25);
+
+        // One query for the page of ids, one for the bills with their items
+        assertThat(smallPage).isEqualTo(2);
+        assertThat(largePage).isEqualTo(smallPage);
+    }
+
+    @Test
+    void allBillsAreLoadedWithTheirItemsInOneStatement() {
+        entityManager.clear();
+        statistics.clear();
+
+        List<Bill> bills = billRepository.findAllWithProductItems();
+        bills.forEach(bill -> assertThat(bill.getProductItems()).hasSize(3));
+
+        assertThat(bills).hasSize(30);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    private long statementsToLoadPage(int size) {
+        entityManager.clear();
+        statistics.clear();
+
+        List<Long> ids = billRepository.findIdsAfter(0L, PageRequest.of(0, size));
+        List<Bill> bills = billRepository.findWithProductItemsByIdIn(ids);
+        bills.forEach(bill -> assertThat(bill.getProductItems()).hasSize(3));
+
+        assertThat(bills).hasSize(size);
+        return statistics.getPrepareStatementCount();
+    }
+}
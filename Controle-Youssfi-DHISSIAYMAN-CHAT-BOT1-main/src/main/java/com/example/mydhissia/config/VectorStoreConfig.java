@@ -1,16 +1,29 @@
 package com.example.mydhissia.config;
 
+import com.example.mydhissia.rag.index.HnswVectorStore;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Path;
+
 @Configuration
 public class VectorStoreConfig {
 
-    @Bean
-    public VectorStore vectorStore(EmbeddingModel embeddingModel) {
-        return new SimpleVectorStore(embeddingModel);
+    /**
+     * HNSW index instead of SimpleVectorStore's linear scan
+     * m: links per node (memory vs recall), ef-construction: build effort,
+     * ef-search: candidates explored per query (latency vs recall)
+     * The store is persisted under rag.store.path and reopened without re-embedding
+     */
+    @Bean(destroyMethod = "close")
+    public VectorStore vectorStore(EmbeddingModel embeddingModel,
+                                   @Value("${rag.hnsw.m:16}") int m,
+                                   @Value("${rag.hnsw.ef-construction:100}") int efConstruction,
+                                   @Value("${rag.hnsw.ef-search:64}") int efSearch,
+                                   @Value("${rag.store.path:vectorstore}") String storePath) {
+        return new HnswVectorStore(embeddingModel, m, efConstruction, efSearch, Path.of(storePath));
     }
 }
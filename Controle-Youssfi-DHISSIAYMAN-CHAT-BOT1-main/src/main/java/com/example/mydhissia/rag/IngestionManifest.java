@@ -0,0 +1,83 @@
+package com.example.mydhissia.rag;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * What has been ingested from each rag-data file: the SHA-256 of its content
+ * and the ids of the chunks it produced, keyed by file name.
+ * Saved as JSON next to the vector store once the store holds those chunks.
+ */
+public class IngestionManifest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public record FileEntry(String hash, List<String> chunkIds) {
+    }
+
+    private final Path file;
+    private final boolean existed;
+    private final TreeMap<String, FileEntry> files;
+
+    private IngestionManifest(Path file, boolean existed, TreeMap<String, FileEntry> files) {
+        this.file = file;
+        this.existed = existed;
+        this.files = files;
+    }
+
+    public static IngestionManifest load(Path file) {
+        if (!Files.exists(file)) {
+            return new IngestionManifest(file, false, new TreeMap<>());
+        }
+        try {
+            TreeMap<String, FileEntry> files = MAPPER.readValue(file.toFile(),
+                    MAPPER.getTypeFactory().constructMapType(TreeMap.class, String.class, FileEntry.class));
+            return new IngestionManifest(file, true, files);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read ingestion manifest " + file, e);
+        }
+    }
+
+    /**
+     * False when no manifest was found, i.e. nothing in the store is known to come from rag-data
+     */
+    public boolean existed() {
+        return existed;
+    }
+
+    public FileEntry get(String source) {
+        return files.get(source);
+    }
+
+    public void put(String source, FileEntry entry) {
+        files.put(source, entry);
+    }
+
+    public FileEntry remove(String source) {
+        return files.remove(source);
+    }
+
+    public Set<String> sources() {
+        return Set.copyOf(files.keySet());
+    }
+
+    public void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, "manifest", ".tmp");
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), files);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write ingestion manifest " + file, e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.mydhissia.rag;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Staged ingestion: read/split -> embed -> write.
+ *
+ * - read/split: inputs are processed in parallel on rag.ingestion.readers threads
+ * - embed: chunks are grouped into batches of rag.ingestion.embedding-batch-size texts,
+ *   one EmbeddingModel call per batch, at most rag.ingestion.max-concurrent-batches in flight
+ * - write: a single writer adds the embedded chunks to the store, coalescing up to
+ *   rag.ingestion.write-batch-size chunks per add
+ * Stages are connected by bounded queues, so a slow embedding provider blocks the
+ * readers instead of buffering the whole corpus in memory.
+ *
+ * Metrics: rag.ingestion.chunks (counter), rag.ingestion.embedding (timer per batch)
+ * and rag.ingestion.chunks-per-second (gauge, last run).
+ */
+@Component
+public class IngestionPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionPipeline.class);
+    /** End-of-stream markers, compared by identity */
+    private static final Document END_OF_CHUNKS = new Document("end-of-chunks");
+    private static final List<Document> END_OF_BATCHES = List.of();
+
+    public record Stats(int chunks, int embeddingBatches, int writes, long elapsedMs, double chunksPerSecond) {
+    }
+
+    private final EmbeddingModel embeddingModel;
+    private final VectorStore vectorStore;
+    private final int readers;
+    private final int embeddingBatchSize;
+    private final int maxConcurrentBatches;
+    private final int queueCapacity;
+    private final int writeBatchSize;
+    private final Counter chunksCounter;
+    private final Timer embeddingTimer;
+    private final AtomicLong lastChunksPerSecond = new AtomicLong();
+
+    public IngestionPipeline(EmbeddingModel embeddingModel,
+                             VectorStore vectorStore,
+                             MeterRegistry meterRegistry,
+                             @Value("${rag.ingestion.readers:0}") int readers,
+                             @Value("${rag.ingestion.embedding-batch-size:32}") int embeddingBatchSize,
+                             @Value("${rag.ingestion.max-concurrent-batches:4}") int maxConcurrentBatches,
+                             @Value("${rag.ingestion.queue-capacity:1024}") int queueCapacity,
+                             @Value("${rag.ingestion.write-batch-size:256}") int writeBatchSize) {
+        this.embeddingModel = embeddingModel;
+        this.vectorStore = vectorStore;
+        this.readers = readers > 0 ? readers : Runtime.getRuntime().availableProcessors();
+        this.embeddingBatchSize = embeddingBatchSize;
+        this.maxConcurrentBatches = maxConcurrentBatches;
+        this.queueCapacity = queueCapacity;
+        this.writeBatchSize = writeBatchSize;
+        this.chunksCounter = meterRegistry.counter("rag.ingestion.chunks");
+        this.embeddingTimer = Timer.builder("rag.ingestion.embedding")
+                .description("Duration of one batched embedding request")
+                .register(meterRegistry);
+        meterRegistry.gauge("rag.ingestion.chunks-per-second", lastChunksPerSecond, AtomicLong::doubleValue);
+    }
+
+    /**
+     * Split every input into chunks, embed the chunks that have no embedding yet and add them all to the store
+     * Returns once every chunk is in the store; the first failure of any stage is rethrown
+     */
+    public <T> Stats run(List<T> inputs, Function<T, List<Document>> splitter) {
+        long start = System.nanoTime();
+        BlockingQueue<Document> chunks = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<List<Document>> embedded = new ArrayBlockingQueue<>(maxConcurrentBatches + 1);
+        Semaphore inFlight = new Semaphore(maxConcurrentBatches);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger embeddingBatches = new AtomicInteger();
+        AtomicInteger writes = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+
+        ExecutorService readerPool = Executors.newFixedThreadPool(Math.max(1, Math.min(readers, inputs.size())),
+                namedThreads("rag-reader"));
+        ExecutorService embedPool = Executors.newFixedThreadPool(maxConcurrentBatches, namedThreads("rag-embed"));
+        ExecutorService writerThread = Executors.newSingleThreadExecutor(namedThreads("rag-writer"));
+        try {
+            // Stage 1: read and split in parallel, blocking on the bounded queue when embedding lags
+            CompletableFuture<?>[] reads = inputs.stream()
+                    .map(input -> CompletableFuture.runAsync(() -> {
+                        if (failure.get() != null) {
+                            return;
+                        }
+                        for (Document chunk : splitter.apply(input)) {
+                            put(chunks, chunk);
+                        }
+                    }, readerPool).exceptionally(error -> fail(failure, error)))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(reads).whenComplete((ignored, error) -> put(chunks, END_OF_CHUNKS));
+
+            // Stage 3: single writer, coalescing embedded batches into larger store writes
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                List<Document> pending = new ArrayList<>(writeBatchSize);
+                while (true) {
+                    List<Document> batch = take(embedded);
+                    boolean end = batch == END_OF_BATCHES;
+                    pending.addAll(batch);
+                    if (!pending.isEmpty() && (end || pending.size() >= writeBatchSize || embedded.isEmpty())) {
+                        // After a failure the writer keeps draining so the embedding stage never blocks
+                        if (failure.get() == null) {
+                            try {
+                                vectorStore.add(pending);
+                                writes.incrementAndGet();
+                                written.addAndGet(pending.size());
+                                chunksCounter.increment(pending.size());
+                            } catch (RuntimeException e) {
+                                fail(failure, e);
+                            }
+                        }
+                        pending = new ArrayList<>(writeBatchSize);
+                    }
+                    if (end) {
+                        return;
+                    }
+                }
+            }, writerThread).exceptionally(error -> fail(failure, error));
+
+            // Stage 2: batch chunks on the calling thread, the semaphore bounds concurrent embedding requests
+            List<CompletableFuture<?>> embeddings = new ArrayList<>();
+            List<Document> toEmbed = new ArrayList<>(embeddingBatchSize);
+            List<Document> ready = new ArrayList<>(embeddingBatchSize);
+            while (true) {
+                Document chunk = take(chunks);
+                boolean end = chunk == END_OF_CHUNKS;
+                if (!end && chunk.getEmbedding() != null && !chunk.getEmbedding().isEmpty()) {
+                    ready.add(chunk);
+                } else if (!end) {
+                    toEmbed.add(chunk);
+                }
+                if (!ready.isEmpty() && (end || ready.size() >= embeddingBatchSize)) {
+                    put(embedded, ready);
+                    ready = new ArrayList<>(embeddingBatchSize);
+                }
+                if (!toEmbed.isEmpty() && (end || toEmbed.size() >= embeddingBatchSize)) {
+                    List<Document> batch = toEmbed;
+                    toEmbed = new ArrayList<>(embeddingBatchSize);
+                    acquire(inFlight);
+                    embeddingBatches.incrementAndGet();
+                    embeddings.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            if (failure.get() == null) {
+                                embed(batch);
+                                put(embedded, batch);
+                            }
+                        } finally {
+                            inFlight.release();
+                        }
+                    }, embedPool).exceptionally(error -> fail(failure, error)));
+                }
+                if (end) {
+                    break;
+                }
+            }
+            CompletableFuture.allOf(embeddings.toArray(new CompletableFuture[0])).join();
+            put(embedded, END_OF_BATCHES);
+            writer.join();
+        } finally {
+            readerPool.shutdownNow();
+            embedPool.shutdownNow();
+            writerThread.shutdownNow();
+        }
+
+        Throwable error = failure.get();
+        if (error != null) {
+            throw error instanceof RuntimeException runtime ? runtime : new IllegalStateException(error);
+        }
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        Stats stats = new Stats(written.get(), embeddingBatches.get(), writes.get(), elapsedMs,
+                written.get() * 1000.0 / elapsedMs);
+        lastChunksPerSecond.set(Math.round(stats.chunksPerSecond()));
+        log.info("Ingestion pipeline: {}", stats);
+        return stats;
+    }
+
+    private void embed(List<Document> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Document document : batch) {
+            texts.add(document.getContent());
+        }
+        List<List<Double>> vectors = embeddingTimer.record(() -> embeddingModel.embed(texts));
+        if (vectors == null || vectors.size() != batch.size()) {
+            throw new IllegalStateException("Embedding model returned " + (vectors == null ? 0 : vectors.size())
+                    + " embeddings for " + batch.size() + " texts");
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).setEmbedding(vectors.get(i));
+        }
+    }
+
+    private static <T> T fail(AtomicReference<Throwable> failure, Throwable error) {
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        if (failure.compareAndSet(null, cause)) {
+            log.error("Ingestion pipeline failed", cause);
+        }
+        return null;
+    }
+
+    private static <T> void put(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while ingesting", e);
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while ingesting", e);
+        }
+    }
+
+    private static void acquire(Semaphore semaphore) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while ingesting", e);
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
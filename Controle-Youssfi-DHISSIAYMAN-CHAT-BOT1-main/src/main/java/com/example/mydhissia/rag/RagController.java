@@ -15,8 +15,7 @@ public class RagController {
     }
 
     @PostMapping("/reindex")
-    public String reindex() {
-        ragIngestionService.ingest();
-        return "RAG ingestion started. Check logs for details.";
+    public RagIngestionService.IngestionResult reindex() {
+        return ragIngestionService.ingest();
     }
 }
@@ -1,11 +1,11 @@
 package com.example.mydhissia.rag;
 
+import com.example.mydhissia.rag.index.HnswVectorStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.TextReader;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
@@ -13,15 +13,52 @@ import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Incremental ingestion of classpath rag-data/*.txt into the vector store.
+ *
+ * Each file is hashed (SHA-256) and compared with the {@link IngestionManifest}:
+ * unchanged files are skipped without being split, changed files are re-split
+ * and only chunks whose text is new get embedded, chunks that disappeared and
+ * chunks of removed files are deleted. Chunk ids are derived from the file name,
+ * the chunk hash and its occurrence in the file, so an unchanged chunk keeps its id.
+ * Files are processed and new chunks embedded and stored through the {@link IngestionPipeline}.
+ * Without a manifest (first run, or a manifest that was lost) documents already in the
+ * store are untracked: those that match a chunk id are kept without re-embedding, the
+ * others are deleted so an upgrade does not leave duplicates behind.
+ */
 @Service
 public class RagIngestionService {
 
     private static final Logger log = LoggerFactory.getLogger(RagIngestionService.class);
 
+    /** TokenTextSplitter keeps its tokenizer state, one per reader thread */
+    private static final ThreadLocal<TokenTextSplitter> SPLITTER = ThreadLocal.withInitial(TokenTextSplitter::new);
+
+    public record IngestionResult(int files, int changedFiles, int removedFiles,
+                                  int addedChunks, int deletedChunks, long elapsedMs, double chunksPerSecond) {
+    }
+
     private final VectorStore vectorStore;
+    private final IngestionPipeline ingestionPipeline;
 
     @Value("classpath*:rag-data/*.txt")
     private Resource[] resources;
@@ -29,54 +66,169 @@ public class RagIngestionService {
     @Value("${spring.ai.vectorstore.path:vectorstore.json}")
     private String vectorStorePath;
 
-    public RagIngestionService(VectorStore vectorStore) {
+    @Value("${rag.store.path:vectorstore}")
+    private String storePath;
+
+    public RagIngestionService(VectorStore vectorStore, IngestionPipeline ingestionPipeline) {
         this.vectorStore = vectorStore;
+        this.ingestionPipeline = ingestionPipeline;
     }
 
+    /**
+     * Startup ingestion only embeds what changed since the last run
+     */
     @PostConstruct
     public void init() {
-        File storeFile = new File(vectorStorePath);
-        if (storeFile.exists()) {
-            log.info("Loading existing vector store from {}", vectorStorePath);
-            if (vectorStore instanceof SimpleVectorStore) {
-                ((SimpleVectorStore) vectorStore).load(storeFile);
-            }
-        } else {
-            log.info("No existing vector store found at {}. Performing initial ingestion...", vectorStorePath);
-            ingest();
-        }
+        ingest();
     }
 
-    public void ingest() {
+    public synchronized IngestionResult ingest() {
+        long start = System.currentTimeMillis();
         log.info("Starting RAG ingestion...");
-        List<Document> documents = new ArrayList<>();
+        IngestionManifest manifest = IngestionManifest.load(Path.of(storePath, "manifest.json"));
+        Map<String, List<Double>> reusableEmbeddings = manifest.existed() ? Map.of() : legacyEmbeddings();
+        Set<String> untracked = manifest.existed() ? Set.of() : storedIds();
 
         if (resources == null || resources.length == 0) {
             log.warn("No resources found in rag-data/");
-            return;
+        }
+        Map<String, Resource> bySource = new LinkedHashMap<>();
+        for (Resource resource : resources == null ? new Resource[0] : resources) {
+            if (resource.getFilename() != null) {
+                bySource.putIfAbsent(resource.getFilename(), resource);
+            }
         }
 
-        for (Resource resource : resources) {
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        Queue<String> toDelete = new ConcurrentLinkedQueue<>();
+        Map<String, IngestionManifest.FileEntry> updated = new ConcurrentHashMap<>();
+        IngestionPipeline.Stats stats = ingestionPipeline.run(new ArrayList<>(bySource.entrySet()), file -> {
+            String source = file.getKey();
             try {
-                log.info("Processing file: {}", resource.getFilename());
-                TextReader textReader = new TextReader(resource);
-                documents.addAll(textReader.get());
+                List<Document> chunks = diff(source, file.getValue(), manifest.get(source),
+                        reusableEmbeddings, untracked, toDelete, updated);
+                seen.add(source);
+                return chunks;
             } catch (Exception e) {
-                log.error("Failed to read resource: {}", resource.getFilename(), e);
+                log.error("Failed to read resource: {}", source, e);
+                // A file that cannot be read this time keeps its previous chunks
+                if (manifest.get(source) != null) {
+                    seen.add(source);
+                }
+                return List.of();
+            }
+        });
+
+        int removedFiles = 0;
+        for (String source : manifest.sources()) {
+            if (!seen.contains(source)) {
+                toDelete.addAll(manifest.remove(source).chunkIds());
+                removedFiles++;
             }
         }
+        if (!untracked.isEmpty()) {
+            Set<String> orphans = new HashSet<>(untracked);
+            updated.values().forEach(entry -> entry.chunkIds().forEach(orphans::remove));
+            log.info("No ingestion manifest, deleting {} untracked documents from the store", orphans.size());
+            toDelete.addAll(orphans);
+        }
+        if (!toDelete.isEmpty()) {
+            vectorStore.delete(new ArrayList<>(toDelete));
+        }
+        if (vectorStore instanceof HnswVectorStore store) {
+            store.flush();
+        }
+        // Saved last: if anything above fails, the next run redoes these files
+        updated.forEach(manifest::put);
+        manifest.save();
+
+        IngestionResult result = new IngestionResult(seen.size(), updated.size(), removedFiles,
+                stats.chunks(), toDelete.size(), System.currentTimeMillis() - start, stats.chunksPerSecond());
+        log.info("RAG ingestion complete: {}", result);
+        return result;
+    }
 
-        TokenTextSplitter splitter = new TokenTextSplitter();
-        List<Document> splitDocuments = splitter.apply(documents);
+    /**
+     * Chunks of a file that are not in the store yet, or none if the file did not change
+     * Runs on the pipeline reader threads
+     */
+    private List<Document> diff(String source, Resource resource, IngestionManifest.FileEntry previous,
+                                Map<String, List<Double>> reusableEmbeddings, Set<String> untracked,
+                                Queue<String> toDelete, Map<String, IngestionManifest.FileEntry> updated)
+            throws IOException {
+        String fileHash = sha256(resource);
+        if (previous != null && previous.hash().equals(fileHash)) {
+            return List.of();
+        }
+        log.info("Processing changed file: {}", source);
+        Set<String> previousIds = previous == null ? Set.of() : new HashSet<>(previous.chunkIds());
+        List<String> chunkIds = new ArrayList<>();
+        List<Document> toAdd = new ArrayList<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (Document chunk : SPLITTER.get().apply(new TextReader(resource).get())) {
+            String chunkHash = sha256(chunk.getContent());
+            int occurrence = occurrences.merge(chunkHash, 1, Integer::sum);
+            String id = UUID.nameUUIDFromBytes((source + '\n' + chunkHash + '\n' + occurrence)
+                    .getBytes(StandardCharsets.UTF_8)).toString();
+            chunkIds.add(id);
+            // Ids are derived from the content, an untracked document with this id holds the same chunk
+            if (!previousIds.contains(id) && !untracked.contains(id)) {
+                Document document = new Document(id, chunk.getContent(), chunk.getMetadata());
+                List<Double> embedding = reusableEmbeddings.get(chunk.getContent());
+                if (embedding != null) {
+                    document.setEmbedding(embedding);
+                }
+                toAdd.add(document);
+            }
+        }
+        Set<String> kept = new HashSet<>(chunkIds);
+        previousIds.stream().filter(id -> !kept.contains(id)).forEach(toDelete::add);
+        updated.put(source, new IngestionManifest.FileEntry(fileHash, chunkIds));
+        return toAdd;
+    }
+
+    /**
+     * Embeddings of the JSON store written by SimpleVectorStore, by chunk text,
+     * so migrating to the manifest does not re-embed chunks that were already embedded
+     */
+    private Map<String, List<Double>> legacyEmbeddings() {
+        File legacyFile = new File(vectorStorePath);
+        if (!legacyFile.exists()) {
+            return Map.of();
+        }
+        Map<String, List<Double>> embeddings = new HashMap<>();
+        for (Document document : HnswVectorStore.readJson(legacyFile)) {
+            embeddings.put(document.getContent(), document.getEmbedding());
+        }
+        log.info("Reusing {} embeddings from legacy vector store {}", embeddings.size(), vectorStorePath);
+        return embeddings;
+    }
 
-        log.info("Ingesting {} chunks into VectorStore", splitDocuments.size());
-        vectorStore.add(splitDocuments);
+    private Set<String> storedIds() {
+        return vectorStore instanceof HnswVectorStore store ? store.ids() : Set.of();
+    }
 
-        if (vectorStore instanceof SimpleVectorStore) {
-            log.info("Saving vector store to {}", vectorStorePath);
-            ((SimpleVectorStore) vectorStore).save(new File(vectorStorePath));
+    private static String sha256(Resource resource) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = resource.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
         }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
-        log.info("RAG ingestion complete.");
+    private static String sha256(String text) {
+        return HexFormat.of().formatHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
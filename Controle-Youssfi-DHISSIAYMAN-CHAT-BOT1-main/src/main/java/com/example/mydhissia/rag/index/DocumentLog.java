@@ -0,0 +1,309 @@
+package com.example.mydhissia.rag.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the documents of a persistent {@link HnswVectorStore}:
+ * which node holds which document (id, content, metadata) and which nodes were removed.
+ *
+ * Each record is {@code [int length][int crc32][payload]}; a record is the commit
+ * point of its node, so a vector written to a segment without its record is ignored.
+ * A torn record at the end of the file (crash during append) is truncated on open.
+ * Metadata values are stored as strings, longs, doubles or booleans.
+ *
+ * The file is read through a buffered stream, never memory-mapped, so it can be
+ * truncated or replaced on any platform and may exceed 2 GB. Once removals make up
+ * a quarter of the logged documents, {@link #compact} rewrites only the live records.
+ */
+public class DocumentLog implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DocumentLog.class);
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final int COMPACTION_MIN_REMOVALS = 1024;
+    /** Upper bound of one record, so a corrupt length is never allocated */
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    /**
+     * A replayed record: a document added at {@code node}, or the removal of {@code node} (document null)
+     */
+    public record Entry(int node, Document document) {
+    }
+
+    private final Path file;
+    private FileChannel channel;
+    private long addRecords;
+    private long removeRecords;
+
+    private DocumentLog(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Open (or create) the log, replaying its records in order
+     */
+    public static DocumentLog open(Path file, Consumer<Entry> replay) {
+        DocumentLog documentLog = new DocumentLog(file);
+        try {
+            long size = Files.exists(file) ? Files.size(file) : 0;
+            long valid = documentLog.replay(size, replay);
+            documentLog.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (valid < size) {
+                log.warn("Truncating torn tail of {} at {} of {} bytes", file, valid, size);
+                documentLog.channel.truncate(valid);
+                documentLog.channel.force(false);
+            }
+            documentLog.channel.position(valid);
+            return documentLog;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open " + file, e);
+        }
+    }
+
+    /**
+     * @return the length of the valid prefix of the file
+     */
+    private long replay(long size, Consumer<Entry> replay) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (size - valid >= 8) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES || length > size - valid - 8) {
+                    return valid;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    return valid;
+                }
+                Entry entry;
+                try {
+                    entry = decode(ByteBuffer.wrap(payload));
+                } catch (BufferUnderflowException e) {
+                    return valid;
+                }
+                replay.accept(entry);
+                count(entry.document() == null ? 0 : 1, entry.document() == null ? 1 : 0);
+                valid += 8 + length;
+            }
+        } catch (EOFException e) {
+            // Ends inside a record: torn tail
+        }
+        return valid;
+    }
+
+    private void count(long adds, long removes) {
+        addRecords += adds;
+        removeRecords += removes;
+    }
+
+    public void appendAdds(List<Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 1024);
+        for (Entry entry : entries) {
+            writeRecord(bytes, encodeAdd(entry.node(), entry.document()));
+        }
+        append(bytes.toByteArray(), entries.size(), 0);
+    }
+
+    public void appendRemoves(List<Integer> nodes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(nodes.size() * 13);
+        for (int node : nodes) {
+            writeRecord(bytes, encodeRemove(node));
+        }
+        append(bytes.toByteArray(), 0, nodes.size());
+    }
+
+    private synchronized void append(byte[] records, int adds, int removes) {
+        try {
+            write(channel, records);
+            channel.force(false);
+            count(adds, removes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the document log", e);
+        }
+    }
+
+    /**
+     * True once removals make up a quarter of the logged documents
+     */
+    public synchronized boolean needsCompaction() {
+        return removeRecords >= COMPACTION_MIN_REMOVALS && removeRecords * 4 >= addRecords;
+    }
+
+    /**
+     * Replace the log by the records of the live documents only
+     * The removal of the last node is kept when that node is dead, so replay still
+     * sees {@code nodeCount} nodes, matching the vector segments and the saved graph.
+     *
+     * @param live the live documents and their nodes
+     * @param nodeCount number of nodes ever allocated
+     */
+    public synchronized void compact(List<Entry> live, int nodeCount) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long before = addRecords + removeRecords;
+        try {
+            boolean lastNodeLive = false;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+                for (Entry entry : live) {
+                    writeRecord(bytes, encodeAdd(entry.node(), entry.document()));
+                    lastNodeLive |= entry.node() == nodeCount - 1;
+                    if (bytes.size() >= 1 << 16) {
+                        write(out, bytes.toByteArray());
+                        bytes.reset();
+                    }
+                }
+                if (nodeCount > 0 && !lastNodeLive) {
+                    writeRecord(bytes, encodeRemove(nodeCount - 1));
+                }
+                write(out, bytes.toByteArray());
+                out.force(true);
+            }
+            // No mapping is held on the log, so the replace also works where open files cannot be replaced
+            channel.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            addRecords = live.size();
+            removeRecords = nodeCount > 0 && !lastNodeLive ? 1 : 0;
+            log.info("Compacted {}: {} records down to {}", file, before, addRecords + removeRecords);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact " + file, e);
+        } finally {
+            if (!channel.isOpen()) {
+                try {
+                    channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                } catch (IOException reopen) {
+                    log.error("Cannot reopen {} after a failed compaction", file, reopen);
+                }
+            }
+        }
+    }
+
+    private static void write(FileChannel target, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeBytes(ByteBuffer.allocate(8).putInt(payload.length).putInt((int) crc.getValue()).array());
+        out.writeBytes(payload);
+    }
+
+    private static byte[] encodeAdd(int node, Document document) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + document.getContent().length());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(ADD);
+            out.writeInt(node);
+            writeString(out, document.getId());
+            writeString(out, document.getContent());
+            out.writeInt(document.getMetadata().size());
+            for (Map.Entry<String, Object> entry : document.getMetadata().entrySet()) {
+                writeString(out, entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof Long || value instanceof Integer) {
+                    out.writeByte('L');
+                    out.writeLong(((Number) value).longValue());
+                } else if (value instanceof Double || value instanceof Float) {
+                    out.writeByte('D');
+                    out.writeDouble(((Number) value).doubleValue());
+                } else if (value instanceof Boolean) {
+                    out.writeByte('B');
+                    out.writeBoolean((Boolean) value);
+                } else {
+                    out.writeByte('S');
+                    writeString(out, String.valueOf(value));
+                }
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encodeRemove(int node) {
+        return ByteBuffer.allocate(5).put(REMOVE).putInt(node).array();
+    }
+
+    private static Entry decode(ByteBuffer payload) {
+        byte type = payload.get();
+        int node = payload.getInt();
+        if (type == REMOVE) {
+            return new Entry(node, null);
+        }
+        String id = readString(payload);
+        String content = readString(payload);
+        int count = payload.getInt();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = readString(payload);
+            byte valueType = payload.get();
+            metadata.put(key, switch (valueType) {
+                case 'L' -> payload.getLong();
+                case 'D' -> payload.getDouble();
+                case 'B' -> payload.get() != 0;
+                default -> readString(payload);
+            });
+        }
+        return new Entry(node, new Document(id, content, metadata));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
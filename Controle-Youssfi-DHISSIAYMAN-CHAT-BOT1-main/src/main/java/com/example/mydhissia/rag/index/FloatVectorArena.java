@@ -0,0 +1,121 @@
+package com.example.mydhissia.rag.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only store of fixed-size float vectors, kept outside the heap in chunks
+ * of up to {@code vectorsPerChunk} vectors (no per-vector object). A chunk starts
+ * small and doubles as it fills. Chunks come from a {@link ChunkAllocator}: direct
+ * buffers by default, or memory-mapped files (see {@link VectorSegments}).
+ * Vectors are addressed by their insertion index.
+ */
+public class FloatVectorArena {
+    private static final int INITIAL_CHUNK_VECTORS = 64;
+
+    /**
+     * Provides the buffer of a chunk, big enough for {@code vectors} vectors,
+     * keeping the content of {@code previous} (null for a new chunk)
+     */
+    @FunctionalInterface
+    public interface ChunkAllocator {
+        FloatBuffer allocate(int chunk, int vectors, FloatBuffer previous);
+    }
+
+    private final int dimensions;
+    private final int vectorsPerChunk;
+    private final ChunkAllocator allocator;
+    private final List<FloatBuffer> chunks = new ArrayList<>();
+    private int size;
+
+    public FloatVectorArena(int dimensions, int vectorsPerChunk) {
+        this(dimensions, vectorsPerChunk, directAllocator(dimensions), 0);
+    }
+
+    /**
+     * Arena over chunks that already hold {@code size} vectors, e.g. mapped segment files
+     */
+    public FloatVectorArena(int dimensions, int vectorsPerChunk, ChunkAllocator allocator, int size) {
+        this.dimensions = dimensions;
+        this.vectorsPerChunk = vectorsPerChunk;
+        this.allocator = allocator;
+        for (int chunk = 0; chunk * vectorsPerChunk < size; chunk++) {
+            chunks.add(allocator.allocate(chunk, Math.min(vectorsPerChunk, size - chunk * vectorsPerChunk), null));
+        }
+        this.size = size;
+    }
+
+    private static ChunkAllocator directAllocator(int dimensions) {
+        return (chunk, vectors, previous) -> {
+            FloatBuffer buffer = ByteBuffer.allocateDirect(vectors * dimensions * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            if (previous != null) {
+                buffer.put(0, previous, 0, previous.capacity());
+            }
+            return buffer;
+        };
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        int chunk = size / vectorsPerChunk;
+        int slot = size % vectorsPerChunk;
+        if (chunk == chunks.size()) {
+            chunks.add(allocator.allocate(chunk, Math.min(vectorsPerChunk, INITIAL_CHUNK_VECTORS), null));
+        }
+        FloatBuffer buffer = chunks.get(chunk);
+        int capacity = buffer.capacity() / dimensions;
+        if (slot >= capacity) {
+            buffer = allocator.allocate(chunk, Math.min(vectorsPerChunk, capacity * 2), buffer);
+            chunks.set(chunk, buffer);
+        }
+        buffer.put(slot * dimensions, vector);
+        return size++;
+    }
+
+    public void get(int index, float[] target) {
+        chunks.get(index / vectorsPerChunk).get((index % vectorsPerChunk) * dimensions, target);
+    }
+
+    /**
+     * Dot product of the stored vector and {@code query}
+     */
+    public float dot(int index, float[] query) {
+        FloatBuffer chunk = chunks.get(index / vectorsPerChunk);
+        int offset = (index % vectorsPerChunk) * dimensions;
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += chunk.get(offset + i) * query[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Dot product of two stored vectors
+     */
+    public float dot(int a, int b) {
+        FloatBuffer chunkA = chunks.get(a / vectorsPerChunk);
+        FloatBuffer chunkB = chunks.get(b / vectorsPerChunk);
+        int offsetA = (a % vectorsPerChunk) * dimensions;
+        int offsetB = (b % vectorsPerChunk) * dimensions;
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += chunkA.get(offsetA + i) * chunkB.get(offsetB + i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,507 @@
+package com.example.mydhissia.rag.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * HNSW (hierarchical navigable small world) graph over unit-length vectors,
+ * scored by dot product, i.e. cosine similarity.
+ *
+ * Each node keeps at most {@code m} links per upper layer and {@code 2 * m} on
+ * layer 0. A new node picks its neighbours with the diversity heuristic of the
+ * HNSW paper; a neighbour whose list is full drops its least similar link instead
+ * of re-running the heuristic, which keeps inserts cheap.
+ * Inserts run one at a time under a write lock, searches run concurrently.
+ * Removed nodes are only marked: they are still traversed but never returned,
+ * so a search widens its candidate list in proportion to the removed nodes.
+ */
+public class HnswIndex {
+
+    /**
+     * A search hit: node id and cosine similarity
+     */
+    public record Hit(int node, float score) {
+    }
+
+    private static final int GRAPH_MAGIC = 0x484E5357;
+
+    private final FloatVectorArena vectors;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<SearchContext> contexts = ThreadLocal.withInitial(SearchContext::new);
+    /** links.get(node)[level] = {count, neighbour...} */
+    private final List<int[][]> links = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private volatile int efSearch;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int liveCount;
+
+    public HnswIndex(FloatVectorArena vectors, int m, int efConstruction, int efSearch) {
+        if (m < 2) {
+            // Level assignment uses 1 / ln(m)
+            throw new IllegalArgumentException("m must be at least 2, got " + m);
+        }
+        this.vectors = vectors;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    public int dimensions() {
+        return vectors.dimensions();
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of nodes ever inserted, removed ones included
+     */
+    public int nodeCount() {
+        lock.readLock().lock();
+        try {
+            return links.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert a vector (normalized here) and return its node id
+     */
+    public int add(float[] vector) {
+        float[] unit = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            int node = vectors.add(unit);
+            link(node, unit);
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Link into the graph the nodes whose vectors are already stored in the arena
+     * but that the graph does not cover yet (e.g. appended after the last saved graph)
+     *
+     * @return the number of nodes linked
+     */
+    public int linkStoredVectors() {
+        lock.writeLock().lock();
+        try {
+            int linked = 0;
+            float[] vector = new float[vectors.dimensions()];
+            for (int node = links.size(); node < vectors.size(); node++) {
+                vectors.get(node, vector);
+                link(node, vector);
+                linked++;
+            }
+            return linked;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void link(int node, float[] unit) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[1 + maxLinks(l)];
+        }
+        links.add(nodeLinks);
+        liveCount++;
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        SearchContext context = contexts.get();
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(unit, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap found = searchLayer(unit, current, efConstruction, l, context);
+            int[] candidates = drainBestFirst(found);
+            current = candidates[0];
+            int[] selected = selectNeighbours(node, candidates, m);
+            int[] own = nodeLinks[l];
+            for (int neighbour : selected) {
+                own[++own[0]] = neighbour;
+                connect(neighbour, node, l);
+            }
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Write the links of every node (vectors and removals are persisted elsewhere)
+     * to a temporary file, then move it over {@code file}
+     */
+    public void writeGraph(Path file) throws IOException {
+        lock.readLock().lock();
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(GRAPH_MAGIC);
+                out.writeInt(m);
+                out.writeInt(links.size());
+                out.writeInt(entryPoint);
+                out.writeInt(maxLevel);
+                for (int[][] nodeLinks : links) {
+                    out.writeByte(nodeLinks.length);
+                    for (int[] level : nodeLinks) {
+                        out.writeShort(level[0]);
+                        for (int i = 1; i <= level[0]; i++) {
+                            out.writeInt(level[i]);
+                        }
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Load a graph written by {@link #writeGraph} into this empty index
+     *
+     * @return the number of nodes it covers, 0 if the file is missing or does not
+     * match this index (other m, more nodes than stored vectors)
+     */
+    public int readGraph(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (!links.isEmpty() || in.readInt() != GRAPH_MAGIC || in.readInt() != m) {
+                return 0;
+            }
+            int nodes = in.readInt();
+            if (nodes > vectors.size()) {
+                return 0;
+            }
+            int savedEntryPoint = in.readInt();
+            int savedMaxLevel = in.readInt();
+            List<int[][]> loaded = new ArrayList<>(nodes);
+            for (int node = 0; node < nodes; node++) {
+                int[][] nodeLinks = new int[in.readUnsignedByte()][];
+                for (int l = 0; l < nodeLinks.length; l++) {
+                    int[] level = new int[1 + maxLinks(l)];
+                    level[0] = in.readUnsignedShort();
+                    for (int i = 1; i <= level[0]; i++) {
+                        level[i] = in.readInt();
+                    }
+                    nodeLinks[l] = level;
+                }
+                loaded.add(nodeLinks);
+            }
+            links.addAll(loaded);
+            entryPoint = savedEntryPoint;
+            maxLevel = savedMaxLevel;
+            liveCount = nodes;
+            return nodes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int node) {
+        lock.writeLock().lock();
+        try {
+            if (node < links.size() && !deleted.get(node)) {
+                deleted.set(node);
+                liveCount--;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copy the stored (normalized) vector of a node into {@code target}
+     */
+    public void vector(int node, float[] target) {
+        lock.readLock().lock();
+        try {
+            vectors.get(node, target);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isRemoved(int node) {
+        lock.readLock().lock();
+        try {
+            return deleted.get(node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The {@code k} nearest live nodes of {@code query}, most similar first
+     *
+     * Removed nodes take room in the candidate list, so ef is scaled by
+     * nodes / live nodes, and doubled again while fewer than k live nodes came back.
+     */
+    public List<Hit> search(float[] query, int k) {
+        float[] unit = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0 || liveCount == 0) {
+                return List.of();
+            }
+            int current = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedyClosest(unit, current, l);
+            }
+            int nodeCount = links.size();
+            int ef = Math.max(efSearch, k);
+            if (liveCount < nodeCount) {
+                ef = (int) Math.min(nodeCount, Math.ceil((double) ef * nodeCount / liveCount));
+            }
+            int wanted = Math.min(k, liveCount);
+            while (true) {
+                List<Hit> hits = liveHits(searchLayer(unit, current, ef, 0, contexts.get()), k);
+                if (hits.size() >= wanted || ef >= nodeCount) {
+                    return hits;
+                }
+                ef = (int) Math.min(nodeCount, 2L * ef);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The best {@code k} live nodes of a search result, most similar first
+     */
+    private List<Hit> liveHits(NodeHeap found, int k) {
+        int[] nodes = new int[found.size()];
+        float[] scores = new float[found.size()];
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            scores[i] = found.topScore();
+            nodes[i] = found.pop();
+        }
+        List<Hit> hits = new ArrayList<>(Math.min(k, nodes.length));
+        for (int i = 0; i < nodes.length && hits.size() < k; i++) {
+            if (!deleted.get(nodes[i])) {
+                hits.add(new Hit(nodes[i], scores[i]));
+            }
+        }
+        return hits;
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = vectors.dot(current, query);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links.get(current)[level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float score = vectors.dot(neighbours[i], query);
+                if (score > best) {
+                    best = score;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer; returns the ef best nodes, worst on top
+     */
+    private NodeHeap searchLayer(float[] query, int entry, int ef, int level, SearchContext context) {
+        context.reset(links.size());
+        NodeHeap candidates = context.candidates;
+        NodeHeap results = context.results;
+        float entryScore = vectors.dot(entry, query);
+        context.visit(entry);
+        candidates.push(entry, entryScore);
+        results.push(entry, entryScore);
+        while (!candidates.isEmpty()) {
+            float candidateScore = candidates.topScore();
+            int candidate = candidates.pop();
+            if (results.size() >= ef && candidateScore < results.topScore()) {
+                break;
+            }
+            int[][] candidateLinks = links.get(candidate);
+            if (level >= candidateLinks.length) {
+                continue;
+            }
+            int[] neighbours = candidateLinks[level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!context.visit(neighbour)) {
+                    continue;
+                }
+                float score = vectors.dot(neighbour, query);
+                if (results.size() < ef || score > results.topScore()) {
+                    candidates.push(neighbour, score);
+                    results.push(neighbour, score);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private static int[] drainBestFirst(NodeHeap worstFirst) {
+        int[] nodes = new int[worstFirst.size()];
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            nodes[i] = worstFirst.pop();
+        }
+        return nodes;
+    }
+
+    /**
+     * Diversity heuristic: keep a candidate only if it is closer to the base node
+     * than to every neighbour already kept, then fill up with the closest rejected ones
+     */
+    private int[] selectNeighbours(int base, int[] bestFirst, int max) {
+        int[] selected = new int[Math.min(max, bestFirst.length)];
+        int count = 0;
+        int[] rejected = new int[bestFirst.length];
+        int rejectedCount = 0;
+        for (int candidate : bestFirst) {
+            if (count == selected.length) {
+                break;
+            }
+            if (candidate == base) {
+                continue;
+            }
+            float toBase = vectors.dot(candidate, base);
+            boolean diverse = true;
+            for (int i = 0; i < count && diverse; i++) {
+                diverse = vectors.dot(candidate, selected[i]) <= toBase;
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+            } else {
+                rejected[rejectedCount++] = candidate;
+            }
+        }
+        for (int i = 0; i < rejectedCount && count < selected.length; i++) {
+            selected[count++] = rejected[i];
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int node, int neighbour, int level) {
+        int[] nodeLinks = links.get(node)[level];
+        int max = maxLinks(level);
+        if (nodeLinks[0] < max) {
+            nodeLinks[++nodeLinks[0]] = neighbour;
+            return;
+        }
+        // Full: replace the least similar link if the new one is closer
+        float newScore = vectors.dot(node, neighbour);
+        int worst = -1;
+        float worstScore = newScore;
+        for (int i = 1; i <= nodeLinks[0]; i++) {
+            float score = vectors.dot(node, nodeLinks[i]);
+            if (score < worstScore) {
+                worstScore = score;
+                worst = i;
+            }
+        }
+        if (worst > 0) {
+            nodeLinks[worst] = neighbour;
+        }
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return vector.clone();
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        float[] unit = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = vector[i] * inverse;
+        }
+        return unit;
+    }
+
+    /**
+     * Per-thread search state: heaps and a visited table reset by bumping a stamp
+     */
+    private static final class SearchContext {
+        private final NodeHeap candidates = new NodeHeap(256, true);
+        private final NodeHeap results = new NodeHeap(256, false);
+        private int[] visited = new int[1024];
+        private int stamp;
+
+        void reset(int nodes) {
+            candidates.clear();
+            results.clear();
+            if (visited.length < nodes) {
+                visited = new int[Math.max(nodes, visited.length * 2)];
+                stamp = 0;
+            }
+            if (++stamp == 0) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+        }
+
+        /**
+         * @return true the first time a node is seen in the current search
+         */
+        boolean visit(int node) {
+            if (visited[node] == stamp) {
+                return false;
+            }
+            visited[node] = stamp;
+            return true;
+        }
+    }
+}
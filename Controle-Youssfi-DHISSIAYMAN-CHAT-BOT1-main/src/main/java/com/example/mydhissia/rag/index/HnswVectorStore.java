@@ -0,0 +1,329 @@
+package com.example.mydhissia.rag.index;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * {@link VectorStore} backed by an {@link HnswIndex}: top-K retrieval walks the
+ * graph instead of scoring every stored chunk, and embeddings live off-heap as
+ * float32 in a {@link FloatVectorArena} instead of {@code List<Double>}.
+ *
+ * Documents arriving with an embedding are stored as is, others are embedded
+ * one by one like SimpleVectorStore does. Adding an existing id replaces it.
+ * Results carry a "distance" metadata entry (1 - cosine similarity).
+ * Filter expressions are not supported, as with SimpleVectorStore.
+ *
+ * When created with a directory the store is persistent:
+ * - vectors are appended to memory-mapped segment files ({@link VectorSegments})
+ * - documents and removals are appended to documents.log ({@link DocumentLog}), synced on every add/delete
+ *   and rewritten without dead records once removals make up a quarter of it
+ * - the graph is written to graph.bin by {@link #flush()}; nodes added since are re-linked on open
+ * Opening maps the segments and replays the log, so startup does not parse or re-embed anything.
+ */
+public class HnswVectorStore implements VectorStore, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HnswVectorStore.class);
+    private static final int VECTORS_PER_CHUNK = 4096;
+    private static final String LOG_FILE = "documents.log";
+    private static final String GRAPH_FILE = "graph.bin";
+
+    private final EmbeddingModel embeddingModel;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final Path directory;
+    private final Map<String, Integer> nodesById = new HashMap<>();
+    private DocumentLog documentLog;
+    private VectorSegments segments;
+    private volatile HnswIndex index;
+    /** Document of each node, without its embedding; a slot may still be null while its node is being added */
+    private volatile Document[] documents = new Document[VECTORS_PER_CHUNK];
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, int m, int efConstruction, int efSearch) {
+        this(embeddingModel, m, efConstruction, efSearch, null);
+    }
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, int m, int efConstruction, int efSearch, Path directory) {
+        this.embeddingModel = embeddingModel;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.directory = directory;
+        if (directory != null) {
+            open();
+        }
+    }
+
+    private void open() {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create " + directory, e);
+        }
+        List<Document> replayed = new ArrayList<>();
+        BitSet removed = new BitSet();
+        documentLog = DocumentLog.open(directory.resolve(LOG_FILE), entry -> {
+            if (entry.document() == null) {
+                removed.set(entry.node());
+                return;
+            }
+            while (replayed.size() <= entry.node()) {
+                replayed.add(null);
+            }
+            replayed.set(entry.node(), entry.document());
+        });
+        // A compacted log may end with the removal of the last node instead of its document
+        int nodes = Math.max(replayed.size(), removed.length());
+        int dimensions = VectorSegments.readDimensions(directory, VECTORS_PER_CHUNK);
+        if (nodes == 0 || dimensions <= 0) {
+            return;
+        }
+        segments = new VectorSegments(directory, dimensions, VECTORS_PER_CHUNK);
+        HnswIndex restored = new HnswIndex(
+                new FloatVectorArena(dimensions, VECTORS_PER_CHUNK, segments, nodes), m, efConstruction, efSearch);
+        int fromGraph;
+        try {
+            fromGraph = restored.readGraph(directory.resolve(GRAPH_FILE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + directory.resolve(GRAPH_FILE), e);
+        }
+        int relinked = restored.linkStoredVectors();
+
+        documents = replayed.toArray(new Document[Math.max(nodes, VECTORS_PER_CHUNK)]);
+        for (int node = 0; node < nodes; node++) {
+            Document document = documents[node];
+            if (document == null || removed.get(node)) {
+                documents[node] = null;
+                restored.remove(node);
+                continue;
+            }
+            Integer previous = nodesById.put(document.getId(), node);
+            if (previous != null) {
+                documents[previous] = null;
+                restored.remove(previous);
+            }
+        }
+        index = restored;
+        log.info("Opened vector store {}: {} documents, {} nodes from graph, {} re-linked, in {} ms",
+                directory, nodesById.size(), fromGraph, relinked, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public synchronized void add(List<Document> documentsToAdd) {
+        List<DocumentLog.Entry> added = new ArrayList<>(documentsToAdd.size());
+        List<Integer> replaced = new ArrayList<>();
+        for (Document document : documentsToAdd) {
+            List<Double> embedding = document.getEmbedding();
+            if (embedding == null || embedding.isEmpty()) {
+                embedding = embeddingModel.embed(document);
+            }
+            Integer previous = nodesById.get(document.getId());
+            if (previous != null) {
+                replaced.add(previous);
+            }
+            int node = put(document, toFloats(embedding));
+            added.add(new DocumentLog.Entry(node, documents[node]));
+        }
+        if (documentLog != null && !added.isEmpty()) {
+            // Vectors reach the disk before the log records that commit them
+            segments.force();
+            documentLog.appendAdds(added);
+            if (!replaced.isEmpty()) {
+                documentLog.appendRemoves(replaced);
+                compactLogIfNeeded();
+            }
+        }
+    }
+
+    private int put(Document document, float[] vector) {
+        if (index == null) {
+            FloatVectorArena arena;
+            if (directory != null) {
+                segments = new VectorSegments(directory, vector.length, VECTORS_PER_CHUNK);
+                arena = new FloatVectorArena(vector.length, VECTORS_PER_CHUNK, segments, 0);
+            } else {
+                arena = new FloatVectorArena(vector.length, VECTORS_PER_CHUNK);
+            }
+            index = new HnswIndex(arena, m, efConstruction, efSearch);
+        }
+        Integer previous = nodesById.remove(document.getId());
+        if (previous != null) {
+            index.remove(previous);
+            documents[previous] = null;
+        }
+        int node = index.add(vector);
+        if (node >= documents.length) {
+            documents = Arrays.copyOf(documents, Math.max(node + 1, documents.length * 2));
+        }
+        documents[node] = new Document(document.getId(), document.getContent(), new HashMap<>(document.getMetadata()));
+        nodesById.put(document.getId(), node);
+        return node;
+    }
+
+    @Override
+    public synchronized Optional<Boolean> delete(List<String> idList) {
+        List<Integer> removed = new ArrayList<>();
+        for (String id : idList) {
+            Integer node = nodesById.remove(id);
+            if (node != null) {
+                index.remove(node);
+                documents[node] = null;
+                removed.add(node);
+            }
+        }
+        if (documentLog != null && !removed.isEmpty()) {
+            documentLog.appendRemoves(removed);
+            compactLogIfNeeded();
+        }
+        return Optional.of(!removed.isEmpty());
+    }
+
+    private void compactLogIfNeeded() {
+        if (!documentLog.needsCompaction()) {
+            return;
+        }
+        List<DocumentLog.Entry> live = new ArrayList<>(nodesById.size());
+        for (int node : nodesById.values()) {
+            live.add(new DocumentLog.Entry(node, documents[node]));
+        }
+        live.sort(Comparator.comparingInt(DocumentLog.Entry::node));
+        documentLog.compact(live, index.nodeCount());
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        HnswIndex current = index;
+        if (current == null) {
+            return List.of();
+        }
+        float[] query = toFloats(embeddingModel.embed(request.getQuery()));
+        return search(current, query, request.getTopK(), request.getSimilarityThreshold());
+    }
+
+    /**
+     * Top-K search with an already embedded query
+     */
+    public List<Document> similaritySearch(float[] query, int topK) {
+        HnswIndex current = index;
+        return current == null ? List.of() : search(current, query, topK, SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL);
+    }
+
+    private List<Document> search(HnswIndex current, float[] query, int topK, double threshold) {
+        Document[] snapshot = documents;
+        List<Document> results = new ArrayList<>(topK);
+        for (HnswIndex.Hit hit : current.search(query, topK)) {
+            Document stored = hit.node() < snapshot.length ? snapshot[hit.node()] : null;
+            if (stored == null || hit.score() < threshold) {
+                continue;
+            }
+            Map<String, Object> metadata = new HashMap<>(stored.getMetadata());
+            metadata.put("distance", 1 - hit.score());
+            results.add(new Document(stored.getId(), stored.getContent(), metadata));
+        }
+        return results;
+    }
+
+    public synchronized int size() {
+        return nodesById.size();
+    }
+
+    /**
+     * Ids of the documents in the store
+     */
+    public synchronized Set<String> ids() {
+        return Set.copyOf(nodesById.keySet());
+    }
+
+    /**
+     * Set efSearch at runtime: higher is more accurate and slower
+     */
+    public void setEfSearch(int efSearch) {
+        HnswIndex current = index;
+        if (current != null) {
+            current.setEfSearch(efSearch);
+        }
+    }
+
+    /**
+     * Read the documents, with their embeddings, of a store saved by SimpleVectorStore (vectorstore.json)
+     */
+    public static List<Document> readJson(File file) {
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode root = mapper.readTree(file);
+            List<Document> documents = new ArrayList<>();
+            root.fields().forEachRemaining(entry -> {
+                JsonNode node = entry.getValue();
+                Map<String, Object> metadata = node.has("metadata")
+                        ? mapper.convertValue(node.get("metadata"), new TypeReference<Map<String, Object>>() {})
+                        : new HashMap<>();
+                JsonNode embedding = node.get("embedding");
+                List<Double> vector = new ArrayList<>(embedding.size());
+                embedding.forEach(value -> vector.add(value.asDouble()));
+                String id = node.has("id") ? node.get("id").asText() : entry.getKey();
+                Document document = new Document(id, node.path("content").asText(), metadata);
+                document.setEmbedding(vector);
+                documents.add(document);
+            });
+            return documents;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read vector store " + file, e);
+        }
+    }
+
+    /**
+     * Save the graph, so the next open does not have to re-link the nodes added since the last flush
+     */
+    public synchronized void flush() {
+        if (directory == null || index == null) {
+            return;
+        }
+        try {
+            segments.force();
+            index.writeGraph(directory.resolve(GRAPH_FILE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + directory.resolve(GRAPH_FILE), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (documentLog != null) {
+            flush();
+            documentLog.close();
+            documentLog = null;
+        }
+    }
+
+    static float[] toFloats(List<Double> embedding) {
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.get(i).floatValue();
+        }
+        return vector;
+    }
+}
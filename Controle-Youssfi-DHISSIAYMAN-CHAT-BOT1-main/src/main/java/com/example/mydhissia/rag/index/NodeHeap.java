@@ -0,0 +1,94 @@
+package com.example.mydhissia.rag.index;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of (node, score) pairs on primitive arrays, either best-first
+ * (highest score on top) or worst-first (lowest score on top)
+ */
+final class NodeHeap {
+    private final boolean maxOnTop;
+    private int[] nodes;
+    private float[] scores;
+    private int size;
+
+    NodeHeap(int capacity, boolean maxOnTop) {
+        this.maxOnTop = maxOnTop;
+        this.nodes = new int[Math.max(capacity, 4)];
+        this.scores = new float[nodes.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int topNode() {
+        return nodes[0];
+    }
+
+    float topScore() {
+        return scores[0];
+    }
+
+    void push(int node, float score) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!above(score, scores[parent])) {
+                break;
+            }
+            nodes[i] = nodes[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        scores[i] = score;
+    }
+
+    /**
+     * Remove the top pair and return its node
+     */
+    int pop() {
+        int top = nodes[0];
+        size--;
+        if (size > 0) {
+            int node = nodes[size];
+            float score = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && above(scores[child + 1], scores[child])) {
+                    child++;
+                }
+                if (!above(scores[child], score)) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+        return top;
+    }
+
+    private boolean above(float a, float b) {
+        return maxOnTop ? a > b : a < b;
+    }
+}
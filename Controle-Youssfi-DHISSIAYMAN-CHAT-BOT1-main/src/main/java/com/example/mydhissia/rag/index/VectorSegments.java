@@ -0,0 +1,93 @@
+package com.example.mydhissia.rag.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory-mapped segment files holding the vectors of a {@link FloatVectorArena},
+ * one file per chunk: segment-00000.vec, segment-00001.vec, ...
+ *
+ * Layout: a 16-byte header (magic "RVS1", version, dimensions, vectors per chunk)
+ * followed by little-endian float32 vectors. Opening a segment maps it without
+ * reading it; growing a chunk extends the file and maps the larger region.
+ */
+public class VectorSegments implements FloatVectorArena.ChunkAllocator {
+    private static final int MAGIC = 0x52565331;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private final Path directory;
+    private final int dimensions;
+    private final int vectorsPerChunk;
+    private final Map<Integer, MappedByteBuffer> mapped = new HashMap<>();
+
+    public VectorSegments(Path directory, int dimensions, int vectorsPerChunk) {
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.vectorsPerChunk = vectorsPerChunk;
+    }
+
+    /**
+     * Dimensions recorded in the first segment, or -1 if there is none
+     */
+    public static int readDimensions(Path directory, int vectorsPerChunk) {
+        Path first = segment(directory, 0);
+        if (!Files.exists(first)) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(first, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(12) != vectorsPerChunk) {
+                throw new IllegalStateException("Incompatible vector segment " + first);
+            }
+            return header.getInt(8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path segment(Path directory, int chunk) {
+        return directory.resolve(String.format("segment-%05d.vec", chunk));
+    }
+
+    @Override
+    public synchronized FloatBuffer allocate(int chunk, int vectors, FloatBuffer previous) {
+        Path file = segment(directory, chunk);
+        long bytes = HEADER_BYTES + (long) vectors * dimensions * Float.BYTES;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(bytes, channel.size()));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) == 0) {
+                buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, dimensions).putInt(12, vectorsPerChunk);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(8) != dimensions) {
+                throw new IllegalStateException("Incompatible vector segment " + file);
+            }
+            mapped.put(chunk, buffer);
+            return buffer.slice(HEADER_BYTES, buffer.capacity() - HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map " + file, e);
+        }
+    }
+
+    /**
+     * Write the mapped vectors through to disk
+     */
+    public synchronized void force() {
+        mapped.values().forEach(MappedByteBuffer::force);
+    }
+}
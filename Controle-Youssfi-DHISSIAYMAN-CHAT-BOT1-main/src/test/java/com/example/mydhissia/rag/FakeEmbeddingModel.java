@@ -0,0 +1,82 @@
+package com.example.mydhissia.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local EmbeddingModel for tests: texts registered with {@link #register} get their
+ * fixed vector, any other text a deterministic pseudo-random one derived from its hash.
+ * Documents that already carry an embedding keep it.
+ */
+public class FakeEmbeddingModel implements EmbeddingModel {
+
+    private final int dimensions;
+    private final Map<String, List<Double>> fixed = new ConcurrentHashMap<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger embeddedTexts = new AtomicInteger();
+
+    public FakeEmbeddingModel(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    public void register(String text, List<Double> vector) {
+        fixed.put(text, vector);
+    }
+
+    public int calls() {
+        return calls.get();
+    }
+
+    public int embeddedTexts() {
+        return embeddedTexts.get();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        calls.incrementAndGet();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<String> texts = request.getInstructions();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(vectorOf(texts.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        if (document.getEmbedding() != null && !document.getEmbedding().isEmpty()) {
+            return document.getEmbedding();
+        }
+        calls.incrementAndGet();
+        return vectorOf(document.getContent());
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private List<Double> vectorOf(String text) {
+        embeddedTexts.incrementAndGet();
+        List<Double> vector = fixed.get(text);
+        if (vector != null) {
+            return vector;
+        }
+        Random random = new Random(text.hashCode());
+        List<Double> generated = new ArrayList<>(dimensions);
+        for (int i = 0; i < dimensions; i++) {
+            generated.add(random.nextGaussian());
+        }
+        return generated;
+    }
+}
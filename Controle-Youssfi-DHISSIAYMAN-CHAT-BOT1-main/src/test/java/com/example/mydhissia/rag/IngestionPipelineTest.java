@@ -0,0 +1,116 @@
+package com.example.mydhissia.rag;
+
+import com.example.mydhissia.rag.index.HnswVectorStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Timeout(30)
+class IngestionPipelineTest {
+
+    private static final int FILES = 50;
+    private static final int CHUNKS_PER_FILE = 20;
+
+    @Test
+    void embedsInBoundedBatchesAndStoresEveryChunk() {
+        SlowEmbeddingModel embeddingModel = new SlowEmbeddingModel(5);
+        HnswVectorStore store = new HnswVectorStore(embeddingModel, 16, 100, 64);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        IngestionPipeline pipeline = new IngestionPipeline(embeddingModel, store, registry, 4, 16, 3, 64, 100);
+
+        IngestionPipeline.Stats stats = pipeline.run(files(), file -> chunks(file, file == 0));
+
+        int toEmbed = (FILES - 1) * CHUNKS_PER_FILE;
+        assertThat(stats.chunks()).isEqualTo(FILES * CHUNKS_PER_FILE);
+        assertThat(store.size()).isEqualTo(FILES * CHUNKS_PER_FILE);
+        // Chunks of file 0 already carry an embedding and are stored as is
+        assertThat(embeddingModel.embeddedTexts()).isEqualTo(toEmbed);
+        assertThat(embeddingModel.calls()).isEqualTo((toEmbed + 15) / 16);
+        assertThat(stats.embeddingBatches()).isEqualTo(embeddingModel.calls());
+        assertThat(embeddingModel.maxInFlight()).isBetween(1, 3);
+        assertThat(stats.writes()).isBetween(1, stats.embeddingBatches() + 2);
+        assertThat(stats.chunksPerSecond()).isPositive();
+        assertThat(registry.get("rag.ingestion.chunks").counter().count()).isEqualTo(FILES * CHUNKS_PER_FILE);
+        assertThat(registry.get("rag.ingestion.embedding").timer().count()).isEqualTo(embeddingModel.calls());
+    }
+
+    @Test
+    void embeddingFailureIsRethrown() {
+        SlowEmbeddingModel embeddingModel = new SlowEmbeddingModel(1);
+        embeddingModel.failFrom(5);
+        HnswVectorStore store = new HnswVectorStore(embeddingModel, 16, 100, 64);
+        IngestionPipeline pipeline = new IngestionPipeline(embeddingModel, store, new SimpleMeterRegistry(),
+                4, 16, 3, 64, 100);
+
+        assertThatThrownBy(() -> pipeline.run(files(), file -> chunks(file, false)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("embedding service down");
+    }
+
+    private static List<Integer> files() {
+        return IntStream.range(0, FILES).boxed().toList();
+    }
+
+    private static List<Document> chunks(int file, boolean embedded) {
+        return IntStream.range(0, CHUNKS_PER_FILE).mapToObj(i -> {
+            Document document = new Document("file-" + file + "-" + i, "chunk " + i + " of file " + file, Map.of());
+            if (embedded) {
+                document.setEmbedding(List.of(1.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0));
+            }
+            return document;
+        }).toList();
+    }
+
+    /**
+     * FakeEmbeddingModel with a fixed latency per request, recording the peak number of concurrent requests
+     */
+    private static class SlowEmbeddingModel extends FakeEmbeddingModel {
+
+        private final long latencyMs;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile int failFrom = Integer.MAX_VALUE;
+
+        SlowEmbeddingModel(long latencyMs) {
+            super(8);
+            this.latencyMs = latencyMs;
+        }
+
+        void failFrom(int request) {
+            this.failFrom = request;
+        }
+
+        int maxInFlight() {
+            return maxInFlight.get();
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            if (requests.incrementAndGet() >= failFrom) {
+                throw new IllegalStateException("embedding service down");
+            }
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(latencyMs);
+                return super.call(request);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.mydhissia.rag;
+
+import com.example.mydhissia.rag.index.HnswVectorStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Manifest diffing of RagIngestionService: each file is small enough to be a single chunk
+ */
+class RagIngestionServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel(8);
+
+    @Test
+    void secondRunOnlyEmbedsChangedFilesAndDeletesRemovedOnes() throws IOException {
+        Path a = write("a.txt", "alpha");
+        Path b = write("b.txt", "bravo");
+        Path c = write("c.txt", "charlie");
+        Path d = write("d.txt", "delta");
+        HnswVectorStore store = store();
+
+        RagIngestionService.IngestionResult first = ingest(store, a, b, c, d);
+        assertThat(first.changedFiles()).isEqualTo(4);
+        assertThat(first.addedChunks()).isEqualTo(4);
+        assertThat(store.size()).isEqualTo(4);
+
+        write("b.txt", "bravo, changed");
+        // c.txt is no longer a resource, d.txt is still listed but cannot be read
+        Files.delete(d);
+        int embedded = embeddingModel.embeddedTexts();
+        RagIngestionService.IngestionResult second = ingest(store, a, b, d);
+
+        assertThat(second.files()).isEqualTo(3);
+        assertThat(second.changedFiles()).isEqualTo(1);
+        assertThat(second.removedFiles()).isEqualTo(1);
+        assertThat(second.addedChunks()).isEqualTo(1);
+        assertThat(second.deletedChunks()).isEqualTo(2);
+        assertThat(embeddingModel.embeddedTexts() - embedded).isEqualTo(1);
+        assertThat(contents(store)).containsExactlyInAnyOrder("alpha", "bravo, changed", "delta");
+
+        // Nothing changed: nothing is split, embedded or deleted
+        embedded = embeddingModel.embeddedTexts();
+        RagIngestionService.IngestionResult third = ingest(store, a, b, d);
+        assertThat(third.changedFiles()).isZero();
+        assertThat(third.deletedChunks()).isZero();
+        assertThat(embeddingModel.embeddedTexts()).isEqualTo(embedded);
+        assertThat(store.size()).isEqualTo(3);
+    }
+
+    @Test
+    void withoutManifestKeepsMatchingDocumentsAndDeletesUntrackedOnes() throws IOException {
+        Path a = write("a.txt", "alpha");
+        Path b = write("b.txt", "bravo");
+        HnswVectorStore store = store();
+        ingest(store, a, b);
+        // Documents from before the manifest existed, with random ids
+        Document legacy = new Document("legacy-1", "alpha", Map.of());
+        legacy.setEmbedding(List.of(1.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0));
+        store.add(List.of(legacy));
+        Files.delete(directory.resolve("store").resolve("manifest.json"));
+
+        int embedded = embeddingModel.embeddedTexts();
+        RagIngestionService.IngestionResult result = ingest(store, a, b);
+
+        assertThat(embeddingModel.embeddedTexts()).isEqualTo(embedded);
+        assertThat(result.addedChunks()).isZero();
+        assertThat(result.deletedChunks()).isEqualTo(1);
+        assertThat(store.ids()).doesNotContain("legacy-1");
+        assertThat(contents(store)).containsExactlyInAnyOrder("alpha", "bravo");
+        assertThat(Files.exists(directory.resolve("store").resolve("manifest.json"))).isTrue();
+    }
+
+    private HnswVectorStore store() {
+        return new HnswVectorStore(embeddingModel, 16, 100, 64, directory.resolve("store"));
+    }
+
+    private RagIngestionService.IngestionResult ingest(HnswVectorStore store, Path... files) {
+        IngestionPipeline pipeline = new IngestionPipeline(embeddingModel, store, new SimpleMeterRegistry(),
+                2, 16, 2, 64, 100);
+        RagIngestionService service = new RagIngestionService(store, pipeline);
+        Resource[] resources = new Resource[files.length];
+        for (int i = 0; i < files.length; i++) {
+            resources[i] = new FileSystemResource(files[i]);
+        }
+        ReflectionTestUtils.setField(service, "resources", resources);
+        ReflectionTestUtils.setField(service, "storePath", directory.resolve("store").toString());
+        ReflectionTestUtils.setField(service, "vectorStorePath", directory.resolve("vectorstore.json").toString());
+        return service.ingest();
+    }
+
+    /** Chunk vectors have positive components, so none of them is filtered out by the similarity threshold */
+    private Path write(String name, String content) throws IOException {
+        Random random = new Random(content.hashCode());
+        embeddingModel.register(content, random.doubles(8).boxed().toList());
+        return Files.writeString(directory.resolve(name), content);
+    }
+
+    /** The store holds a handful of documents, a top-10 search returns all of them */
+    private static List<String> contents(HnswVectorStore store) {
+        float[] query = new float[8];
+        Arrays.fill(query, 1f);
+        return store.similaritySearch(query, 10).stream().map(Document::getContent).toList();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.mydhissia.rag.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 16;
+
+    private final Random random = new Random(5);
+
+    @Test
+    void stillReturnsKLiveNodesWhenMostNodesAreRemoved() {
+        HnswIndex index = new HnswIndex(new FloatVectorArena(DIMENSIONS, 1024), 8, 100, 10);
+        float[][] vectors = new float[2_000][];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = randomVector();
+            index.add(vectors[i]);
+        }
+        // Only every 20th node stays: an ef of 10 alone would mostly hold removed nodes
+        for (int node = 0; node < vectors.length; node++) {
+            if (node % 20 != 0) {
+                index.remove(node);
+            }
+        }
+
+        for (int q = 0; q < 50; q++) {
+            int target = 20 * random.nextInt(vectors.length / 20);
+            List<HnswIndex.Hit> hits = index.search(vectors[target], 10);
+            assertThat(hits).hasSize(10);
+            assertThat(hits.get(0).node()).isEqualTo(target);
+            assertThat(hits.stream().allMatch(hit -> hit.node() % 20 == 0)).isTrue();
+        }
+    }
+
+    @Test
+    void returnsEveryLiveNodeWhenFewerThanKAreLeft() {
+        HnswIndex index = new HnswIndex(new FloatVectorArena(DIMENSIONS, 1024), 8, 100, 10);
+        for (int i = 0; i < 100; i++) {
+            index.add(randomVector());
+        }
+        for (int node = 3; node < 100; node++) {
+            index.remove(node);
+        }
+
+        assertThat(index.search(randomVector(), 10)).hasSize(3);
+    }
+
+    @Test
+    void rejectsFewerThanTwoLinksPerNode() {
+        assertThatThrownBy(() -> new HnswIndex(new FloatVectorArena(DIMENSIONS, 1024), 1, 100, 10))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("m must be at least 2");
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.mydhissia.rag.index;
+
+import com.example.mydhissia.rag.FakeEmbeddingModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Recall and latency of HnswVectorStore against SimpleVectorStore (exact linear scan)
+ * on clustered synthetic embeddings.
+ *
+ * The unit suite only checks recall on a small corpus. The latency comparison runs with
+ * -Drag.benchmark=true, and its sizes can be raised, e.g.
+ * mvn test -Dtest=HnswRecallBenchmarkTest -Drag.benchmark=true -Drag.benchmark.documents=200000 -Drag.benchmark.dimensions=768
+ */
+class HnswRecallBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(HnswRecallBenchmarkTest.class);
+    private static final int CLUSTERS = 100;
+    private static final int TOP_K = 10;
+
+    @Test
+    void hnswRecallAgainstLinearScan() {
+        Run run = run(2_000, 64, 100);
+        assertThat(run.recall()).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "rag.benchmark", matches = "true")
+    void hnswLatencyAgainstLinearScan() {
+        int documents = Integer.getInteger("rag.benchmark.documents", 10_000);
+        int dimensions = Integer.getInteger("rag.benchmark.dimensions", 256);
+        Run run = run(documents, dimensions, Integer.getInteger("rag.benchmark.queries", 200));
+
+        log.info("HNSW benchmark: {} documents x {} dims, build {} ms", documents, dimensions, run.buildMs());
+        log.info("  SimpleVectorStore: p50 {} ms, p99 {} ms",
+                percentileMs(run.linearNanos(), 0.5), percentileMs(run.linearNanos(), 0.99));
+        log.info("  HnswVectorStore:   p50 {} ms, p99 {} ms, recall@{} {}",
+                percentileMs(run.hnswNanos(), 0.5), percentileMs(run.hnswNanos(), 0.99), TOP_K, run.recall());
+
+        assertThat(run.recall()).isGreaterThanOrEqualTo(0.9);
+        assertThat(percentileMs(run.hnswNanos(), 0.5)).isLessThan(percentileMs(run.linearNanos(), 0.5));
+    }
+
+    private record Run(long buildMs, long[] linearNanos, long[] hnswNanos, double recall) {
+    }
+
+    private static Run run(int documentCount, int dimensions, int queryCount) {
+        Random random = new Random(7);
+        double[][] centers = new double[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centers[c] = gaussian(random, dimensions, 1.0, null);
+        }
+
+        FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel(dimensions);
+        SimpleVectorStore linear = new SimpleVectorStore(embeddingModel);
+        HnswVectorStore hnsw = new HnswVectorStore(embeddingModel, 16, 100, 64);
+
+        List<Document> documents = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++) {
+            Document document = new Document("doc-" + i, "chunk " + i, Map.of());
+            document.setEmbedding(toList(gaussian(random, dimensions, 0.5, centers[random.nextInt(CLUSTERS)])));
+            documents.add(document);
+        }
+        long buildStart = System.nanoTime();
+        hnsw.add(documents);
+        long buildMs = (System.nanoTime() - buildStart) / 1_000_000;
+        linear.add(documents);
+
+        List<String> queries = new ArrayList<>(queryCount);
+        for (int q = 0; q < queryCount; q++) {
+            String query = "query " + q;
+            embeddingModel.register(query, toList(gaussian(random, dimensions, 0.5, centers[random.nextInt(CLUSTERS)])));
+            queries.add(query);
+        }
+
+        long[] linearNanos = new long[queryCount];
+        long[] hnswNanos = new long[queryCount];
+        int found = 0;
+        for (int q = 0; q < queryCount; q++) {
+            SearchRequest request = SearchRequest.query(queries.get(q)).withTopK(TOP_K);
+
+            long start = System.nanoTime();
+            List<Document> exact = linear.similaritySearch(request);
+            linearNanos[q] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Document> approximate = hnsw.similaritySearch(request);
+            hnswNanos[q] = System.nanoTime() - start;
+
+            Set<String> expected = new HashSet<>();
+            exact.forEach(document -> expected.add(document.getId()));
+            found += (int) approximate.stream().filter(document -> expected.contains(document.getId())).count();
+        }
+        return new Run(buildMs, linearNanos, hnswNanos, (double) found / (queryCount * TOP_K));
+    }
+
+    private static double[] gaussian(Random random, int dimensions, double sigma, double[] center) {
+        double[] vector = new double[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (center != null ? center[i] : 0) + random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+
+    private static List<Double> toList(double[] vector) {
+        List<Double> list = new ArrayList<>(vector.length);
+        for (double v : vector) {
+            list.add(v);
+        }
+        return list;
+    }
+
+    private static double percentileMs(long[] nanos, double percentile) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+}
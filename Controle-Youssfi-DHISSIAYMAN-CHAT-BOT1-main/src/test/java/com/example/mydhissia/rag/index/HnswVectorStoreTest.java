@@ -0,0 +1,126 @@
+package com.example.mydhissia.rag.index;
+
+import com.example.mydhissia.rag.FakeEmbeddingModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Persistence of HnswVectorStore: segments + documents.log + graph.bin.
+ * A store that is not closed stands for a crash.
+ */
+class HnswVectorStoreTest {
+
+    private static final int DIMENSIONS = 16;
+
+    @TempDir
+    Path directory;
+
+    private final FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel(DIMENSIONS);
+    private final Random random = new Random(3);
+
+    @Test
+    void reopensFromSegmentsLogAndGraphAndRelinksNodesAddedAfterFlush() {
+        HnswVectorStore store = open();
+        List<Document> flushed = documents(0, 500);
+        store.add(flushed);
+        store.flush();
+        List<Document> afterFlush = documents(500, 700);
+        store.add(afterFlush);
+        store.delete(IntStream.range(0, 50).mapToObj(HnswVectorStoreTest::id).toList());
+
+        HnswVectorStore reopened = open();
+
+        assertThat(reopened.size()).isEqualTo(650);
+        assertThat(embeddingModel.calls()).isZero();
+        for (int i : new int[]{50, 321, 499, 500, 650, 699}) {
+            Document source = i < 500 ? flushed.get(i) : afterFlush.get(i - 500);
+            Document hit = reopened.similaritySearch(vector(source), 1).get(0);
+            assertThat(hit.getId()).isEqualTo(id(i));
+            assertThat(hit.getContent()).isEqualTo("chunk " + i);
+            assertThat(hit.getMetadata()).containsEntry("source", "file-" + (i % 7) + ".txt");
+            assertThat(hit.getMetadata()).containsEntry("index", (long) i);
+        }
+        for (int i = 0; i < 50; i++) {
+            List<Document> hits = reopened.similaritySearch(vector(flushed.get(i)), 5);
+            assertThat(hits.stream().map(Document::getId).toList()).doesNotContain(id(i));
+        }
+    }
+
+    @Test
+    void truncatesTornLogTailAndKeepsAppending() throws IOException {
+        HnswVectorStore store = open();
+        store.add(documents(0, 100));
+        Files.write(directory.resolve("documents.log"), new byte[]{0, 0, 1, 0, 7, 7}, StandardOpenOption.APPEND);
+
+        HnswVectorStore reopened = open();
+        assertThat(reopened.size()).isEqualTo(100);
+        List<Document> more = documents(100, 150);
+        reopened.add(more);
+
+        HnswVectorStore again = open();
+        assertThat(again.size()).isEqualTo(150);
+        assertThat(again.similaritySearch(vector(more.get(10)), 1).get(0).getId()).isEqualTo(id(110));
+    }
+
+    @Test
+    void compactsLogOnceRemovalsDominate() throws IOException {
+        HnswVectorStore store = open();
+        List<Document> all = documents(0, 3000);
+        store.add(all);
+        long fullLog = Files.size(directory.resolve("documents.log"));
+        // The last nodes are removed too, so the compacted log has to keep the node count
+        store.delete(IntStream.range(1000, 3000).mapToObj(HnswVectorStoreTest::id).toList());
+        assertThat(Files.size(directory.resolve("documents.log"))).isLessThan(fullLog / 2);
+        store.close();
+
+        HnswVectorStore reopened = open();
+        assertThat(reopened.size()).isEqualTo(1000);
+        assertThat(reopened.similaritySearch(vector(all.get(999)), 1).get(0).getId()).isEqualTo(id(999));
+        List<Document> more = documents(3000, 3010);
+        reopened.add(more);
+        reopened.close();
+
+        HnswVectorStore again = open();
+        assertThat(again.size()).isEqualTo(1010);
+        assertThat(again.similaritySearch(vector(more.get(5)), 1).get(0).getId()).isEqualTo(id(3005));
+    }
+
+    private HnswVectorStore open() {
+        return new HnswVectorStore(embeddingModel, 16, 100, 64, directory);
+    }
+
+    private List<Document> documents(int from, int to) {
+        List<Document> documents = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            Document document = new Document(id(i), "chunk " + i, Map.of("source", "file-" + (i % 7) + ".txt", "index", (long) i));
+            List<Double> embedding = new ArrayList<>(DIMENSIONS);
+            for (int d = 0; d < DIMENSIONS; d++) {
+                embedding.add(random.nextGaussian());
+            }
+            document.setEmbedding(embedding);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    private static String id(int i) {
+        return "doc-" + i;
+    }
+
+    private static float[] vector(Document document) {
+        return HnswVectorStore.toFloats(document.getEmbedding());
+    }
+}
@@ -1,6 +1,7 @@
-import { Component, OnInit } from '@angular/core';
+import { Component, OnDestroy, OnInit } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { HttpClient, HttpClientModule } from '@angular/common/http';
+import { KeycloakService } from 'keycloak-angular';
 
 @Component({
   selector: 'app-analytics',
@@ -33,15 +34,92 @@ import { HttpClient, HttpClientModule } from '@angular/common/http';
     </div>
   `
 })
-export class AnalyticsComponent implements OnInit {
+export class AnalyticsComponent implements OnInit, OnDestroy {
   analyticsData: any = null;
   loading = false;
   error = '';
+  private stream?: AbortController;
+  private retryTimer?: ReturnType<typeof setTimeout>;
+  private retryDelay = 1000;
 
-  constructor(private http: HttpClient) {}
+  constructor(private http: HttpClient, private keycloak: KeycloakService) {}
 
   ngOnInit() {
     this.loadAnalytics();
+    this.openStream();
+  }
+
+  ngOnDestroy() {
+    clearTimeout(this.retryTimer);
+    this.stream?.abort();
+  }
+
+  // Live updates: a full snapshot on connect, then only the counters that changed.
+  // EventSource cannot send the Authorization header, so the stream is read with fetch
+  // and the Keycloak token, and reconnects with a backoff when it drops.
+  private async openStream() {
+    const controller = new AbortController();
+    this.stream = controller;
+    try {
+      const headers: Record<string, string> = { Accept: 'text/event-stream' };
+      if (this.keycloak.isLoggedIn()) {
+        await this.keycloak.updateToken(30);
+        headers['Authorization'] = 'Bearer ' + (await this.keycloak.getToken());
+      }
+      const response = await fetch('http://localhost:8088/api/analytics/stream', { headers, signal: controller.signal });
+      if (!response.ok || !response.body) {
+        throw new Error('Analytics stream returned ' + response.status);
+      }
+      this.retryDelay = 1000;
+      await this.readEvents(response.body);
+    } catch (err) {
+      if (controller.signal.aborted) {
+        return;
+      }
+      console.error(err);
+    }
+    if (!controller.signal.aborted) {
+      this.retryTimer = setTimeout(() => this.openStream(), this.retryDelay);
+      this.retryDelay = Math.min(this.retryDelay * 2, 30000);
+    }
+  }
+
+  private async readEvents(body: ReadableStream<Uint8Array>) {
+    const reader = body.pipeThrough(new TextDecoderStream()).getReader();
+    let buffer = '';
+    let event = 'message';
+    let data: string[] = [];
+    while (true) {
+      const { value, done } = await reader.read();
+      if (done) {
+        return;
+      }
+      buffer += value;
+      const lines = buffer.split(/\r\n|\r|\n/);
+      buffer = lines.pop() ?? '';
+      for (const line of lines) {
+        if (line === '') {
+          if (data.length) {
+            this.onEvent(event, data.join('\n'));
+          }
+          event = 'message';
+          data = [];
+        } else if (line.startsWith('event:')) {
+          event = line.slice(6).trim();
+        } else if (line.startsWith('data:')) {
+          data.push(line.slice(5).replace(/^ /, ''));
+        }
+      }
+    }
+  }
+
+  private onEvent(event: string, data: string) {
+    if (event === 'snapshot') {
+      this.analyticsData = JSON.parse(data);
+      this.error = '';
+    } else if (event === 'delta') {
+      this.analyticsData = { ...this.analyticsData, ...JSON.parse(data) };
+    }
   }
 
   loadAnalytics() {
@@ -259,19 +259,11 @@ export class BillListComponent implements OnInit {
     this.generating = true;
     this.billingService.generateBills().subscribe({
       next: (response) => {
-        this.generating = false;
         console.log('Generate bills response:', response);
-        
-        if (response && response.success) {
-          const message = response.billsCreated > 0 
-            ? `✅ ${response.billsCreated} facture(s) créée(s) avec succès! Total: ${response.totalBills || 0} facture(s)`
-            : `ℹ️ Aucune nouvelle facture créée. ${response.totalBills || 0} facture(s) existante(s) déjà.`;
-          this.alertService.success(message);
-          // Reload bills list after a short delay to ensure backend is ready
-          setTimeout(() => {
-            this.loadBills();
-          }, 500);
+        if (response && response.success && response.jobId) {
+          this.followGenerationJob(response.jobId);
         } else {
+          this.generating = false;
           const message = response?.message || 'Erreur lors de la génération des factures';
           this.alertService.error(message);
         }
@@ -305,5 +297,35 @@ export class BillListComponent implements OnInit {
       }
     });
   }
-}
 
+  /**
+   * Follow a background generation job until it finishes
+   */
+  private followGenerationJob(jobId: string): void {
+    let last: any = null;
+    this.billingService.pollGenerationJob(jobId).subscribe({
+      next: (job) => {
+        last = job;
+        console.log('Generation job progress:', job);
+      },
+      error: (err) => {
+        this.generating = false;
+        console.error('Error polling generation job:', err);
+        this.alertService.error(err.error?.message || 'Erreur lors du suivi de la génération des factures');
+      },
+      complete: () => {
+        this.generating = false;
+        if (last && last.status === 'COMPLETED') {
+          const message = last.billsCreated > 0
+            ? `✅ ${last.billsCreated} facture(s) créée(s) avec succès!`
+            : `ℹ️ Aucune nouvelle facture créée.`;
+          this.alertService.success(message);
+          this.loadBills();
+        } else {
+          this.alertService.error(last?.message || 'Erreur lors de la génération des factures');
+          this.loadBills();
+        }
+      }
+    });
+  }
+}
@@ -1,7 +1,7 @@
 import { Injectable } from '@angular/core';
 import { HttpClient, HttpHeaders, HttpErrorResponse } from '@angular/common/http';
-import { Observable, throwError } from 'rxjs';
-import { map, catchError } from 'rxjs/operators';
+import { Observable, throwError, timer } from 'rxjs';
+import { map, catchError, switchMap, takeWhile } from 'rxjs/operators';
 import { Bill } from '../models/bill.model';
 import { ApiConfig } from '../config/api.config';
 
@@ -80,7 +80,7 @@ export class BillingService {
    * Generate bills for all customers
    * POST /api/bills/generate (via gateway)
    * Gateway rewrites to /bills/generate and forwards to BILLING-SERVICE
-   * Creates bills automatically for all existing customers with all existing products
+   * Submits a background generation job and returns its jobId immediately
    * No need to restart the billing service!
    */
   generateBills(): Observable<any> {
@@ -89,5 +89,17 @@ export class BillingService {
     console.log('HTTP Options:', this.httpOptions);
     return this.http.post<any>(url, {}, this.httpOptions);
   }
-}
 
+  /**
+   * Poll a bill generation job until it finishes
+   * GET /api/bills/generate/{jobId} (via gateway)
+   * Emits the job status every second, the last emission is the final status
+   */
+  pollGenerationJob(jobId: string): Observable<any> {
+    const finished = ['COMPLETED', 'FAILED', 'CANCELLED'];
+    return timer(0, 1000).pipe(
+      switchMap(() => this.http.get<any>(`${ApiConfig.BILLS_ENDPOINT}/generate/${jobId}`)),
+      takeWhile(job => !finished.includes(job?.status), true)
+    );
+  }
+}
@@ -0,0 +1,73 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.config;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Caching Reactive Jwt Decoder
+ *
+ * Keeps the tokens the delegate has validated, keyed by the SHA-256 of the
+ * token, until their exp claim (at most maxTtl). A token seen again is returned
+ * without parsing or verifying its signature; concurrent requests with a new
+ * token share a single verification. Rejected tokens are never cached.
+ */
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+
+    private final ReactiveJwtDecoder delegate;
+    private final AsyncCache<String, Jwt> cache;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, long maxSize, Duration maxTtl) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Jwt>() {
+                    @Override
+                    public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+                        Instant expiresAt = jwt.getExpiresAt();
+                        if (expiresAt == null) {
+                            return maxTtl.toNanos();
+                        }
+                        Duration remaining = Duration.between(Instant.now(), expiresAt);
+                        return Math.max(0, Math.min(maxTtl.toNanos(), remaining.toNanos()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, jwt, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .buildAsync();
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) throws JwtException {
+        // The future is shared by every request with this token: one client going away must not cancel it
+        return Mono.fromFuture(() -> cache.get(hash(token), (key, executor) -> delegate.decode(token).toFuture()), true);
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the gateway JWT decoder (prefix gateway.jwt)
+ */
+@ConfigurationProperties(prefix = "gateway.jwt")
+public class JwtCacheProperties {
+
+    /** JWK set of the Keycloak realm */
+    private String jwkSetUri = "http://localhost:8080/realms/ecom-realm/protocol/openid-connect/certs";
+    /** Expected iss claim, or empty to only check the timestamps */
+    private String issuerUri;
+    /** Keep validated tokens, so the same token is only verified once */
+    private boolean cacheEnabled = true;
+    private long cacheMaxSize = 100_000;
+    /** Upper bound of the time a validated token is kept, whatever its exp */
+    private Duration cacheMaxTtl = Duration.ofMinutes(5);
+    /** Period of the background JWK set refresh */
+    private Duration jwkRefreshInterval = Duration.ofMinutes(5);
+    /** Minimum time between two refreshes caused by an unknown key id */
+    private Duration jwkMinRefetchInterval = Duration.ofSeconds(30);
+
+    public String getJwkSetUri() {
+        return jwkSetUri;
+    }
+
+    public void setJwkSetUri(String jwkSetUri) {
+        this.jwkSetUri = jwkSetUri;
+    }
+
+    public String getIssuerUri() {
+        return issuerUri;
+    }
+
+    public void setIssuerUri(String issuerUri) {
+        this.issuerUri = issuerUri;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public long getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(long cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public Duration getCacheMaxTtl() {
+        return cacheMaxTtl;
+    }
+
+    public void setCacheMaxTtl(Duration cacheMaxTtl) {
+        this.cacheMaxTtl = cacheMaxTtl;
+    }
+
+    public Duration getJwkRefreshInterval() {
+        return jwkRefreshInterval;
+    }
+
+    public void setJwkRefreshInterval(Duration jwkRefreshInterval) {
+        this.jwkRefreshInterval = jwkRefreshInterval;
+    }
+
+    public Duration getJwkMinRefetchInterval() {
+        return jwkMinRefetchInterval;
+    }
+
+    public void setJwkMinRefetchInterval(Duration jwkMinRefetchInterval) {
+        this.jwkMinRefetchInterval = jwkMinRefetchInterval;
+    }
+}
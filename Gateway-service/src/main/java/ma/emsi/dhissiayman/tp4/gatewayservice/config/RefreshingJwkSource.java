@@ -0,0 +1,98 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.config;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Refreshing Jwk Source
+ *
+ * Holds the JWK set of the realm in memory and reloads it in the background
+ * every refresh interval, so no request waits for the identity provider.
+ * A token signed with an unknown key id (key rotation) triggers one reload,
+ * shared by all concurrent requests and at most once per min-refetch interval.
+ */
+public class RefreshingJwkSource implements Function<SignedJWT, Flux<JWK>>, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(RefreshingJwkSource.class);
+
+    private final WebClient webClient;
+    private final String jwkSetUri;
+    private final long minRefetchNanos;
+    private final AtomicReference<JWKSet> jwkSet = new AtomicReference<>(new JWKSet());
+    private final AtomicLong lastFetch = new AtomicLong(System.nanoTime() - Long.MAX_VALUE / 2);
+    private final Disposable refresher;
+    private volatile Mono<JWKSet> pendingFetch;
+
+    public RefreshingJwkSource(WebClient webClient, String jwkSetUri,
+                               Duration refreshInterval, Duration minRefetchInterval) {
+        this.webClient = webClient;
+        this.jwkSetUri = jwkSetUri;
+        this.minRefetchNanos = minRefetchInterval.toNanos();
+        this.refresher = Flux.interval(Duration.ZERO, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> fetch().onErrorResume(e -> {
+                    logger.warn("Failed to refresh JWK set from {}: {}", jwkSetUri, e.toString());
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @Override
+    public Flux<JWK> apply(SignedJWT jwt) {
+        JWKSelector selector = new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader()));
+        List<JWK> keys = selector.select(jwkSet.get());
+        if (!keys.isEmpty() || System.nanoTime() - lastFetch.get() < minRefetchNanos) {
+            return Flux.fromIterable(keys);
+        }
+        return fetch().flatMapIterable(selector::select);
+    }
+
+    private synchronized Mono<JWKSet> fetch() {
+        Mono<JWKSet> fetch = pendingFetch;
+        if (fetch == null) {
+            fetch = webClient.get()
+                    .uri(jwkSetUri)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .map(RefreshingJwkSource::parse)
+                    .doOnNext(loaded -> {
+                        jwkSet.set(loaded);
+                        lastFetch.set(System.nanoTime());
+                        logger.debug("Loaded {} key(s) from {}", loaded.getKeys().size(), jwkSetUri);
+                    })
+                    .doFinally(signal -> pendingFetch = null)
+                    .cache();
+            pendingFetch = fetch;
+        }
+        return fetch;
+    }
+
+    private static JWKSet parse(String body) {
+        try {
+            return JWKSet.parse(body);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Invalid JWK set: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refresher.dispose();
+    }
+}
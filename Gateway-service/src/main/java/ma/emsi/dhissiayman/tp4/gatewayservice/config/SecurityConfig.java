@@ -2,6 +2,11 @@ package ma.emsi.dhissiayman.tp4.gatewayservice.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
@@ -9,6 +14,7 @@ import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.reactive.CorsConfigurationSource;
 import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.reactive.function.client.WebClient;
 
 import java.util.List;
 
@@ -37,6 +43,32 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * JWK set kept in memory and refreshed in the background
+     */
+    @Bean
+    public RefreshingJwkSource jwkSource(JwtCacheProperties properties, WebClient.Builder webClientBuilder) {
+        return new RefreshingJwkSource(webClientBuilder.build(), properties.getJwkSetUri(),
+                properties.getJwkRefreshInterval(), properties.getJwkMinRefetchInterval());
+    }
+
+    /**
+     * Decoder used by oauth2ResourceServer().jwt(): signatures are checked against
+     * the in-memory JWK set and validated tokens are cached until they expire
+     */
+    @Bean
+    public ReactiveJwtDecoder jwtDecoder(JwtCacheProperties properties, RefreshingJwkSource jwkSource) {
+        NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSource).build();
+        OAuth2TokenValidator<Jwt> validator = properties.getIssuerUri() == null || properties.getIssuerUri().isBlank()
+                ? JwtValidators.createDefault()
+                : JwtValidators.createDefaultWithIssuer(properties.getIssuerUri());
+        decoder.setJwtValidator(validator);
+        if (!properties.isCacheEnabled()) {
+            return decoder;
+        }
+        return new CachingReactiveJwtDecoder(decoder, properties.getCacheMaxSize(), properties.getCacheMaxTtl());
+    }
+
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
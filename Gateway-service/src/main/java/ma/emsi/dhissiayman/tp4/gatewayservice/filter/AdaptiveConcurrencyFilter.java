@@ -0,0 +1,102 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive Concurrency Filter
+ *
+ * Bounds the requests in flight to each downstream service (the host of the
+ * route uri, e.g. BILLING-SERVICE) with an {@link AdaptiveLimit} that follows
+ * the measured latency. Once a service is at its limit, further requests are
+ * answered right away with 503 and Retry-After instead of queueing behind a
+ * backend whose latency is already rising.
+ *
+ * The latency sample is the time to the response headers, not to the end of
+ * the body: NDJSON streams, SSE and large listings keep their slot until they
+ * complete, but a long body is never mistaken for a slow or dropped request.
+ *
+ * Runs after the {@link ResponseCacheFilter}, so cache hits and coalesced
+ * requests never take a slot. Limits are exposed as gateway.concurrency.limit
+ * and gateway.concurrency.in-flight, shed requests as gateway.concurrency.rejected.
+ */
+@Component
+public class AdaptiveConcurrencyFilter implements GlobalFilter, Ordered {
+
+    private final ConcurrencyLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AdaptiveLimit> limits = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyFilter(ConcurrencyLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!properties.isEnabled() || route == null || route.getUri().getHost() == null) {
+            return chain.filter(exchange);
+        }
+        String service = route.getUri().getHost();
+        AdaptiveLimit limit = limits.computeIfAbsent(service, this::register);
+        if (!limit.tryAcquire()) {
+            meterRegistry.counter("gateway.concurrency.rejected", "service", service).increment();
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set("Retry-After", "1");
+            return response.setComplete();
+        }
+        long start = System.nanoTime();
+        AtomicLong headersRtt = new AtomicLong(-1);
+        exchange.getResponse().beforeCommit(() -> {
+            headersRtt.compareAndSet(-1, System.nanoTime() - start);
+            return Mono.empty();
+        });
+        return chain.filter(exchange)
+                .doFinally(signal -> {
+                    long rtt = headersRtt.get() >= 0 ? headersRtt.get() : System.nanoTime() - start;
+                    limit.release(rtt, isDrop(signal, exchange.getResponse().getStatusCode(), rtt));
+                });
+    }
+
+    private boolean isDrop(SignalType signal, HttpStatusCode status, long rttNanos) {
+        if (signal == SignalType.ON_ERROR || rttNanos > TimeUnit.MILLISECONDS.toNanos(properties.getMaxLatencyMs())) {
+            return true;
+        }
+        return status != null && (status.value() == 503 || status.value() == 504 || status.value() == 429);
+    }
+
+    private AdaptiveLimit register(String service) {
+        AdaptiveLimit limit = new AdaptiveLimit(properties);
+        Gauge.builder("gateway.concurrency.limit", limit, AdaptiveLimit::limit)
+                .tag("service", service)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.in-flight", limit, AdaptiveLimit::inFlight)
+                .tag("service", service)
+                .register(meterRegistry);
+        return limit;
+    }
+}
@@ -0,0 +1,54 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+/**
+ * Gradient concurrency limit of one downstream service
+ *
+ * The long-term latency is an exponential average of the samples; while the
+ * latest samples stay close to it the limit grows by about sqrt(limit), and
+ * as they rise above it the limit shrinks in proportion. Errors and timeouts
+ * cut the limit by 10%.
+ */
+final class AdaptiveLimit {
+    private final ConcurrencyLimitProperties properties;
+    private double limit;
+    private double longRttNanos;
+    private int inFlight;
+
+    AdaptiveLimit(ConcurrencyLimitProperties properties) {
+        this.properties = properties;
+        this.limit = properties.getInitialLimit();
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void release(long rttNanos, boolean dropped) {
+        inFlight--;
+        if (dropped) {
+            limit = Math.max(properties.getMinLimit(), limit * 0.9);
+            return;
+        }
+        longRttNanos = longRttNanos == 0 ? rttNanos : longRttNanos * 0.95 + rttNanos * 0.05;
+        // Only grow while the limit is actually being used
+        if (inFlight < limit / 2 && rttNanos <= longRttNanos) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / rttNanos));
+        double estimate = limit * gradient + Math.sqrt(limit);
+        double smoothed = limit * (1 - properties.getSmoothing()) + estimate * properties.getSmoothing();
+        limit = Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), smoothed));
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+}
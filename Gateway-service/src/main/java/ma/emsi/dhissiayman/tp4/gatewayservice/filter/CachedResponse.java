@@ -0,0 +1,15 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+/**
+ * Upstream response kept by the {@link ResponseCacheFilter}
+ */
+record CachedResponse(HttpStatusCode status, HttpHeaders headers, byte[] body, String etag,
+                      long storedAt, long ttlMillis) {
+
+    long ageSeconds(long now) {
+        return Math.max(0, (now - storedAt) / 1000);
+    }
+}
@@ -0,0 +1,125 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client Rate Limit Filter
+ *
+ * In-memory token buckets per client, so one client cannot starve the others.
+ * The client is the JWT subject, or the X-Internal-Request caller (e.g. the chatbot)
+ * at its remote address, or the remote address. Only the callers listed in
+ * gateway.rate-limit.internal-callers get their own bucket, so a client cannot
+ * mint fresh buckets by varying the header. Every request takes a token from the client's default
+ * bucket and from the bucket of each matching gateway.rate-limit.rules entry
+ * (e.g. POST /api/bills/generate). An empty bucket is answered with 429 and a
+ * Retry-After header, before any backend is called.
+ */
+@Component
+public class ClientRateLimitFilter implements GlobalFilter, Ordered {
+    private static final String INTERNAL_HEADER = "X-Internal-Request";
+
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final List<CompiledRule> rules = new ArrayList<>();
+    private final Cache<String, TokenBucket> buckets;
+
+    private record CompiledRule(int index, PathPattern path, String method, RateLimitProperties.Rule rule) {
+    }
+
+    public ClientRateLimitFilter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        for (int i = 0; i < properties.getRules().size(); i++) {
+            RateLimitProperties.Rule rule = properties.getRules().get(i);
+            rules.add(new CompiledRule(i, PathPatternParser.defaultInstance.parse(rule.getPath()),
+                    rule.getMethod() == null || rule.getMethod().isBlank() ? null : rule.getMethod().toUpperCase(), rule));
+        }
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxClients())
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 100;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!properties.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .map(subject -> "sub:" + subject)
+                .defaultIfEmpty("")
+                .flatMap(subject -> {
+                    String client = subject.isEmpty() ? anonymousClient(exchange.getRequest()) : subject;
+                    long waitNanos = acquire(client, exchange.getRequest());
+                    if (waitNanos > 0) {
+                        return reject(exchange, client, waitNanos);
+                    }
+                    return chain.filter(exchange);
+                });
+    }
+
+    private String anonymousClient(ServerHttpRequest request) {
+        InetSocketAddress remote = request.getRemoteAddress();
+        String address = remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown";
+        String internal = request.getHeaders().getFirst(INTERNAL_HEADER);
+        if (internal != null && properties.getInternalCallers().contains(internal)) {
+            return "internal:" + internal + "@" + address;
+        }
+        return "ip:" + address;
+    }
+
+    /**
+     * @return 0 if every bucket had a token, otherwise the longest wait in nanoseconds
+     */
+    private long acquire(String client, ServerHttpRequest request) {
+        long wait = buckets.get(client, key -> new TokenBucket(properties.getCapacity(), properties.getRefillPerSecond()))
+                .tryConsume();
+        PathContainer path = request.getPath().pathWithinApplication();
+        String method = request.getMethod().name();
+        for (CompiledRule rule : rules) {
+            if (rule.path().matches(path) && (rule.method() == null || rule.method().equals(method))) {
+                TokenBucket bucket = buckets.get(client + "|rule" + rule.index(),
+                        key -> new TokenBucket(rule.rule().getCapacity(), rule.rule().getRefillPerSecond()));
+                wait = Math.max(wait, bucket.tryConsume());
+            }
+        }
+        return wait;
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, String client, long waitNanos) {
+        meterRegistry.counter("gateway.rate-limit.rejected",
+                "client_type", client.substring(0, client.indexOf(':'))).increment();
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(Math.min(waitNanos, TimeUnit.HOURS.toNanos(1))) + 1);
+        response.getHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+        return response.setComplete();
+    }
+}
@@ -0,0 +1,68 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the {@link AdaptiveConcurrencyFilter} (prefix gateway.concurrency)
+ */
+@ConfigurationProperties(prefix = "gateway.concurrency")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+    /** Limit each downstream service starts with */
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 500;
+    /** Weight of a new estimate in the limit (0..1) */
+    private double smoothing = 0.2;
+    /** Latency above which every response counts as a drop (ms) */
+    private long maxLatencyMs = 5000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public long getMaxLatencyMs() {
+        return maxLatencyMs;
+    }
+
+    public void setMaxLatencyMs(long maxLatencyMs) {
+        this.maxLatencyMs = maxLatencyMs;
+    }
+}
@@ -0,0 +1,219 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hedged Request Filter
+ *
+ * For the services listed in gateway.hedging.services, tracks the latency of
+ * every routed request. A GET to such a service goes down the filter chain to the
+ * instance chosen by the load balancer, as any other request. If its response
+ * headers have not arrived after the service's p95 latency (gateway.hedging.percentile),
+ * the same GET is sent to another instance; the first response wins and the other
+ * request is cancelled. Only about 5% of the requests are sent twice, while a single
+ * slow instance no longer sets the tail.
+ *
+ * The primary response is streamed by NettyWriteResponseFilter; only the hedge
+ * response is buffered (gateway.hedging.max-body-bytes) and written by this filter.
+ * Latencies are recorded for primaries that answered, never for cancelled ones.
+ * Outcomes are counted in gateway.hedging.requests, tagged by service and winner
+ * (primary, hedge).
+ */
+@Component
+public class HedgedRequestFilter implements GlobalFilter, Ordered {
+
+    private final HedgingProperties properties;
+    private final ReactiveDiscoveryClient discoveryClient;
+    private final ObjectProvider<List<HttpHeadersFilter>> headersFilters;
+    private final HttpClientProperties httpClientProperties;
+    private final MeterRegistry meterRegistry;
+    private final WebClient webClient;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    public HedgedRequestFilter(HedgingProperties properties,
+                               ReactiveDiscoveryClient discoveryClient,
+                               ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                               HttpClientProperties httpClientProperties,
+                               MeterRegistry meterRegistry,
+                               WebClient.Builder webClientBuilder) {
+        this.properties = properties;
+        this.discoveryClient = discoveryClient;
+        this.headersFilters = headersFilters;
+        this.httpClientProperties = httpClientProperties;
+        this.meterRegistry = meterRegistry;
+        this.webClient = webClientBuilder
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(properties.getMaxBodyBytes()))
+                .build();
+    }
+
+    /**
+     * After the load balancer has chosen an instance, before NettyRoutingFilter
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 10;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        URI requestUrl = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (!properties.isEnabled() || route == null || requestUrl == null
+                || ServerWebExchangeUtils.isAlreadyRouted(exchange)
+                || !properties.getServices().contains(route.getUri().getHost())) {
+            return chain.filter(exchange);
+        }
+        String service = route.getUri().getHost();
+        LatencyWindow window = latencies.computeIfAbsent(service,
+                key -> new LatencyWindow(properties.getWindow(), properties.getPercentile()));
+        long start = System.nanoTime();
+        if (exchange.getRequest().getMethod() != HttpMethod.GET) {
+            return chain.filter(exchange).doOnSuccess(ignored -> window.record(System.nanoTime() - start));
+        }
+        return discoveryClient.getInstances(service)
+                .filter(instance -> instance.getPort() != requestUrl.getPort()
+                        || !instance.getHost().equals(requestUrl.getHost()))
+                .next()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                // hedge() completes empty: branching on the instance, not on emptiness, routes the request once
+                .flatMap(alternate -> alternate.isPresent()
+                        ? hedge(exchange, chain, route, requestUrl, alternate.get(), window, service)
+                        : chain.filter(exchange).doOnSuccess(ignored -> window.record(System.nanoTime() - start)));
+    }
+
+    private Mono<Void> hedge(ServerWebExchange exchange, GatewayFilterChain chain, Route route, URI requestUrl,
+                             ServiceInstance alternate, LatencyWindow window, String service) {
+        AtomicReference<String> winner = new AtomicReference<>();
+        long start = System.nanoTime();
+
+        // NettyRoutingFilter sets the status as soon as the primary response headers arrive: that claims the response
+        ServerHttpResponseDecorator primaryResponse = new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public boolean setStatusCode(HttpStatusCode status) {
+                if (!claim(winner, "primary", service)) {
+                    // The hedge is answering: keep NettyWriteResponseFilter away from this connection
+                    Connection connection = (Connection) exchange.getAttributes()
+                            .remove(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+                    if (connection != null) {
+                        connection.dispose();
+                    }
+                    throw new IllegalStateException("Hedged request already answered");
+                }
+                window.record(System.nanoTime() - start);
+                return super.setStatusCode(status);
+            }
+        };
+        Mono<Void> primary = chain.filter(exchange.mutate().response(primaryResponse).build())
+                .onErrorResume(error -> "hedge".equals(winner.get()) ? Mono.never() : Mono.error(error));
+
+        // Sent only if the primary has not answered once the delay elapsed; a failed hedge never wins
+        Mono<Void> second = Mono.delay(hedgeDelay(window))
+                .flatMap(ignored -> winner.get() != null ? Mono.<ResponseEntity<byte[]>>never()
+                        : send(alternateUrl(requestUrl, alternate), requestHeaders(exchange), responseTimeout(route)))
+                .flatMap(response -> claim(winner, "hedge", service) ? write(exchange, response) : Mono.<Void>never())
+                .onErrorResume(error -> Mono.never());
+
+        // The first to complete cancels the other: an in-flight request, the pending delay or a never()
+        return Mono.firstWithSignal(primary, second);
+    }
+
+    private boolean claim(AtomicReference<String> winner, String name, String service) {
+        if (!winner.compareAndSet(null, name)) {
+            return name.equals(winner.get());
+        }
+        meterRegistry.counter("gateway.hedging.requests", "service", service, "winner", name).increment();
+        return true;
+    }
+
+    private HttpHeaders requestHeaders(ServerWebExchange exchange) {
+        // Without any headers filter the request's own read-only headers come back: copy them
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(HttpHeadersFilter.filterRequest(headersFilters.getIfAvailable(List::of), exchange));
+        headers.remove(HttpHeaders.HOST);
+        return headers;
+    }
+
+    private static URI alternateUrl(URI requestUrl, ServiceInstance alternate) {
+        return UriComponentsBuilder.fromUri(requestUrl)
+                .scheme(alternate.isSecure() ? "https" : "http")
+                .host(alternate.getHost())
+                .port(alternate.getPort())
+                .build(true)
+                .toUri();
+    }
+
+    private Mono<ResponseEntity<byte[]>> send(URI url, HttpHeaders headers, Duration timeout) {
+        Mono<ResponseEntity<byte[]>> call = webClient.get()
+                .uri(url)
+                .headers(target -> target.addAll(headers))
+                .exchangeToMono(response -> response.toEntity(byte[].class));
+        return timeout != null ? call.timeout(timeout) : call;
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, ResponseEntity<byte[]> upstream) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(upstream.getStatusCode());
+        HttpHeaders filtered = new HttpHeaders();
+        filtered.addAll(HttpHeadersFilter.filter(headersFilters.getIfAvailable(List::of),
+                upstream.getHeaders(), exchange, HttpHeadersFilter.Type.RESPONSE));
+        filtered.remove(HttpHeaders.TRANSFER_ENCODING);
+        filtered.remove(HttpHeaders.CONTENT_LENGTH);
+        response.getHeaders().putAll(filtered);
+        byte[] body = upstream.getBody();
+        if (body == null) {
+            return response.setComplete();
+        }
+        response.getHeaders().setContentLength(body.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    private Duration hedgeDelay(LatencyWindow window) {
+        long percentile = window.percentileNanos();
+        if (window.count() < properties.getMinSamples() || percentile < 0) {
+            return properties.getInitialDelay();
+        }
+        long nanos = Math.max(properties.getMinDelay().toNanos(), Math.min(properties.getMaxDelay().toNanos(), percentile));
+        return Duration.ofNanos(nanos);
+    }
+
+    private Duration responseTimeout(Route route) {
+        Object routeTimeout = route.getMetadata().get(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR);
+        if (routeTimeout != null) {
+            long millis = Long.parseLong(routeTimeout.toString());
+            return millis < 0 ? null : Duration.ofMillis(millis);
+        }
+        return httpClientProperties.getResponseTimeout();
+    }
+}
@@ -0,0 +1,101 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the {@link HedgedRequestFilter} (prefix gateway.hedging)
+ */
+@ConfigurationProperties(prefix = "gateway.hedging")
+public class HedgingProperties {
+
+    private boolean enabled = false;
+    /** Downstream services (route uri host, e.g. INVENTORY-SERVICE) whose GET requests may be hedged */
+    private List<String> services = new ArrayList<>();
+    /** Latency percentile after which the second request is sent */
+    private double percentile = 0.95;
+    /** Delay used until min-samples latencies have been seen */
+    private Duration initialDelay = Duration.ofMillis(200);
+    private Duration minDelay = Duration.ofMillis(20);
+    private Duration maxDelay = Duration.ofSeconds(1);
+    private int minSamples = 100;
+    /** Number of recent latencies the percentile is computed from */
+    private int window = 1000;
+    /** Largest response body buffered for a hedged request */
+    private int maxBodyBytes = 4 * 1024 * 1024;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getServices() {
+        return services;
+    }
+
+    public void setServices(List<String> services) {
+        this.services = services;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+
+    public void setInitialDelay(Duration initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    public Duration getMinDelay() {
+        return minDelay;
+    }
+
+    public void setMinDelay(Duration minDelay) {
+        this.minDelay = minDelay;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    public void setMaxDelay(Duration maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public void setMaxBodyBytes(int maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+    }
+}
@@ -0,0 +1,51 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import java.util.Arrays;
+
+/**
+ * Last N latencies of one downstream service, with a percentile
+ * recomputed every 50 samples
+ */
+final class LatencyWindow {
+    private static final int RECOMPUTE_EVERY = 50;
+
+    private final long[] samples;
+    private final double percentile;
+    private int next;
+    private long count;
+    private volatile long percentileNanos = -1;
+
+    LatencyWindow(int size, double percentile) {
+        this.samples = new long[size];
+        this.percentile = percentile;
+    }
+
+    void record(long nanos) {
+        long[] copy = null;
+        int filled;
+        synchronized (this) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count++;
+            filled = (int) Math.min(count, samples.length);
+            if (count % RECOMPUTE_EVERY == 0) {
+                copy = Arrays.copyOf(samples, filled);
+            }
+        }
+        if (copy != null) {
+            Arrays.sort(copy);
+            percentileNanos = copy[Math.min(filled - 1, (int) Math.ceil(percentile * filled) - 1)];
+        }
+    }
+
+    synchronized long count() {
+        return count;
+    }
+
+    /**
+     * @return the percentile latency in nanoseconds, or -1 before the first computation
+     */
+    long percentileNanos() {
+        return percentileNanos;
+    }
+}
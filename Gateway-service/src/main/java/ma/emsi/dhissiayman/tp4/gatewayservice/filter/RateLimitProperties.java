@@ -0,0 +1,114 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the {@link ClientRateLimitFilter} (prefix gateway.rate-limit)
+ */
+@ConfigurationProperties(prefix = "gateway.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+    /** Burst size of the default bucket of each client */
+    private long capacity = 100;
+    /** Sustained requests per second of the default bucket */
+    private double refillPerSecond = 50;
+    /** Number of client buckets kept in memory; idle clients are evicted first */
+    private long maxClients = 100_000;
+    /** X-Internal-Request values that get a bucket of their own, per remote address */
+    private List<String> internalCallers = new ArrayList<>(List.of("chatbot"));
+    /** Stricter buckets for expensive endpoints, checked in addition to the default one */
+    private List<Rule> rules = new ArrayList<>();
+
+    public static class Rule {
+        /** Path pattern, e.g. /api/bills/generate */
+        private String path;
+        /** HTTP method, or empty for any */
+        private String method;
+        private long capacity;
+        private double refillPerSecond;
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public void setMethod(String method) {
+            this.method = method;
+        }
+
+        public long getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(long capacity) {
+            this.capacity = capacity;
+        }
+
+        public double getRefillPerSecond() {
+            return refillPerSecond;
+        }
+
+        public void setRefillPerSecond(double refillPerSecond) {
+            this.refillPerSecond = refillPerSecond;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public double getRefillPerSecond() {
+        return refillPerSecond;
+    }
+
+    public void setRefillPerSecond(double refillPerSecond) {
+        this.refillPerSecond = refillPerSecond;
+    }
+
+    public long getMaxClients() {
+        return maxClients;
+    }
+
+    public void setMaxClients(long maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    public List<String> getInternalCallers() {
+        return internalCallers;
+    }
+
+    public void setInternalCallers(List<String> internalCallers) {
+        this.internalCallers = internalCallers;
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+}
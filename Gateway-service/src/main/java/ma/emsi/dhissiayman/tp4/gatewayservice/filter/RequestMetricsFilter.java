@@ -0,0 +1,124 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ma.emsi.dhissiayman.tp4.gatewayservice.metrics.AccessLog;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request Metrics Filter
+ *
+ * First global filter of every request. It gives the request a trace id
+ * (the incoming X-Trace-Id, or a new one), forwards it to the backend and
+ * returns it to the client, then on completion records the latency in the
+ * gateway.requests timer, tagged by route, status and downstream instance,
+ * and hands an entry to the {@link AccessLog}.
+ *
+ * Timers publish p50/p99/p999 from Micrometer's HdrHistogram-based percentile
+ * histograms (see /actuator/latency and /actuator/metrics/gateway.requests).
+ * Timers are looked up in a local map, so the hot path builds no meter.
+ */
+@Component
+public class RequestMetricsFilter implements GlobalFilter, Ordered {
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+    static final String START_ATTR = RequestMetricsFilter.class.getName() + ".start";
+    private static final int MAX_TRACE_ID_LENGTH = 64;
+
+    private final MeterRegistry meterRegistry;
+    private final AccessLog accessLog;
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    record TimerKey(String name, String route, String status, String instance) {
+    }
+
+    public RequestMetricsFilter(MeterRegistry meterRegistry, AccessLog accessLog) {
+        this.meterRegistry = meterRegistry;
+        this.accessLog = accessLog;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        long start = System.nanoTime();
+        exchange.getAttributes().put(START_ATTR, start);
+        String incoming = exchange.getRequest().getHeaders().getFirst(TRACE_ID_HEADER);
+        String traceId = incoming != null && !incoming.isBlank() && incoming.length() <= MAX_TRACE_ID_LENGTH
+                ? incoming : newTraceId();
+        ServerWebExchange traced = exchange.mutate()
+                .request(request -> request.headers(headers -> headers.set(TRACE_ID_HEADER, traceId)))
+                .build();
+        traced.getResponse().getHeaders().set(TRACE_ID_HEADER, traceId);
+        return chain.filter(traced)
+                .doFinally(signal -> record(traced, traceId, start));
+    }
+
+    private void record(ServerWebExchange exchange, String traceId, long start) {
+        long elapsed = System.nanoTime() - start;
+        String route = routeId(exchange);
+        HttpStatusCode statusCode = exchange.getResponse().getStatusCode();
+        int status = statusCode != null ? statusCode.value() : 0;
+        String instance = instance(exchange);
+        timer("gateway.requests", route, status, instance).record(elapsed, TimeUnit.NANOSECONDS);
+        if (accessLog.isEnabled()) {
+            ServerHttpRequest request = exchange.getRequest();
+            InetSocketAddress remote = request.getRemoteAddress();
+            accessLog.log(new AccessLog.Entry(System.currentTimeMillis(), traceId,
+                    remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "-",
+                    request.getMethod().name(), request.getPath().value(), status, route, instance, elapsed / 1000));
+        }
+    }
+
+    Timer timer(String name, String route, int status, String instance) {
+        return timers.computeIfAbsent(new TimerKey(name, route, status == 0 ? "none" : Integer.toString(status), instance),
+                key -> Timer.builder(key.name())
+                        .tag("route", key.route())
+                        .tag("status", key.status())
+                        .tag("instance", key.instance())
+                        .publishPercentiles(0.5, 0.99, 0.999)
+                        .distributionStatisticExpiry(Duration.ofMinutes(2))
+                        .distributionStatisticBufferLength(3)
+                        .register(meterRegistry));
+    }
+
+    static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : "none";
+    }
+
+    /**
+     * host:port chosen by the load balancer, or "none" when no backend was called
+     */
+    static String instance(ServerWebExchange exchange) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (url == null || url.getHost() == null || "lb".equals(url.getScheme()) || "forward".equals(url.getScheme())) {
+            return "none";
+        }
+        return url.getHost() + ":" + url.getPort();
+    }
+
+    private static String newTraceId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Long.toHexString(random.nextLong() | Long.MIN_VALUE) + Long.toHexString(random.nextLong() | Long.MIN_VALUE);
+    }
+}
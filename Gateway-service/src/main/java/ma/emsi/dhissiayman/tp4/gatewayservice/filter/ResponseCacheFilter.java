@@ -0,0 +1,305 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Response Cache Filter
+ *
+ * Caches successful GET responses of the configured paths (gateway.cache.paths)
+ * and collapses concurrent identical requests: while a response is being fetched,
+ * other requests with the same key wait for it instead of going upstream.
+ *
+ * Entries live for the upstream s-maxage (or max-age) when present, otherwise for
+ * the route TTL; no-store, private and Set-Cookie responses are never cached, and
+ * requests sent with Cache-Control: no-cache or no-store bypass the cache. Every
+ * cached response carries an ETag (the upstream one, or a hash of the body), and
+ * a matching If-None-Match is answered with 304.
+ *
+ * Results are counted in gateway.cache.requests, tagged by route and result
+ * (hit, miss, coalesced, bypass, not_modified).
+ */
+@Component
+public class ResponseCacheFilter implements GlobalFilter, Ordered {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCacheFilter.class);
+    private static final Pattern S_MAXAGE = Pattern.compile("s-maxage=(\\d+)");
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+    private static final String CACHE_STATUS_HEADER = "X-Cache";
+    /** Hop-by-hop headers and headers that belong to the request that filled the cache, not to its replays */
+    private static final List<String> UNCACHED_HEADERS = List.of(
+            HttpHeaders.CONNECTION, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONTENT_LENGTH, HttpHeaders.DATE,
+            "Keep-Alive", HttpHeaders.TRAILER, HttpHeaders.UPGRADE, HttpHeaders.AGE, HttpHeaders.SET_COOKIE,
+            CACHE_STATUS_HEADER, RequestMetricsFilter.TRACE_ID_HEADER, "X-Request-Id", "traceparent", "tracestate");
+
+    private final ResponseCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final List<PathPattern> paths;
+    private final List<PathPattern> excludedPaths;
+    private final Cache<String, CachedResponse> cache;
+    private final Map<String, Sinks.One<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public ResponseCacheFilter(ResponseCacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        PathPatternParser parser = PathPatternParser.defaultInstance;
+        this.paths = properties.getPaths().stream().map(parser::parse).toList();
+        this.excludedPaths = properties.getExcludedPaths().stream().map(parser::parse).toList();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxBytes())
+                .weigher((String key, CachedResponse response) -> key.length() + response.body().length)
+                .expireAfter(new Expiry<String, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResponse response, long currentTime) {
+                        return Duration.ofMillis(response.ttlMillis()).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResponse response, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, response, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResponse response, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.responses");
+    }
+
+    @Override
+    public int getOrder() {
+        // Must wrap the response before NettyWriteResponseFilter writes it
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!properties.isEnabled() || !isCacheable(exchange.getRequest())) {
+            return chain.filter(exchange);
+        }
+        String routeId = routeId(exchange);
+        String requestCacheControl = exchange.getRequest().getHeaders().getCacheControl();
+        if (requestCacheControl != null
+                && (requestCacheControl.contains("no-cache") || requestCacheControl.contains("no-store"))) {
+            count(routeId, "bypass");
+            return chain.filter(exchange);
+        }
+
+        String key = cacheKey(exchange.getRequest());
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return writeCached(exchange, cached, routeId, "hit");
+        }
+
+        Sinks.One<CachedResponse> sink = Sinks.one();
+        Sinks.One<CachedResponse> leader = inFlight.putIfAbsent(key, sink);
+        if (leader != null) {
+            // Identical request already in flight: reuse its response, or go upstream if it was not cacheable
+            // writeCached completes empty too, so the choice is made on the leader's signal itself
+            return leader.asMono()
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(response -> {
+                        if (response.isPresent()) {
+                            return writeCached(exchange, response.get(), routeId, "coalesced");
+                        }
+                        count(routeId, "bypass");
+                        return chain.filter(exchange);
+                    });
+        }
+
+        count(routeId, "miss");
+        exchange.getResponse().getHeaders().set(CACHE_STATUS_HEADER, "MISS");
+        return chain.filter(exchange.mutate().response(new CachingResponse(exchange, key, sink)).build())
+                .doFinally(signal -> {
+                    inFlight.remove(key, sink);
+                    sink.tryEmitEmpty();
+                });
+    }
+
+    private boolean isCacheable(ServerHttpRequest request) {
+        if (request.getMethod() != HttpMethod.GET) {
+            return false;
+        }
+        PathContainer path = request.getPath().pathWithinApplication();
+        return paths.stream().anyMatch(pattern -> pattern.matches(path))
+                && excludedPaths.stream().noneMatch(pattern -> pattern.matches(path));
+    }
+
+    private static String cacheKey(ServerHttpRequest request) {
+        String accept = Optional.ofNullable(request.getHeaders().getFirst(HttpHeaders.ACCEPT)).orElse("");
+        String encoding = Optional.ofNullable(request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING)).orElse("");
+        return request.getURI().getRawPath() + '?' + Optional.ofNullable(request.getURI().getRawQuery()).orElse("")
+                + '|' + accept + '|' + encoding;
+    }
+
+    private static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : "unknown";
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, CachedResponse cached, String routeId, String result) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.putAll(cached.headers());
+        headers.setETag(cached.etag());
+        headers.set(HttpHeaders.AGE, String.valueOf(cached.ageSeconds(System.currentTimeMillis())));
+        headers.set(CACHE_STATUS_HEADER, result.toUpperCase(Locale.ROOT));
+
+        List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+        if (ifNoneMatch.contains(cached.etag()) || ifNoneMatch.contains("*")) {
+            count(routeId, "not_modified");
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            headers.remove(HttpHeaders.CONTENT_TYPE);
+            return response.setComplete();
+        }
+        count(routeId, result);
+        response.setStatusCode(cached.status());
+        headers.setContentLength(cached.body().length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(cached.body())));
+    }
+
+    private void count(String routeId, String result) {
+        counters.computeIfAbsent(routeId + '|' + result, ignored -> Counter.builder("gateway.cache.requests")
+                .description("Cacheable gateway requests by route and cache result")
+                .tag("route", routeId)
+                .tag("result", result)
+                .register(meterRegistry)).increment();
+    }
+
+    /**
+     * TTL of an upstream response, or -1 if it must not be cached
+     * s-maxage wins over max-age, as for any shared cache
+     */
+    long ttlMillis(String routeId, HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        if (headers.containsKey(HttpHeaders.SET_COOKIE)) {
+            return -1;
+        }
+        if (cacheControl != null) {
+            if (cacheControl.contains("no-store") || cacheControl.contains("private") || cacheControl.contains("no-cache")) {
+                return -1;
+            }
+            for (Pattern pattern : List.of(S_MAXAGE, MAX_AGE)) {
+                Matcher maxAge = pattern.matcher(cacheControl);
+                if (maxAge.find()) {
+                    return Long.parseLong(maxAge.group(1)) * 1000;
+                }
+            }
+        }
+        return properties.getRouteTtl().getOrDefault(routeId, properties.getTtl()).toMillis();
+    }
+
+    /**
+     * Passes the upstream response through and keeps a copy of it when it may be cached
+     */
+    private final class CachingResponse extends ServerHttpResponseDecorator {
+        private final ServerWebExchange exchange;
+        private final String key;
+        private final Sinks.One<CachedResponse> sink;
+
+        private CachingResponse(ServerWebExchange exchange, String key, Sinks.One<CachedResponse> sink) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.key = key;
+            this.sink = sink;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatus status = HttpStatus.resolve(getStatusCode() != null ? getStatusCode().value() : 200);
+            long ttl = ttlMillis(routeId(exchange), getHeaders());
+            long declaredLength = getHeaders().getContentLength();
+            if (status != HttpStatus.OK || ttl <= 0 || declaredLength > properties.getMaxBodyBytes()) {
+                sink.tryEmitEmpty();
+                return super.writeWith(body);
+            }
+            return super.writeWith(Flux.defer(() -> {
+                // Buffers are held until the body ends or goes past max-body-bytes, then passed through
+                long maxBodyBytes = properties.getMaxBodyBytes();
+                AtomicLong received = new AtomicLong();
+                return Flux.<DataBuffer>from(body)
+                        .bufferUntil(buffer -> received.addAndGet(buffer.readableByteCount()) > maxBodyBytes)
+                        .switchOnFirst((first, buffers) -> {
+                            if (first.hasValue() && received.get() <= maxBodyBytes) {
+                                // The whole body, within the limit
+                                return buffers.map(whole -> bufferFactory().wrap(cache(whole, ttl)));
+                            }
+                            sink.tryEmitEmpty();
+                            return buffers.concatMapIterable(Function.identity());
+                        });
+            }));
+        }
+
+        private byte[] cache(List<DataBuffer> buffers, long ttl) {
+            DataBuffer joined = bufferFactory().join(buffers);
+            byte[] bytes = new byte[joined.readableByteCount()];
+            joined.read(bytes);
+            DataBufferUtils.release(joined);
+            getHeaders().setETag(store(bytes, ttl).etag());
+            return bytes;
+        }
+
+        private CachedResponse store(byte[] body, long ttl) {
+            HttpHeaders headers = new HttpHeaders();
+            getHeaders().forEach((name, values) -> {
+                if (UNCACHED_HEADERS.stream().noneMatch(name::equalsIgnoreCase)) {
+                    headers.put(name, List.copyOf(values));
+                }
+            });
+            String etag = getHeaders().getETag() != null
+                    ? getHeaders().getETag()
+                    : "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+            CachedResponse cached = new CachedResponse(getStatusCode(), HttpHeaders.readOnlyHttpHeaders(headers),
+                    body, etag, System.currentTimeMillis(), ttl);
+            cache.put(key, cached);
+            sink.tryEmitValue(cached);
+            logger.debug("Cached {} for {} ms", key, ttl);
+            return cached;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of the {@link ResponseCacheFilter} (prefix gateway.cache)
+ */
+@ConfigurationProperties(prefix = "gateway.cache")
+public class ResponseCacheProperties {
+
+    private boolean enabled = true;
+    /** GET paths whose responses may be cached */
+    private List<String> paths = List.of("/api/products/**", "/api/customers/**", "/api/analytics/**");
+    /** Paths never cached, e.g. streams */
+    private List<String> excludedPaths = List.of("/api/analytics/stream");
+    /** TTL used when the upstream response has no max-age */
+    private Duration ttl = Duration.ofSeconds(5);
+    /** TTL per route id, overriding the default */
+    private Map<String, Duration> routeTtl = new HashMap<>();
+    /** Total size of the cached bodies */
+    private long maxBytes = 32L * 1024 * 1024;
+    /** Responses bigger than this are not cached */
+    private int maxBodyBytes = 1024 * 1024;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    public List<String> getExcludedPaths() {
+        return excludedPaths;
+    }
+
+    public void setExcludedPaths(List<String> excludedPaths) {
+        this.excludedPaths = excludedPaths;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public Map<String, Duration> getRouteTtl() {
+        return routeTtl;
+    }
+
+    public void setRouteTtl(Map<String, Duration> routeTtl) {
+        this.routeTtl = routeTtl;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public void setMaxBodyBytes(int maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+    }
+}
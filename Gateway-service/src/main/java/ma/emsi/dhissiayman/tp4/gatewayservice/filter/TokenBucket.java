@@ -0,0 +1,46 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket refilled continuously at a fixed rate
+ */
+final class TokenBucket {
+    private final long capacity;
+    private final double refillPerNano;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(long capacity, double refillPerSecond) {
+        this(capacity, refillPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(long capacity, double refillPerSecond, LongSupplier nanoClock) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000d;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Take one token
+     *
+     * @return 0 if the request may go through, otherwise the nanoseconds until a token is available
+     */
+    synchronized long tryConsume() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return refillPerNano > 0 ? (long) Math.ceil((1 - tokens) / refillPerNano) : Long.MAX_VALUE;
+    }
+
+    synchronized long remaining() {
+        return (long) tokens;
+    }
+}
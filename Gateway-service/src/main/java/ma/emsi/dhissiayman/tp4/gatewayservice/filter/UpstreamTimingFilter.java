@@ -0,0 +1,57 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upstream Timing Filter
+ *
+ * Runs right after the load balancer has picked an instance and splits the
+ * latency measured by {@link RequestMetricsFilter} in two timers:
+ * gateway.pre-upstream (gateway filters, including the Eureka/load-balancer
+ * lookup) and gateway.upstream (the downstream instance, until its response
+ * headers, hedged requests included).
+ */
+@Component
+public class UpstreamTimingFilter implements GlobalFilter, Ordered {
+
+    private final RequestMetricsFilter requestMetricsFilter;
+
+    public UpstreamTimingFilter(RequestMetricsFilter requestMetricsFilter) {
+        this.requestMetricsFilter = requestMetricsFilter;
+    }
+
+    /**
+     * After ReactiveLoadBalancerClientFilter, before HedgedRequestFilter and NettyRoutingFilter
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 20;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        long upstreamStart = System.nanoTime();
+        Long requestStart = exchange.getAttribute(RequestMetricsFilter.START_ATTR);
+        return chain.filter(exchange)
+                .doFinally(signal -> {
+                    String route = RequestMetricsFilter.routeId(exchange);
+                    String instance = RequestMetricsFilter.instance(exchange);
+                    HttpStatusCode statusCode = exchange.getResponse().getStatusCode();
+                    int status = statusCode != null ? statusCode.value() : 0;
+                    if (requestStart != null) {
+                        requestMetricsFilter.timer("gateway.pre-upstream", route, status, instance)
+                                .record(upstreamStart - requestStart, TimeUnit.NANOSECONDS);
+                    }
+                    requestMetricsFilter.timer("gateway.upstream", route, status, instance)
+                            .record(System.nanoTime() - upstreamStart, TimeUnit.NANOSECONDS);
+                });
+    }
+}
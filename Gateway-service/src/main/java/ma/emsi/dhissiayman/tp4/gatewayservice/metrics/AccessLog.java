@@ -0,0 +1,111 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access Log
+ *
+ * Request threads only enqueue a small {@link Entry}; a single background thread
+ * formats the entries with one reused StringBuilder and writes them to the
+ * "gateway.access" logger. The queue is bounded: when the writer falls behind,
+ * entries are dropped and counted in gateway.access-log.dropped rather than
+ * slowing requests down.
+ */
+@Component
+public class AccessLog implements DisposableBean {
+    private static final Logger accessLogger = LoggerFactory.getLogger("gateway.access");
+    private static final Logger logger = LoggerFactory.getLogger(AccessLog.class);
+    private static final int DRAIN_BATCH = 256;
+
+    private final boolean enabled;
+    private final BlockingQueue<Entry> queue;
+    private final Counter dropped;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * One request, as seen by the gateway
+     */
+    public record Entry(long timestampMillis, String traceId, String client, String method, String path,
+                        int status, String routeId, String instance, long durationMicros) {
+    }
+
+    public AccessLog(MeterRegistry meterRegistry,
+                     @Value("${gateway.access-log.enabled:true}") boolean enabled,
+                     @Value("${gateway.access-log.queue-size:16384}") int queueSize) {
+        this.enabled = enabled && accessLogger.isInfoEnabled();
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.dropped = meterRegistry.counter("gateway.access-log.dropped");
+        this.writer = new Thread(this::drain, "gateway-access-log");
+        this.writer.setDaemon(true);
+        if (this.enabled) {
+            this.writer.start();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void log(Entry entry) {
+        if (enabled && !queue.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(DRAIN_BATCH);
+        StringBuilder line = new StringBuilder(256);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, DRAIN_BATCH - 1);
+                for (Entry entry : batch) {
+                    line.setLength(0);
+                    format(entry, line);
+                    accessLogger.info(line.toString());
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.warn("Failed to write access log entries: {}", e.toString());
+                batch.clear();
+            }
+        }
+    }
+
+    private static void format(Entry entry, StringBuilder line) {
+        line.append(entry.timestampMillis())
+                .append(' ').append(entry.traceId())
+                .append(' ').append(entry.client())
+                .append(" \"").append(entry.method()).append(' ').append(entry.path()).append("\" ")
+                .append(entry.status())
+                .append(' ').append(entry.durationMicros()).append("us")
+                .append(" route=").append(entry.routeId())
+                .append(" instance=").append(entry.instance());
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(2));
+    }
+}
@@ -0,0 +1,78 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency Endpoint
+ *
+ * GET /actuator/latency lists p50/p99/p999 (ms) of every gateway timer, per
+ * route, status and instance:
+ * - gateway.requests: whole request, as seen by the client
+ * - gateway.pre-upstream: gateway filters and load-balancer (Eureka) lookup
+ * - gateway.upstream: downstream instance, until its response headers
+ *
+ * GET /actuator/latency/{name} restricts the output to one of them.
+ */
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+    public static final List<String> TIMERS = List.of("gateway.requests", "gateway.pre-upstream", "gateway.upstream");
+
+    private final MeterRegistry meterRegistry;
+
+    public LatencyEndpoint(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> latencies() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String name : TIMERS) {
+            result.put(name, latencies(name));
+        }
+        return result;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> latencies(@Selector String name) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Timer timer : meterRegistry.find(name).timers()) {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (Tag tag : timer.getId().getTags()) {
+                row.put(tag.getKey(), tag.getValue());
+            }
+            row.put("count", snapshot.count());
+            row.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+            row.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                row.put("p" + label(percentile.percentile()) + "Ms", percentile.value(TimeUnit.MILLISECONDS));
+            }
+            rows.add(row);
+        }
+        rows.sort(Comparator.comparing((Map<String, Object> row) -> String.valueOf(row.get("route")))
+                .thenComparing(row -> String.valueOf(row.get("status"))));
+        return rows;
+    }
+
+    private static String label(double percentile) {
+        // 0.5 -> 50, 0.99 -> 99, 0.999 -> 999
+        String digits = Double.toString(percentile).substring(2);
+        return digits.length() == 1 ? digits + "0" : digits;
+    }
+}
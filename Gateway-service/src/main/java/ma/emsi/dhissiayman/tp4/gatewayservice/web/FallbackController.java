@@ -0,0 +1,45 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.web;
+
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fallback Controller
+ *
+ * Target of the CircuitBreaker route filters (fallbackUri forward:/fallback/{service}).
+ * Answers 503 right away while a service's circuit is open, or 504 when the call
+ * timed out, instead of holding the client connection.
+ */
+@RestController
+public class FallbackController {
+
+    @RequestMapping("/fallback/{service}")
+    public ResponseEntity<Map<String, Object>> fallback(@PathVariable String service, ServerWebExchange exchange) {
+        Throwable cause = exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR);
+        boolean timeout = cause instanceof TimeoutException;
+        HttpStatus status = timeout ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.SERVICE_UNAVAILABLE;
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("service", service);
+        body.put("status", status.value());
+        body.put("message", timeout
+                ? service + " did not answer in time, please retry later"
+                : service + " is temporarily unavailable, please retry later");
+        if (cause != null) {
+            body.put("cause", cause.getClass().getSimpleName());
+        }
+        return ResponseEntity.status(status)
+                .header("Retry-After", "5")
+                .body(body);
+    }
+}
@@ -0,0 +1,90 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingReactiveJwtDecoderTest {
+
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    @Test
+    void aTokenSeenAgainIsNotVerifiedAgain() {
+        CachingReactiveJwtDecoder decoder = decoder(token -> Mono.just(jwt(token, Instant.now().plusSeconds(300))));
+
+        Jwt first = decoder.decode("token-a").block(Duration.ofSeconds(5));
+        Jwt second = decoder.decode("token-a").block(Duration.ofSeconds(5));
+        decoder.decode("token-b").block(Duration.ofSeconds(5));
+
+        assertThat(second).isSameAs(first);
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void aTokenIsVerifiedAgainOnceItExpires() throws InterruptedException {
+        CachingReactiveJwtDecoder decoder = decoder(token -> Mono.just(jwt(token, Instant.now().plusMillis(500))));
+
+        decoder.decode("token-a").block(Duration.ofSeconds(5));
+        decoder.decode("token-a").block(Duration.ofSeconds(5));
+        assertThat(verifications).hasValue(1);
+
+        Thread.sleep(700);
+        decoder.decode("token-a").block(Duration.ofSeconds(5));
+
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void rejectedTokensAreNotCached() {
+        CachingReactiveJwtDecoder decoder = decoder(token -> Mono.error(new BadJwtException("Invalid signature")));
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> decoder.decode("forged").block(Duration.ofSeconds(5)))
+                    .isInstanceOf(BadJwtException.class);
+        }
+
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void aCancelledRequestDoesNotCancelTheSharedVerification() {
+        Sinks.One<Jwt> verified = Sinks.one();
+        CachingReactiveJwtDecoder decoder = decoder(token -> verified.asMono());
+
+        Disposable cancelled = decoder.decode("token-a").subscribe();
+        cancelled.dispose();
+        CompletableFuture<Jwt> waiting = decoder.decode("token-a").toFuture();
+        verified.tryEmitValue(jwt("token-a", Instant.now().plusSeconds(300)));
+
+        assertThat(waiting.join().getTokenValue()).isEqualTo("token-a");
+        assertThat(verifications).hasValue(1);
+    }
+
+    private CachingReactiveJwtDecoder decoder(ReactiveJwtDecoder delegate) {
+        return new CachingReactiveJwtDecoder(token -> {
+            verifications.incrementAndGet();
+            return delegate.decode(token);
+        }, 100, Duration.ofMinutes(5));
+    }
+
+    private static Jwt jwt(String token, Instant expiresAt) {
+        return Jwt.withTokenValue(token)
+                .header("alg", "RS256")
+                .subject("user")
+                .issuedAt(Instant.now())
+                .expiresAt(expiresAt)
+                .build();
+    }
+}
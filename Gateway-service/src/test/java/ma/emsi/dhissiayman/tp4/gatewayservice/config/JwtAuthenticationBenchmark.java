@@ -0,0 +1,118 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtReactiveAuthenticationManager;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticated requests per second through the gateway resource server:
+ * the JwtReactiveAuthenticationManager of oauth2ResourceServer().jwt() with the
+ * plain Nimbus decoder against the same decoder behind CachingReactiveJwtDecoder
+ *
+ * Each request picks one of {@code users} signed RS256 tokens, as with that many
+ * logged-in users of the Angular front end. The JWK set is in memory in both cases.
+ *
+ * Run with the test classpath, e.g. from the IDE, or
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=ma.emsi.dhissiayman.tp4.gatewayservice.config.JwtAuthenticationBenchmark
+ * The main method runs both benchmarks at 1, 4 and 16 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthenticationBenchmark {
+
+    @Param({"100", "10000"})
+    private int users;
+
+    private String[] tokens;
+    private JwtReactiveAuthenticationManager uncached;
+    private JwtReactiveAuthenticationManager cached;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JOSEException {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("bench").generate();
+        JWKSet jwkSet = new JWKSet(key.toPublicJWK());
+        RSASSASigner signer = new RSASSASigner(key);
+        Instant now = Instant.now();
+        tokens = new String[users];
+        for (int i = 0; i < users; i++) {
+            JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                    .subject("user-" + i)
+                    .issuer("http://localhost:8080/realms/ecom-realm")
+                    .issueTime(Date.from(now))
+                    .expirationTime(Date.from(now.plus(Duration.ofHours(1))))
+                    .claim("scope", "openid profile email")
+                    .build();
+            SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+            jwt.sign(signer);
+            tokens[i] = jwt.serialize();
+        }
+        NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder
+                .withJwkSource(signedJwt -> Flux.fromIterable(jwkSet.getKeys()))
+                .build();
+        uncached = new JwtReactiveAuthenticationManager(decoder);
+        cached = new JwtReactiveAuthenticationManager(
+                new CachingReactiveJwtDecoder(decoder, 100_000, Duration.ofMinutes(5)));
+    }
+
+    private BearerTokenAuthenticationToken nextRequest() {
+        return new BearerTokenAuthenticationToken(tokens[ThreadLocalRandom.current().nextInt(tokens.length)]);
+    }
+
+    @Benchmark
+    public Authentication withoutCache() {
+        return uncached.authenticate(nextRequest()).block();
+    }
+
+    @Benchmark
+    public Authentication withCache() {
+        return cached.authenticate(nextRequest()).block();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16}) {
+            Options options = new OptionsBuilder()
+                    .include(JwtAuthenticationBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyFilterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AdaptiveConcurrencyFilter filter = new AdaptiveConcurrencyFilter(properties(), registry);
+
+    @Test
+    void longBodiesAfterQuickHeadersAreNotDrops() {
+        GatewayFilterChain stream = exchange -> {
+            ServerHttpResponse response = exchange.getResponse();
+            Flux<DataBuffer> body = Flux.concat(Mono.just("{\"id\":1}\n"),
+                            Mono.delay(Duration.ofMillis(250)).thenReturn("{\"id\":2}\n"))
+                    .map(line -> response.bufferFactory().wrap(line.getBytes(StandardCharsets.UTF_8)));
+            return response.writeWith(body);
+        };
+
+        for (int i = 0; i < 3; i++) {
+            filter.filter(exchange(), stream).block(Duration.ofSeconds(5));
+        }
+
+        assertThat(limit()).isGreaterThanOrEqualTo(10);
+    }
+
+    @Test
+    void slowHeadersAreDrops() {
+        GatewayFilterChain slow = exchange -> Mono.delay(Duration.ofMillis(250))
+                .then(exchange.getResponse().setComplete());
+
+        for (int i = 0; i < 3; i++) {
+            filter.filter(exchange(), slow).block(Duration.ofSeconds(5));
+        }
+
+        assertThat(limit()).isLessThan(10);
+    }
+
+    private MockServerWebExchange exchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/bills/stream"));
+        Route route = Route.async()
+                .id("r3-stream")
+                .uri("lb://BILLING-SERVICE")
+                .predicate(e -> true)
+                .build();
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    private double limit() {
+        return registry.get("gateway.concurrency.limit").tag("service", "BILLING-SERVICE").gauge().value();
+    }
+
+    private static ConcurrencyLimitProperties properties() {
+        ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+        properties.setInitialLimit(10);
+        properties.setMinLimit(2);
+        properties.setMaxLatencyMs(100);
+        return properties;
+    }
+}
@@ -0,0 +1,95 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveLimitTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    void rejectsOnceTheLimitIsInFlight() {
+        AdaptiveLimit limit = new AdaptiveLimit(properties(4));
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+        }
+        assertThat(limit.tryAcquire()).isFalse();
+        assertThat(limit.inFlight()).isEqualTo(4);
+
+        limit.release(RTT, false);
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void growsBySqrtOfLimitWhileLatencyIsStable() {
+        AdaptiveLimit limit = new AdaptiveLimit(properties(16));
+        fill(limit);
+
+        // gradient 1: estimate 16 + sqrt(16) = 20, smoothed 16 * 0.8 + 20 * 0.2
+        limit.release(RTT, false);
+        assertThat(limit.limit()).isEqualTo(16);
+        limit.tryAcquire();
+        limit.release(RTT, false);
+        // 16.8 * 0.8 + (16.8 + sqrt(16.8)) * 0.2 = 17.62
+        assertThat(limit.limit()).isEqualTo(17);
+    }
+
+    @Test
+    void shrinksInProportionToTheLatencyRise() {
+        AdaptiveLimit limit = new AdaptiveLimit(properties(100));
+        fill(limit);
+        limit.release(RTT, false);
+        limit.tryAcquire();
+        int before = limit.limit();
+
+        // Long-term rtt becomes 20 * 0.95 + 80 * 0.05 = 23 ms, gradient 23 / 80 is clamped to 0.5
+        limit.release(RTT * 4, false);
+        double previous = 100 * 0.8 + 110 * 0.2;
+        double estimate = previous * 0.5 + Math.sqrt(previous);
+        assertThat(limit.limit()).isEqualTo((int) (previous * 0.8 + estimate * 0.2)).isLessThan(before);
+    }
+
+    @Test
+    void dropsCutTheLimitByTenPercentDownToTheMinimum() {
+        AdaptiveLimit limit = new AdaptiveLimit(properties(20));
+        limit.tryAcquire();
+        limit.release(RTT, true);
+        assertThat(limit.limit()).isEqualTo(18);
+
+        for (int i = 0; i < 50; i++) {
+            limit.tryAcquire();
+            limit.release(RTT, true);
+        }
+        assertThat(limit.limit()).isEqualTo(4);
+        assertThat(limit.inFlight()).isZero();
+    }
+
+    @Test
+    void doesNotGrowWhileMostlyIdle() {
+        AdaptiveLimit limit = new AdaptiveLimit(properties(20));
+        for (int i = 0; i < 100; i++) {
+            limit.tryAcquire();
+            limit.release(RTT, false);
+        }
+        assertThat(limit.limit()).isEqualTo(20);
+    }
+
+    private static void fill(AdaptiveLimit limit) {
+        while (limit.tryAcquire()) {
+            // take every slot so releases count as a used limit
+        }
+    }
+
+    private static ConcurrencyLimitProperties properties(int initialLimit) {
+        ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+        properties.setInitialLimit(initialLimit);
+        properties.setMinLimit(4);
+        properties.setMaxLimit(500);
+        properties.setSmoothing(0.2);
+        return properties;
+    }
+}
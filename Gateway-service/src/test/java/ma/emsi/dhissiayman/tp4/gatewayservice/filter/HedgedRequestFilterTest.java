@@ -0,0 +1,222 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgedRequestFilterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger primariesSent = new AtomicInteger();
+    private final AtomicInteger hedgesSent = new AtomicInteger();
+    private final AtomicBoolean hedgeCancelled = new AtomicBoolean();
+    private final AtomicBoolean primaryCancelled = new AtomicBoolean();
+    private Duration hedgeLatency = Duration.ZERO;
+
+    @Test
+    void noHedgeIsSentWhenThePrimaryAnswersBeforeTheDelay() throws InterruptedException {
+        HedgedRequestFilter filter = filter(Duration.ofMillis(500));
+        MockServerWebExchange exchange = get("INVENTORY-SERVICE");
+
+        filter.filter(exchange, primary(Duration.ofMillis(50))).block(Duration.ofSeconds(5));
+        Thread.sleep(700);
+
+        assertThat(hedgesSent).hasValue(0);
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("primary");
+        assertThat(wins("primary")).isEqualTo(1);
+    }
+
+    @Test
+    void slowPrimaryIsCancelledAndOnlyTheHedgeWrites() {
+        HedgedRequestFilter filter = filter(Duration.ofMillis(50));
+        MockServerWebExchange exchange = get("INVENTORY-SERVICE");
+
+        filter.filter(exchange, primary(Duration.ofSeconds(2))).block(Duration.ofSeconds(5));
+
+        assertThat(primariesSent).hasValue(1);
+        assertThat(hedgesSent).hasValue(1);
+        assertThat(primaryCancelled).isTrue();
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("hedge");
+        assertThat(wins("hedge")).isEqualTo(1);
+        assertThat(wins("primary")).isZero();
+    }
+
+    @Test
+    void primaryAnsweringFirstCancelsTheHedgeInFlight() {
+        hedgeLatency = Duration.ofSeconds(2);
+        HedgedRequestFilter filter = filter(Duration.ofMillis(50));
+        MockServerWebExchange exchange = get("INVENTORY-SERVICE");
+
+        filter.filter(exchange, primary(Duration.ofMillis(300))).block(Duration.ofSeconds(5));
+
+        assertThat(primariesSent).hasValue(1);
+        assertThat(hedgesSent).hasValue(1);
+        assertThat(hedgeCancelled).isTrue();
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("primary");
+        assertThat(wins("primary")).isEqualTo(1);
+        assertThat(wins("hedge")).isZero();
+    }
+
+    @Test
+    void primaryLosingTheRaceCannotClaimTheResponse() {
+        HedgedRequestFilter filter = filter(Duration.ofMillis(50));
+        MockServerWebExchange exchange = get("INVENTORY-SERVICE");
+        AtomicReference<Throwable> primaryError = new AtomicReference<>();
+        // Ignores cancellation, as a response already on the wire would
+        GatewayFilterChain late = routed -> {
+            Mono.delay(Duration.ofMillis(300))
+                    .subscribe(ignored -> {
+                        try {
+                            routed.getResponse().setStatusCode(HttpStatus.OK);
+                        } catch (IllegalStateException e) {
+                            primaryError.set(e);
+                        }
+                    });
+            return Mono.never();
+        };
+
+        filter.filter(exchange, late).block(Duration.ofSeconds(5));
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("hedge");
+        awaitNotNull(primaryError);
+        assertThat(primaryError.get()).hasMessageContaining("already answered");
+        assertThat(wins("hedge")).isEqualTo(1);
+        assertThat(wins("primary")).isZero();
+    }
+
+    @Test
+    void nonGetRequestsAndOtherServicesPassThroughUntouched() {
+        HedgedRequestFilter filter = filter(Duration.ZERO);
+        AtomicReference<ServerWebExchange> seen = new AtomicReference<>();
+        GatewayFilterChain chain = routed -> {
+            seen.set(routed);
+            return Mono.empty();
+        };
+
+        MockServerWebExchange post = exchange(MockServerHttpRequest.post("/products").build(), "INVENTORY-SERVICE");
+        filter.filter(post, chain).block(Duration.ofSeconds(5));
+        assertThat(seen.get()).isSameAs(post);
+
+        MockServerWebExchange billing = get("BILLING-SERVICE");
+        filter.filter(billing, chain).block(Duration.ofSeconds(5));
+        assertThat(seen.get()).isSameAs(billing);
+
+        assertThat(hedgesSent).hasValue(0);
+        assertThat(registry.find("gateway.hedging.requests").counters()).isEmpty();
+    }
+
+    private HedgedRequestFilter filter(Duration initialDelay) {
+        HedgingProperties properties = new HedgingProperties();
+        properties.setEnabled(true);
+        properties.setServices(List.of("INVENTORY-SERVICE"));
+        properties.setInitialDelay(initialDelay);
+        WebClient.Builder alternate = WebClient.builder().exchangeFunction(request -> {
+            hedgesSent.incrementAndGet();
+            return Mono.delay(hedgeLatency)
+                    .map(ignored -> ClientResponse.create(HttpStatus.OK).body("hedge").build())
+                    .doOnCancel(() -> hedgeCancelled.set(true));
+        });
+        return new HedgedRequestFilter(properties, new Instances(), noHeadersFilters(),
+                new HttpClientProperties(), registry, alternate);
+    }
+
+    /**
+     * Stands in for NettyRoutingFilter and NettyWriteResponseFilter: status, then body
+     */
+    private GatewayFilterChain primary(Duration latency) {
+        return exchange -> Mono.delay(latency)
+                .doOnSubscribe(ignored -> primariesSent.incrementAndGet())
+                .doOnCancel(() -> primaryCancelled.set(true))
+                .then(Mono.defer(() -> {
+                    ServerHttpResponse response = exchange.getResponse();
+                    response.setStatusCode(HttpStatus.OK);
+                    return response.writeWith(Flux.just(response.bufferFactory()
+                            .wrap("primary".getBytes(StandardCharsets.UTF_8))));
+                }));
+    }
+
+    private double wins(String winner) {
+        var counter = registry.find("gateway.hedging.requests").tag("winner", winner).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static MockServerWebExchange get(String service) {
+        return exchange(MockServerHttpRequest.get("/products").build(), service);
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest request, String service) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        Route route = Route.async()
+                .id("r2")
+                .uri("lb://" + service)
+                .predicate(e -> true)
+                .build();
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+                URI.create("http://10.0.0.1:8082/products"));
+        return exchange;
+    }
+
+    private static ObjectProvider<List<HttpHeadersFilter>> noHeadersFilters() {
+        return new DefaultListableBeanFactory()
+                .getBeanProvider(ResolvableType.forClassWithGenerics(List.class, HttpHeadersFilter.class));
+    }
+
+    private static void awaitNotNull(AtomicReference<?> reference) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (reference.get() == null && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Two instances of every service; the load balancer picked the first one
+     */
+    private static final class Instances implements ReactiveDiscoveryClient {
+        @Override
+        public String description() {
+            return "test";
+        }
+
+        @Override
+        public Flux<ServiceInstance> getInstances(String serviceId) {
+            return Flux.just(
+                    new DefaultServiceInstance(serviceId + "-1", serviceId, "10.0.0.1", 8082, false),
+                    new DefaultServiceInstance(serviceId + "-2", serviceId, "10.0.0.2", 8082, false));
+        }
+
+        @Override
+        public Flux<String> getServices() {
+            return Flux.just("INVENTORY-SERVICE", "BILLING-SERVICE");
+        }
+    }
+}
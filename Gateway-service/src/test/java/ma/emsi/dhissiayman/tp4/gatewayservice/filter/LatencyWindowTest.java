@@ -0,0 +1,48 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyWindowTest {
+
+    @Test
+    void percentileIsUnknownUntilTheFirstRecomputation() {
+        LatencyWindow window = new LatencyWindow(1000, 0.95);
+        for (int i = 1; i < 50; i++) {
+            window.record(i);
+        }
+
+        assertThat(window.count()).isEqualTo(49);
+        assertThat(window.percentileNanos()).isEqualTo(-1);
+
+        window.record(50);
+        assertThat(window.percentileNanos()).isEqualTo(48);
+    }
+
+    @Test
+    void percentileIsTakenOverTheSamplesSeenSoFar() {
+        LatencyWindow window = new LatencyWindow(1000, 0.95);
+        for (int i = 100; i >= 1; i--) {
+            window.record(i);
+        }
+
+        assertThat(window.percentileNanos()).isEqualTo(95);
+    }
+
+    @Test
+    void oldSamplesLeaveTheWindow() {
+        LatencyWindow window = new LatencyWindow(100, 0.95);
+        for (int i = 0; i < 100; i++) {
+            window.record(1_000_000);
+        }
+        assertThat(window.percentileNanos()).isEqualTo(1_000_000);
+
+        for (int i = 0; i < 100; i++) {
+            window.record(1_000);
+        }
+
+        assertThat(window.count()).isEqualTo(200);
+        assertThat(window.percentileNanos()).isEqualTo(1_000);
+    }
+}
@@ -0,0 +1,182 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheFilterTest {
+
+    private static final String BODY = "[{\"id\":1,\"name\":\"Laptop\"}]";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ResponseCacheFilter filter = new ResponseCacheFilter(properties(), registry);
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private final Sinks.Empty<Void> release = Sinks.empty();
+
+    @Test
+    void ttlComesFromSMaxAgeThenMaxAgeThenTheRoute() {
+        assertThat(filter.ttlMillis("products", cacheControl("max-age=60"))).isEqualTo(60_000);
+        assertThat(filter.ttlMillis("products", cacheControl("public, max-age=60, s-maxage=300"))).isEqualTo(300_000);
+        assertThat(filter.ttlMillis("products", cacheControl("public"))).isEqualTo(30_000);
+        assertThat(filter.ttlMillis("customers", new HttpHeaders())).isEqualTo(5_000);
+    }
+
+    @Test
+    void privateNoStoreNoCacheAndCookieResponsesAreNotCached() {
+        for (String value : List.of("private, max-age=60", "no-store", "no-cache, max-age=60")) {
+            assertThat(filter.ttlMillis("products", cacheControl(value))).as(value).isEqualTo(-1);
+        }
+        HttpHeaders withCookie = cacheControl("max-age=60");
+        withCookie.add(HttpHeaders.SET_COOKIE, "session=1");
+        assertThat(filter.ttlMillis("products", withCookie)).isEqualTo(-1);
+    }
+
+    @Test
+    void concurrentIdenticalRequestsGoUpstreamOnce() {
+        GatewayFilterChain chain = upstream("max-age=60");
+        MockServerWebExchange first = get();
+        MockServerWebExchange second = get();
+
+        CompletableFuture<Void> firstDone = filter.filter(first, chain).toFuture();
+        CompletableFuture<Void> secondDone = filter.filter(second, chain).toFuture();
+        assertThat(secondDone).isNotDone();
+        release.tryEmitEmpty();
+        CompletableFuture.allOf(firstDone, secondDone).join();
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(first.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+        assertThat(first.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("MISS");
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+        assertThat(second.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("COALESCED");
+        assertThat(second.getResponse().getHeaders().getETag()).isEqualTo(first.getResponse().getHeaders().getETag());
+
+        MockServerWebExchange third = get();
+        filter.filter(third, chain).block(Duration.ofSeconds(5));
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(third.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("HIT");
+        assertThat(count("miss")).isEqualTo(1);
+        assertThat(count("coalesced")).isEqualTo(1);
+        assertThat(count("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void waitersGoUpstreamWhenTheResponseIsNotCacheable() {
+        GatewayFilterChain chain = upstream("private");
+        MockServerWebExchange first = get();
+        MockServerWebExchange second = get();
+
+        CompletableFuture<Void> firstDone = filter.filter(first, chain).toFuture();
+        CompletableFuture<Void> secondDone = filter.filter(second, chain).toFuture();
+        release.tryEmitEmpty();
+        CompletableFuture.allOf(firstDone, secondDone).join();
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+        assertThat(count("bypass")).isEqualTo(1);
+    }
+
+    @Test
+    void chunkedBodiesPastTheLimitPassThroughWithoutBeingCached() {
+        ResponseCacheProperties properties = properties();
+        properties.setMaxBodyBytes(16);
+        ResponseCacheFilter smallCache = new ResponseCacheFilter(properties, registry);
+        String body = "0123456789".repeat(5);
+        GatewayFilterChain chain = exchange -> {
+            upstreamCalls.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().setCacheControl("max-age=60");
+            // No Content-Length: the size is only known while the body streams
+            return response.writeWith(Flux.range(0, 5).map(i -> response.bufferFactory()
+                    .wrap(body.substring(i * 10, i * 10 + 10).getBytes(StandardCharsets.UTF_8))));
+        };
+
+        MockServerWebExchange first = get();
+        smallCache.filter(first, chain).block(Duration.ofSeconds(5));
+        MockServerWebExchange second = get();
+        smallCache.filter(second, chain).block(Duration.ofSeconds(5));
+
+        assertThat(first.getResponse().getBodyAsString().block()).isEqualTo(body);
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo(body);
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(second.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("MISS");
+    }
+
+    @Test
+    void chunkedBodiesWithinTheLimitAreCached() {
+        GatewayFilterChain chain = exchange -> {
+            upstreamCalls.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().setCacheControl("max-age=60");
+            return response.writeWith(Flux.just("[{\"id\":1},", "{\"id\":2}]")
+                    .map(part -> response.bufferFactory().wrap(part.getBytes(StandardCharsets.UTF_8))));
+        };
+
+        MockServerWebExchange first = get();
+        filter.filter(first, chain).block(Duration.ofSeconds(5));
+        MockServerWebExchange second = get();
+        filter.filter(second, chain).block(Duration.ofSeconds(5));
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(first.getResponse().getHeaders().getETag()).isNotNull();
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("[{\"id\":1},{\"id\":2}]");
+        assertThat(second.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("HIT");
+    }
+
+    /** Upstream that answers once release completes, counting the calls */
+    private GatewayFilterChain upstream(String cacheControl) {
+        return exchange -> {
+            upstreamCalls.incrementAndGet();
+            return release.asMono().then(Mono.defer(() -> respond(exchange, cacheControl)));
+        };
+    }
+
+    private static Mono<Void> respond(ServerWebExchange exchange, String cacheControl) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setCacheControl(cacheControl);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(BODY.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static MockServerWebExchange get() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/products")
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE));
+    }
+
+    private static HttpHeaders cacheControl(String value) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(value);
+        return headers;
+    }
+
+    private double count(String result) {
+        return registry.get("gateway.cache.requests").tag("result", result).counter().count();
+    }
+
+    private static ResponseCacheProperties properties() {
+        ResponseCacheProperties properties = new ResponseCacheProperties();
+        properties.setRouteTtl(Map.of("products", Duration.ofSeconds(30)));
+        return properties;
+    }
+}
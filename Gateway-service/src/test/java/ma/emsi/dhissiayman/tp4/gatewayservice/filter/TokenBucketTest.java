@@ -0,0 +1,65 @@
+package ma.emsi.dhissiayman.tp4.gatewayservice.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @Test
+    void burstUpToCapacityThenWaitsForOneToken() {
+        TokenBucket bucket = new TokenBucket(3, 2, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryConsume()).isZero();
+        }
+        // 2 tokens per second: the next one is 500 ms away
+        assertThat(bucket.tryConsume()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        assertThat(bucket.tryConsume()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(300));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+        assertThat(bucket.tryConsume()).isZero();
+        assertThat(bucket.remaining()).isZero();
+    }
+
+    @Test
+    void refillIsCappedAtCapacity() {
+        TokenBucket bucket = new TokenBucket(5, 10, now::get);
+        for (int i = 0; i < 5; i++) {
+            bucket.tryConsume();
+        }
+
+        now.addAndGet(TimeUnit.HOURS.toNanos(1));
+
+        assertThat(bucket.tryConsume()).isZero();
+        assertThat(bucket.remaining()).isEqualTo(4);
+    }
+
+    @Test
+    void fractionalRateAccumulatesAcrossCalls() {
+        // 0.05 per second: one token every 20 s
+        TokenBucket bucket = new TokenBucket(1, 0.05, now::get);
+        assertThat(bucket.tryConsume()).isZero();
+
+        for (int i = 0; i < 19; i++) {
+            now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            assertThat(bucket.tryConsume()).isPositive();
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(bucket.tryConsume()).isZero();
+    }
+
+    @Test
+    void withoutRefillTheWaitIsUnbounded() {
+        TokenBucket bucket = new TokenBucket(1, 0, now::get);
+        assertThat(bucket.tryConsume()).isZero();
+        assertThat(bucket.tryConsume()).isEqualTo(Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,16 @@
+package ma.emsi.dhissiayman.tp4.inventoryservice.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+public class KafkaConfig {
+
+    @Bean
+    public NewTopic productTopic() {
+        return TopicBuilder.name("product-topic")
+                .build();
+    }
+}
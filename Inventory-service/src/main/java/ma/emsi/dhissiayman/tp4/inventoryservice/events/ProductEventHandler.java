@@ -0,0 +1,40 @@
+package ma.emsi.dhissiayman.tp4.inventoryservice.events;
+
+import ma.emsi.dhissiayman.tp4.inventoryservice.entities.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the id of every updated or deleted product on product-topic
+ * Billing-service listens to it to invalidate its product near-cache
+ */
+@Component
+@RepositoryEventHandler(Product.class)
+public class ProductEventHandler {
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private static final Logger logger = LoggerFactory.getLogger(ProductEventHandler.class);
+
+    public ProductEventHandler(KafkaTemplate<String, String> kafkaTemplate) {
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+    @HandleAfterSave
+    public void handleProductSave(Product product) {
+        publishChange(product);
+    }
+
+    @HandleAfterDelete
+    public void handleProductDelete(Product product) {
+        publishChange(product);
+    }
+
+    private void publishChange(Product product) {
+        logger.info("Product changed: {}", product.getId());
+        kafkaTemplate.send("product-topic", product.getId(), product.getId());
+    }
+}
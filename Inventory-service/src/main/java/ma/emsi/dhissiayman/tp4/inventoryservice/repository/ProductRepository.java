@@ -2,8 +2,20 @@ package ma.emsi.dhissiayman.tp4.inventoryservice.repository;
 
 import ma.emsi.dhissiayman.tp4.inventoryservice.entities.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
+
+import java.util.Collection;
+import java.util.List;
 
 @RepositoryRestResource
 public interface ProductRepository extends JpaRepository<Product, String> {
+
+    /**
+     * Bulk lookup used by Billing-service to enrich many bills at once
+     * GET /api/products/search/byIds?ids=a&ids=b
+     */
+    @RestResource(path = "byIds", rel = "byIds")
+    List<Product> findByIdIn(@Param("ids") Collection<String> ids);
 }
@@ -2,8 +2,10 @@ package ma.emsi.dhissiayman.tp4.analytics;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class AnalyticsApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,49 @@
+package ma.emsi.dhissiayman.tp4.analytics.config;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+
+import java.util.Map;
+
+@Configuration
+public class KafkaConfig {
+
+    /**
+     * Batch listener factory for the binary bill and supplier events (String keys, byte[] values)
+     *
+     * Each poll returns up to analytics.kafka.max-poll-records events; the broker waits for
+     * analytics.kafka.fetch-min-bytes (or fetch-max-wait-ms) so a backlog is read in large
+     * fetches. Offsets are committed by the listener once the whole batch is aggregated.
+     * Per-topic concurrency is set on each @KafkaListener.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> eventListenerContainerFactory(
+            KafkaProperties kafkaProperties,
+            @Value("${analytics.kafka.max-poll-records:2000}") int maxPollRecords,
+            @Value("${analytics.kafka.fetch-min-bytes:65536}") int fetchMinBytes,
+            @Value("${analytics.kafka.fetch-max-wait-ms:200}") int fetchMaxWaitMs,
+            @Value("${analytics.kafka.max-partition-fetch-bytes:4194304}") int maxPartitionFetchBytes) {
+        Map<String, Object> config = kafkaProperties.buildConsumerProperties(null);
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        config.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
+        config.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
+        config.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, maxPartitionFetchBytes);
+
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(config));
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+}
@@ -0,0 +1,12 @@
+package ma.emsi.dhissiayman.tp4.analytics.events;
+
+import java.util.List;
+
+/**
+ * bill-topic message published by Billing-service
+ */
+public record BillEvent(long billId, long customerId, long billingDate, double total, List<LineItem> lineItems) {
+
+    public record LineItem(String productId, int quantity, double unitPrice) {
+    }
+}
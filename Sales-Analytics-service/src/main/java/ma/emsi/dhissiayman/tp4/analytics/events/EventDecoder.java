@@ -0,0 +1,86 @@
+package ma.emsi.dhissiayman.tp4.analytics.events;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoder of the binary bill-topic and supplier-topic messages
+ *
+ * Mirrors BillEventCodec (Billing-service) and SupplierEventCodec (Supplier-service):
+ * a version byte followed by unsigned LEB128 varints, big-endian doubles and
+ * length-prefixed UTF-8 strings. Fields are only ever appended, so messages of a
+ * newer version are decoded and their extra trailing bytes ignored.
+ */
+public final class EventDecoder {
+    public static final byte BILL_VERSION = 1;
+    public static final byte SUPPLIER_VERSION = 1;
+    /** Smallest encoded line item: empty productId (1), quantity (1), unitPrice (8) */
+    private static final int MIN_LINE_ITEM_BYTES = 10;
+
+    private EventDecoder() {
+    }
+
+    public static BillEvent decodeBill(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            checkVersion(in.get(), BILL_VERSION, "bill");
+            long billId = readVarLong(in);
+            long customerId = readVarLong(in);
+            long billingDate = readVarLong(in);
+            double total = in.getDouble();
+            // Bounded by the bytes left, so a corrupt count cannot allocate a huge list
+            long itemCount = readVarLong(in);
+            if (itemCount < 0 || itemCount > in.remaining() / MIN_LINE_ITEM_BYTES) {
+                throw new BufferUnderflowException();
+            }
+            List<BillEvent.LineItem> items = new ArrayList<>((int) itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                items.add(new BillEvent.LineItem(readString(in), (int) readVarLong(in), in.getDouble()));
+            }
+            return new BillEvent(billId, customerId, billingDate, total, items);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated bill event", e);
+        }
+    }
+
+    public static SupplierEvent decodeSupplier(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            checkVersion(in.get(), SUPPLIER_VERSION, "supplier");
+            return new SupplierEvent(readVarLong(in), readVarLong(in), readString(in), readString(in));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated supplier event", e);
+        }
+    }
+
+    private static void checkVersion(byte version, byte expected, String what) {
+        if (version < expected) {
+            throw new IllegalArgumentException("Unsupported " + what + " event version " + version);
+        }
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static String readString(ByteBuffer in) {
+        long length = readVarLong(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), (int) length, StandardCharsets.UTF_8);
+        in.position(in.position() + (int) length);
+        return value;
+    }
+}
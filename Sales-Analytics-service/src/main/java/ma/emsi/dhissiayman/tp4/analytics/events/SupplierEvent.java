@@ -0,0 +1,7 @@
+package ma.emsi.dhissiayman.tp4.analytics.events;
+
+/**
+ * supplier-topic message published by Supplier-service
+ */
+public record SupplierEvent(long supplierId, long createdAt, String name, String email) {
+}
@@ -0,0 +1,203 @@
+package ma.emsi.dhissiayman.tp4.analytics.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped Counter Registry
+ *
+ * A fixed set of named long and double counters, spread like LongAdder cells over
+ * stripes selected by the updating thread, so listener threads do not contend on
+ * a shared word. Unlike a set of independent LongAdders, several counters can be
+ * updated together and {@link #snapshot()} sees either all or none of such an update.
+ *
+ * Each stripe cell is an immutable array of values replaced by compare-and-set, as
+ * LongAdder does with a single long: an update builds the new cell of its stripe
+ * and retries on another stripe if the CAS fails, and a snapshot sums the cells it
+ * reads without blocking anyone. One CAS covers every counter of an update, where
+ * independent LongAdders would need one per counter and could not be read together.
+ * Counters are registered before the first update.
+ */
+public class StripedCounterRegistry {
+    // Keeps the cells of two stripes on different cache lines (16 compressed references)
+    private static final int PADDING = 16;
+
+    private final List<String> longNames = new ArrayList<>();
+    private final List<String> doubleNames = new ArrayList<>();
+    private final int stripeMask;
+    private volatile AtomicReferenceArray<Cell> cells;
+
+    public StripedCounterRegistry() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public StripedCounterRegistry(int minStripes) {
+        int size = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;
+        this.stripeMask = size - 1;
+    }
+
+    public synchronized LongCounter longCounter(String name) {
+        checkNotStarted();
+        longNames.add(name);
+        return new LongCounter(longNames.size() - 1);
+    }
+
+    public synchronized DoubleCounter doubleCounter(String name) {
+        checkNotStarted();
+        doubleNames.add(name);
+        return new DoubleCounter(doubleNames.size() - 1);
+    }
+
+    private void checkNotStarted() {
+        if (cells != null) {
+            throw new IllegalStateException("Counters must be registered before the first update");
+        }
+    }
+
+    private AtomicReferenceArray<Cell> cells() {
+        AtomicReferenceArray<Cell> current = cells;
+        if (current == null) {
+            synchronized (this) {
+                if (cells == null) {
+                    AtomicReferenceArray<Cell> created = new AtomicReferenceArray<>((stripeMask + 1) * PADDING);
+                    Cell zero = new Cell(new long[longNames.size()], new double[doubleNames.size()]);
+                    for (int stripe = 0; stripe <= stripeMask; stripe++) {
+                        created.set(stripe * PADDING, zero);
+                    }
+                    cells = created;
+                }
+                current = cells;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Apply several counter updates atomically with respect to snapshot()
+     * The updates are collected once, then added to a stripe with a single CAS
+     */
+    public void update(Consumer<Updater> updates) {
+        AtomicReferenceArray<Cell> all = cells();
+        Delta delta = new Delta(longNames.size(), doubleNames.size());
+        updates.accept(delta);
+        int probe = (int) Thread.currentThread().getId();
+        while (true) {
+            int index = (probe & stripeMask) * PADDING;
+            Cell current = all.get(index);
+            if (all.compareAndSet(index, current, current.plus(delta))) {
+                return;
+            }
+            // Contended: move on to another stripe, like LongAdder rehashing its probe
+            probe ^= probe << 13;
+            probe ^= probe >>> 17;
+            probe ^= probe << 5;
+        }
+    }
+
+    public void add(LongCounter counter, long delta) {
+        update(updater -> updater.add(counter, delta));
+    }
+
+    /**
+     * Values of every counter, in registration order; each update is seen whole or not at all
+     */
+    public Map<String, Number> snapshot() {
+        AtomicReferenceArray<Cell> all = cells();
+        long[] longs = new long[longNames.size()];
+        double[] doubles = new double[doubleNames.size()];
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            Cell cell = all.get(stripe * PADDING);
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] += cell.longs[i];
+            }
+            for (int i = 0; i < doubles.length; i++) {
+                doubles[i] += cell.doubles[i];
+            }
+        }
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (int i = 0; i < longs.length; i++) {
+            values.put(longNames.get(i), longs[i]);
+        }
+        for (int i = 0; i < doubles.length; i++) {
+            values.put(doubleNames.get(i), doubles[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Replace every counter by the given values (state restore); missing names are reset
+     * Must not run concurrently with updates: the state store restores before any batch is applied
+     */
+    public void restore(Map<String, Number> values) {
+        AtomicReferenceArray<Cell> all = cells();
+        long[] longs = new long[longNames.size()];
+        double[] doubles = new double[doubleNames.size()];
+        for (int i = 0; i < longs.length; i++) {
+            Number value = values.get(longNames.get(i));
+            longs[i] = value == null ? 0 : value.longValue();
+        }
+        for (int i = 0; i < doubles.length; i++) {
+            Number value = values.get(doubleNames.get(i));
+            doubles[i] = value == null ? 0 : value.doubleValue();
+        }
+        Cell zero = new Cell(new long[longs.length], new double[doubles.length]);
+        for (int stripe = 1; stripe <= stripeMask; stripe++) {
+            all.set(stripe * PADDING, zero);
+        }
+        all.set(0, new Cell(longs, doubles));
+    }
+
+    public record LongCounter(int index) {
+    }
+
+    public record DoubleCounter(int index) {
+    }
+
+    public interface Updater {
+        void add(LongCounter counter, long delta);
+
+        void add(DoubleCounter counter, double delta);
+    }
+
+    /**
+     * Values of one stripe, never modified once published
+     */
+    private record Cell(long[] longs, double[] doubles) {
+
+        Cell plus(Delta delta) {
+            long[] newLongs = longs.clone();
+            double[] newDoubles = doubles.clone();
+            for (int i = 0; i < newLongs.length; i++) {
+                newLongs[i] += delta.longs[i];
+            }
+            for (int i = 0; i < newDoubles.length; i++) {
+                newDoubles[i] += delta.doubles[i];
+            }
+            return new Cell(newLongs, newDoubles);
+        }
+    }
+
+    private static final class Delta implements Updater {
+        private final long[] longs;
+        private final double[] doubles;
+
+        private Delta(int longCount, int doubleCount) {
+            this.longs = new long[longCount];
+            this.doubles = new double[doubleCount];
+        }
+
+        @Override
+        public void add(LongCounter counter, long delta) {
+            longs[counter.index()] += delta;
+        }
+
+        @Override
+        public void add(DoubleCounter counter, double delta) {
+            doubles[counter.index()] += delta;
+        }
+    }
+}
@@ -1,32 +1,193 @@
 package ma.emsi.dhissiayman.tp4.analytics.service;
 
+import jakarta.annotation.PostConstruct;
+import ma.emsi.dhissiayman.tp4.analytics.events.BillEvent;
+import ma.emsi.dhissiayman.tp4.analytics.events.EventDecoder;
+import ma.emsi.dhissiayman.tp4.analytics.events.SupplierEvent;
+import ma.emsi.dhissiayman.tp4.analytics.metrics.StripedCounterRegistry;
+import ma.emsi.dhissiayman.tp4.analytics.store.AnalyticsStateStore;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Analytics Service
+ *
+ * Aggregates bill and supplier events. Batches go through the
+ * {@link AnalyticsStateStore}, which persists them with their offsets before
+ * they are applied, and partitions are resumed from the offsets in that store.
+ */
 @Service
-public class AnalyticsService {
+public class AnalyticsService implements AnalyticsStateStore.StateHandler, ConsumerSeekAware {
     
     private static final Logger logger = LoggerFactory.getLogger(AnalyticsService.class);
-    private final Map<String, Long> analyticsData = new ConcurrentHashMap<>();
+    private static final String SUPPLIER_TOPIC = "supplier-topic";
+    private static final String BILL_TOPIC = "bill-topic";
 
-    @KafkaListener(topics = "supplier-topic", groupId = "analytics-group")
-    public void consumeSupplierEvents(String message) {
-        logger.info("ANALYTICS - Received Supplier Event: {}", message);
-        analyticsData.merge("Total Suppliers", 1L, Long::sum);
+    private final StripedCounterRegistry counters = new StripedCounterRegistry();
+    private final StripedCounterRegistry.LongCounter totalSuppliers = counters.longCounter("Total Suppliers");
+    private final StripedCounterRegistry.LongCounter totalBills = counters.longCounter("Total Bills");
+    private final StripedCounterRegistry.LongCounter totalBillItems = counters.longCounter("Total Bill Items");
+    private final StripedCounterRegistry.LongCounter malformedEvents = counters.longCounter("Malformed Events");
+    private final StripedCounterRegistry.DoubleCounter totalRevenue = counters.doubleCounter("Total Revenue");
+    private final WindowedAnalyticsService windowedAnalyticsService;
+    private final SketchAnalyticsService sketchAnalyticsService;
+    private final AnalyticsStateStore stateStore;
+
+    public AnalyticsService(WindowedAnalyticsService windowedAnalyticsService,
+                            SketchAnalyticsService sketchAnalyticsService,
+                            AnalyticsStateStore stateStore) {
+        this.windowedAnalyticsService = windowedAnalyticsService;
+        this.sketchAnalyticsService = sketchAnalyticsService;
+        this.stateStore = stateStore;
+    }
+
+    @PostConstruct
+    void restoreState() {
+        stateStore.open(this);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        for (TopicPartition partition : assignments.keySet()) {
+            // The store, not the consumer group, knows which events are already counted
+            stateStore.offset(partition).ifPresentOrElse(
+                    offset -> callback.seek(partition.topic(), partition.partition(), offset),
+                    () -> callback.seekToBeginning(List.of(partition)));
+        }
+    }
+
+    @KafkaListener(topics = SUPPLIER_TOPIC, groupId = "analytics-group",
+            containerFactory = "eventListenerContainerFactory",
+            concurrency = "${analytics.kafka.supplier-concurrency:1}")
+    public void consumeSupplierEvents(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment) {
+        stateStore.commit(SUPPLIER_TOPIC, toStoreRecords(records));
+        acknowledgment.acknowledge();
+        logger.debug("ANALYTICS - Aggregated batch of {} Supplier Events", records.size());
+    }
+
+    @KafkaListener(topics = BILL_TOPIC, groupId = "analytics-group",
+            containerFactory = "eventListenerContainerFactory",
+            concurrency = "${analytics.kafka.bill-concurrency:3}")
+    public void consumeBillEvents(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment) {
+        stateStore.commit(BILL_TOPIC, toStoreRecords(records));
+        // Offsets are committed only once the whole batch is in the state store
+        acknowledgment.acknowledge();
+        logger.debug("ANALYTICS - Aggregated batch of {} Bill Events", records.size());
+    }
+
+    private static List<AnalyticsStateStore.Record> toStoreRecords(List<ConsumerRecord<String, byte[]>> records) {
+        List<AnalyticsStateStore.Record> storeRecords = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, byte[]> record : records) {
+            storeRecords.add(new AnalyticsStateStore.Record(record.partition(), record.offset(), record.value()));
+        }
+        return storeRecords;
+    }
+
+    /**
+     * Fold a batch into the aggregates; called by the state store, live or on replay
+     */
+    @Override
+    public void apply(String topic, List<byte[]> messages) {
+        if (SUPPLIER_TOPIC.equals(topic)) {
+            applySupplierEvents(messages);
+        } else if (BILL_TOPIC.equals(topic)) {
+            applyBillEvents(messages);
+        }
+    }
+
+    private void applySupplierEvents(List<byte[]> messages) {
+        long suppliers = 0;
+        long malformed = 0;
+        for (byte[] message : messages) {
+            try {
+                SupplierEvent event = EventDecoder.decodeSupplier(message);
+                logger.debug("ANALYTICS - Received Supplier Event: {}", event);
+                suppliers++;
+            } catch (IllegalArgumentException e) {
+                malformed++;
+                logger.warn("ANALYTICS - Skipping malformed Supplier Event: {}", e.getMessage());
+            }
+        }
+        long batchSuppliers = suppliers;
+        long batchMalformed = malformed;
+        counters.update(updater -> {
+            updater.add(totalSuppliers, batchSuppliers);
+            updater.add(malformedEvents, batchMalformed);
+        });
+    }
+
+    private void applyBillEvents(List<byte[]> messages) {
+        List<BillEvent> events = new ArrayList<>(messages.size());
+        long items = 0;
+        double revenue = 0;
+        long malformed = 0;
+        for (byte[] message : messages) {
+            try {
+                BillEvent event = EventDecoder.decodeBill(message);
+                events.add(event);
+                items += event.lineItems().size();
+                revenue += event.total();
+            } catch (IllegalArgumentException e) {
+                malformed++;
+                logger.warn("ANALYTICS - Skipping malformed Bill Event: {}", e.getMessage());
+            }
+        }
+        long batchItems = items;
+        double batchRevenue = revenue;
+        long batchMalformed = malformed;
+        // One atomic update per batch, so a snapshot never sees bills without their revenue
+        counters.update(updater -> {
+            updater.add(totalBills, events.size());
+            updater.add(totalBillItems, batchItems);
+            updater.add(totalRevenue, batchRevenue);
+            updater.add(malformedEvents, batchMalformed);
+        });
+        windowedAnalyticsService.recordAll(events);
+        sketchAnalyticsService.recordAll(events);
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        Map<String, Number> values = counters.snapshot();
+        out.writeInt(values.size());
+        for (Map.Entry<String, Number> entry : values.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeDouble(entry.getValue().doubleValue());
+        }
+        windowedAnalyticsService.writeState(out);
+        sketchAnalyticsService.writeState(out);
     }
 
-    @KafkaListener(topics = "bill-topic", groupId = "analytics-group")
-    public void consumeBillEvents(String message) {
-        logger.info("ANALYTICS - Received Bill Event: {}", message);
-        analyticsData.merge("Total Bills", 1L, Long::sum);
+    @Override
+    public void readState(DataInput in) throws IOException {
+        Map<String, Number> values = new LinkedHashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            values.put(in.readUTF(), in.readDouble());
+        }
+        counters.restore(values);
+        windowedAnalyticsService.readState(in);
+        sketchAnalyticsService.readState(in);
     }
     
-    public Map<String, Long> getAnalyticsData() {
-        return analyticsData;
+    /**
+     * Consistent snapshot of the counters
+     */
+    public Map<String, Object> getAnalyticsData() {
+        return new LinkedHashMap<>(counters.snapshot());
     }
 }
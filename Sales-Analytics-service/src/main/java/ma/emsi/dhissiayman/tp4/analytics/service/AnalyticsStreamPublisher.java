@@ -0,0 +1,195 @@
+package ma.emsi.dhissiayman.tp4.analytics.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Analytics Stream Publisher
+ *
+ * Single fan-out source behind GET /analytics/stream. Every
+ * {@code analytics.stream.interval-ms} it takes one snapshot of the counters,
+ * keeps only the values that changed since the previous tick, serializes that
+ * delta once and writes it to every subscriber. A new subscriber first receives
+ * a full "snapshot" event, then the shared "delta" events. When nothing changed,
+ * a heartbeat comment is sent every {@code analytics.stream.heartbeat-ticks} ticks
+ * so proxies keep the connection open. Each subscriber has a bounded queue of
+ * {@code analytics.stream.queue-capacity} events; one that falls further behind
+ * is closed so that it reconnects to a fresh snapshot.
+ */
+@Component
+public class AnalyticsStreamPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(AnalyticsStreamPublisher.class);
+
+    private final AnalyticsService analyticsService;
+    private final ObjectMapper objectMapper;
+    private final long emitterTimeoutMs;
+    private final int heartbeatTicks;
+    private final int queueCapacity;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private Map<String, Object> lastPublished = Map.of();
+    private int idleTicks;
+
+    public AnalyticsStreamPublisher(AnalyticsService analyticsService,
+                                    ObjectMapper objectMapper,
+                                    @Value("${analytics.stream.emitter-timeout-ms:1800000}") long emitterTimeoutMs,
+                                    @Value("${analytics.stream.heartbeat-ticks:15}") int heartbeatTicks,
+                                    @Value("${analytics.stream.queue-capacity:32}") int queueCapacity) {
+        this.analyticsService = analyticsService;
+        this.objectMapper = objectMapper;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.heartbeatTicks = heartbeatTicks;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        // The snapshot is queued and the subscriber registered between two ticks, so it cannot
+        // miss the delta of a tick that ran after its snapshot was taken
+        synchronized (this) {
+            try {
+                subscriber.offer(SseEmitter.event().name("snapshot")
+                        .data(objectMapper.writeValueAsString(analyticsService.getAnalyticsData()), MediaType.APPLICATION_JSON));
+            } catch (JsonProcessingException e) {
+                emitter.completeWithError(e);
+                return emitter;
+            }
+            subscribers.add(subscriber);
+        }
+        subscriber.drain();
+        logger.debug("Analytics stream subscriber added, {} connected", subscribers.size());
+        return emitter;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Only the delta and the queueing run under the lock; the blocking writes happen
+     * afterwards, so a slow client never holds up subscribe() or the next tick's snapshot
+     */
+    @Scheduled(fixedRateString = "${analytics.stream.interval-ms:1000}")
+    public void publish() {
+        List<Subscriber> targets = new ArrayList<>();
+        List<Subscriber> overflowed = new ArrayList<>();
+        synchronized (this) {
+            if (subscribers.isEmpty()) {
+                return;
+            }
+            SseEmitter.SseEventBuilder event = nextEvent();
+            if (event == null) {
+                return;
+            }
+            for (Subscriber subscriber : subscribers) {
+                (subscriber.offer(event) ? targets : overflowed).add(subscriber);
+            }
+        }
+        for (Subscriber subscriber : overflowed) {
+            // Too far behind to catch up with deltas: close it, the client reconnects to a fresh snapshot
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(new IOException("Analytics stream subscriber is too slow"));
+        }
+        targets.forEach(Subscriber::drain);
+    }
+
+    private SseEmitter.SseEventBuilder nextEvent() {
+        Map<String, Object> current = analyticsService.getAnalyticsData();
+        Map<String, Object> delta = new LinkedHashMap<>();
+        current.forEach((key, value) -> {
+            if (!Objects.equals(lastPublished.get(key), value)) {
+                delta.put(key, value);
+            }
+        });
+        lastPublished = current;
+
+        if (!delta.isEmpty()) {
+            idleTicks = 0;
+            try {
+                return SseEmitter.event().name("delta").data(objectMapper.writeValueAsString(delta), MediaType.APPLICATION_JSON);
+            } catch (JsonProcessingException e) {
+                logger.warn("Cannot serialize analytics delta: {}", e.getMessage());
+                return null;
+            }
+        }
+        if (++idleTicks >= heartbeatTicks) {
+            idleTicks = 0;
+            return SseEmitter.event().comment("heartbeat");
+        }
+        return null;
+    }
+
+    /**
+     * One connected client: events are queued in order and written by whichever
+     * thread finds the queue idle, so two threads never write to the same emitter
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Queue<SseEmitter.SseEventBuilder> pending = new ArrayDeque<>();
+        private boolean draining;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        synchronized boolean offer(SseEmitter.SseEventBuilder event) {
+            if (pending.size() >= queueCapacity) {
+                pending.clear();
+                return false;
+            }
+            pending.add(event);
+            return true;
+        }
+
+        void drain() {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            while (true) {
+                SseEmitter.SseEventBuilder event;
+                synchronized (this) {
+                    event = pending.poll();
+                    if (event == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // Client went away; the emitter callbacks may not fire for a broken pipe
+                    subscribers.remove(this);
+                    emitter.completeWithError(e);
+                    synchronized (this) {
+                        pending.clear();
+                        draining = false;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
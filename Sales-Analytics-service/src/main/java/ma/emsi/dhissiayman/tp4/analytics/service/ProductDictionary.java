@@ -0,0 +1,84 @@
+package ma.emsi.dhissiayman.tp4.analytics.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps product ids to dense int indexes so per-window quantities fit in primitive arrays
+ *
+ * The dictionary is bounded: once it holds maxProducts ids, new products share
+ * index 0 ({@link #OTHER}). Shared by the shards of {@link WindowedAnalyticsService}:
+ * known ids are looked up without locking, new ids are added under the dictionary's monitor.
+ */
+class ProductDictionary {
+    static final int OTHER_INDEX = 0;
+    static final String OTHER = "(other)";
+
+    private final int maxProducts;
+    private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+    private final List<String> productIds = new ArrayList<>();
+    private volatile boolean full;
+
+    ProductDictionary(int maxProducts) {
+        this.maxProducts = maxProducts;
+        productIds.add(OTHER);
+    }
+
+    int indexOf(String productId) {
+        Integer index = indexes.get(productId);
+        if (index != null) {
+            return index;
+        }
+        return full ? OTHER_INDEX : add(productId);
+    }
+
+    private synchronized int add(String productId) {
+        Integer index = indexes.get(productId);
+        if (index != null) {
+            return index;
+        }
+        if (productIds.size() > maxProducts) {
+            full = true;
+            return OTHER_INDEX;
+        }
+        index = productIds.size();
+        productIds.add(productId);
+        indexes.put(productId, index);
+        return index;
+    }
+
+    synchronized String productId(int index) {
+        return productIds.get(index);
+    }
+
+    synchronized int size() {
+        return productIds.size();
+    }
+
+    synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(productIds.size() - 1);
+        for (int i = 1; i < productIds.size(); i++) {
+            out.writeUTF(productIds.get(i));
+        }
+    }
+
+    /**
+     * Replace the content of the dictionary; indexes are restored in their original order
+     */
+    synchronized void readFrom(DataInput in) throws IOException {
+        indexes.clear();
+        productIds.subList(1, productIds.size()).clear();
+        full = false;
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String productId = in.readUTF();
+            indexes.put(productId, productIds.size());
+            productIds.add(productId);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package ma.emsi.dhissiayman.tp4.analytics.service;
+
+import ma.emsi.dhissiayman.tp4.analytics.events.BillEvent;
+import ma.emsi.dhissiayman.tp4.analytics.sketch.CountMinSketch;
+import ma.emsi.dhissiayman.tp4.analytics.sketch.Hashing;
+import ma.emsi.dhissiayman.tp4.analytics.sketch.HyperLogLog;
+import ma.emsi.dhissiayman.tp4.analytics.sketch.SpaceSaving;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Sketch Analytics Service
+ *
+ * Approximate aggregates of bill-topic events in bounded memory:
+ * distinct customers per hour and per day (HyperLogLog) and products by revenue
+ * per day (Space-Saving for the heavy hitters, Count-Min for point estimates).
+ * Every sketch is mergeable, so multi-window queries merge the windows they span,
+ * and sketches from other partitions or instances can be merged the same way.
+ *
+ * Listener threads record into analytics.shards independent sets of sketches,
+ * picked by thread, each guarded by its own monitor; queries and snapshots merge
+ * the shards as they merge windows.
+ */
+@Service
+public class SketchAnalyticsService {
+    private static final Logger logger = LoggerFactory.getLogger(SketchAnalyticsService.class);
+
+    private final int hllPrecision;
+    private final int countMinWidth;
+    private final int countMinDepth;
+    private final Supplier<Shard> shardFactory;
+    private final Shard[] shards;
+
+    public SketchAnalyticsService(@Value("${analytics.sketches.hll-precision:14}") int hllPrecision,
+                                  @Value("${analytics.sketches.top-products-capacity:256}") int topProductsCapacity,
+                                  @Value("${analytics.sketches.count-min.width:2048}") int countMinWidth,
+                                  @Value("${analytics.sketches.count-min.depth:5}") int countMinDepth,
+                                  @Value("${analytics.windows.hours:48}") int hours,
+                                  @Value("${analytics.windows.days:31}") int days,
+                                  @Value("${analytics.shards:4}") int shards) {
+        this.hllPrecision = hllPrecision;
+        this.countMinWidth = countMinWidth;
+        this.countMinDepth = countMinDepth;
+        long hourMs = TimeUnit.HOURS.toMillis(1);
+        long dayMs = TimeUnit.DAYS.toMillis(1);
+        this.shardFactory = () -> new Shard(
+                new SketchWindows<>(hourMs, hours, () -> new HyperLogLog(hllPrecision)),
+                new SketchWindows<>(dayMs, days, () -> new HyperLogLog(hllPrecision)),
+                new SketchWindows<>(dayMs, days, () -> new SpaceSaving(topProductsCapacity)),
+                new SketchWindows<>(dayMs, days, () -> new CountMinSketch(countMinWidth, countMinDepth)));
+        this.shards = new Shard[Math.max(1, shards)];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = shardFactory.get();
+        }
+    }
+
+    /**
+     * Add a batch of events under a single acquisition of the calling thread's shard
+     */
+    public void recordAll(List<BillEvent> events) {
+        Shard shard = shards[(int) (Thread.currentThread().getId() % shards.length)];
+        synchronized (shard) {
+            for (BillEvent event : events) {
+                record(shard, event);
+            }
+        }
+    }
+
+    private static void record(Shard shard, BillEvent event) {
+        long timestamp = event.billingDate();
+        long customerHash = Hashing.hash(event.customerId());
+        HyperLogLog hour = shard.hourlyCustomers.forWrite(timestamp);
+        if (hour != null) {
+            hour.add(customerHash);
+        }
+        HyperLogLog day = shard.dailyCustomers.forWrite(timestamp);
+        if (day != null) {
+            day.add(customerHash);
+        }
+        SpaceSaving topProducts = shard.dailyTopProducts.forWrite(timestamp);
+        CountMinSketch productRevenue = shard.dailyProductRevenue.forWrite(timestamp);
+        if (topProducts == null || productRevenue == null) {
+            return;
+        }
+        for (BillEvent.LineItem item : event.lineItems()) {
+            double revenue = item.quantity() * item.unitPrice();
+            topProducts.add(item.productId(), revenue);
+            productRevenue.add(Hashing.hash(item.productId()), revenue);
+        }
+    }
+
+    /**
+     * Distinct customers over the last {@code count} hours or days, with the standard error
+     */
+    public Map<String, Object> distinctCustomers(WindowedAnalyticsService.Granularity granularity, int count) {
+        Function<Shard, SketchWindows<HyperLogLog>> rings = switch (granularity) {
+            case HOUR -> shard -> shard.hourlyCustomers;
+            case DAY -> shard -> shard.dailyCustomers;
+            default -> throw new IllegalArgumentException("Distinct customers are kept per hour or per day");
+        };
+        SketchWindows<HyperLogLog> ring;
+        synchronized (shards[0]) {
+            ring = rings.apply(shards[0]);
+        }
+        int span = Math.max(1, Math.min(count, ring.capacity()));
+        long newest = ring.windowOf(System.currentTimeMillis());
+        HyperLogLog union = null;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                SketchWindows<HyperLogLog> shardRing = rings.apply(shard);
+                for (long window = newest - span + 1; window <= newest; window++) {
+                    HyperLogLog sketch = shardRing.forRead(window);
+                    if (sketch == null) {
+                        continue;
+                    }
+                    if (union == null) {
+                        union = sketch.copy();
+                    } else {
+                        union.merge(sketch);
+                    }
+                }
+            }
+        }
+        long estimate = union == null ? 0 : union.estimate();
+        double error = union == null ? 0 : union.relativeStandardError();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("granularity", granularity.name().toLowerCase(Locale.ROOT));
+        result.put("start", (newest - span + 1) * ring.windowMs());
+        result.put("end", (newest + 1) * ring.windowMs());
+        result.put("distinctCustomers", estimate);
+        result.put("relativeStandardError", error);
+        // Roughly 95% of estimates fall within two standard errors
+        result.put("lowerBound95", Math.max(0, Math.round(estimate * (1 - 2 * error))));
+        result.put("upperBound95", Math.round(estimate * (1 + 2 * error)));
+        return result;
+    }
+
+    /**
+     * The {@code k} products with the highest revenue over the last {@code days} days
+     * Each entry carries the Space-Saving revenue (an upper bound), the guaranteed part of it,
+     * and the Count-Min point estimate
+     */
+    public Map<String, Object> topProductsByRevenue(int days, int k) {
+        SketchWindows<SpaceSaving> ring;
+        synchronized (shards[0]) {
+            ring = shards[0].dailyTopProducts;
+        }
+        int span = Math.max(1, Math.min(days, ring.capacity()));
+        long newest = ring.windowOf(System.currentTimeMillis());
+        SpaceSaving topProducts = null;
+        CountMinSketch productRevenue = null;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (long window = newest - span + 1; window <= newest; window++) {
+                    SpaceSaving top = shard.dailyTopProducts.forRead(window);
+                    CountMinSketch revenue = shard.dailyProductRevenue.forRead(window);
+                    if (top != null) {
+                        if (topProducts == null) {
+                            topProducts = top.copy();
+                        } else {
+                            topProducts.merge(top);
+                        }
+                    }
+                    if (revenue != null) {
+                        if (productRevenue == null) {
+                            productRevenue = revenue.copy();
+                        } else {
+                            productRevenue.merge(revenue);
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Map<String, Object>> products = new ArrayList<>();
+        if (topProducts != null) {
+            for (SpaceSaving.Counter counter : topProducts.top(k)) {
+                Map<String, Object> product = new LinkedHashMap<>();
+                product.put("productId", counter.item());
+                product.put("revenue", counter.weight());
+                product.put("guaranteedRevenue", counter.weight() - counter.error());
+                if (productRevenue != null) {
+                    product.put("countMinRevenue", productRevenue.estimate(Hashing.hash(counter.item())));
+                }
+                products.add(product);
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("start", (newest - span + 1) * ring.windowMs());
+        result.put("end", (newest + 1) * ring.windowMs());
+        result.put("totalRevenue", topProducts == null ? 0.0 : topProducts.totalWeight());
+        result.put("products", products);
+        if (topProducts != null) {
+            // Any product with more revenue than this is guaranteed to be tracked
+            result.put("spaceSavingMaxError", topProducts.totalWeight() / topProducts.capacity());
+        }
+        if (productRevenue != null) {
+            result.put("countMinErrorBound", productRevenue.errorBound());
+            result.put("countMinConfidence", productRevenue.confidence());
+        }
+        return result;
+    }
+
+    /**
+     * Serialize the shards merged into one set of sketches
+     */
+    public void writeState(DataOutput out) throws IOException {
+        Shard merged = shardFactory.get();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                merged.merge(shard);
+            }
+        }
+        merged.hourlyCustomers.writeTo(out, HyperLogLog::writeTo);
+        merged.dailyCustomers.writeTo(out, HyperLogLog::writeTo);
+        merged.dailyTopProducts.writeTo(out, SpaceSaving::writeTo);
+        merged.dailyProductRevenue.writeTo(out, CountMinSketch::writeTo);
+    }
+
+    /**
+     * Restore the state written by writeState into the first shard, the others start empty
+     * Windows written with another HyperLogLog precision or Count-Min size are dropped,
+     * they could not be merged with the sketches built from now on
+     */
+    public void readState(DataInput in) throws IOException {
+        Shard restored = shardFactory.get();
+        warnIfIncomplete("hourly customers", restored.hourlyCustomers.readFrom(in, HyperLogLog::readFrom,
+                sketch -> sketch.precision() == hllPrecision));
+        warnIfIncomplete("daily customers", restored.dailyCustomers.readFrom(in, HyperLogLog::readFrom,
+                sketch -> sketch.precision() == hllPrecision));
+        // Space-Saving summaries of any capacity merge into one another
+        warnIfIncomplete("daily top products", restored.dailyTopProducts.readFrom(in, SpaceSaving::readFrom,
+                sketch -> true));
+        warnIfIncomplete("daily product revenue", restored.dailyProductRevenue.readFrom(in, CountMinSketch::readFrom,
+                sketch -> sketch.width() == countMinWidth && sketch.depth() == countMinDepth));
+        for (int i = 0; i < shards.length; i++) {
+            Shard replacement = i == 0 ? restored : shardFactory.get();
+            synchronized (shards[i]) {
+                shards[i].replace(replacement);
+            }
+        }
+    }
+
+    private static void warnIfIncomplete(String sketches, boolean complete) {
+        if (!complete) {
+            logger.warn("Stored {} sketches do not match the configured windows or sketch sizes, some were dropped",
+                    sketches);
+        }
+    }
+
+    /**
+     * Sketches of one shard; the rings are replaced on restore, under the shard's monitor
+     */
+    private static final class Shard {
+        private SketchWindows<HyperLogLog> hourlyCustomers;
+        private SketchWindows<HyperLogLog> dailyCustomers;
+        private SketchWindows<SpaceSaving> dailyTopProducts;
+        private SketchWindows<CountMinSketch> dailyProductRevenue;
+
+        private Shard(SketchWindows<HyperLogLog> hourlyCustomers, SketchWindows<HyperLogLog> dailyCustomers,
+                      SketchWindows<SpaceSaving> dailyTopProducts, SketchWindows<CountMinSketch> dailyProductRevenue) {
+            this.hourlyCustomers = hourlyCustomers;
+            this.dailyCustomers = dailyCustomers;
+            this.dailyTopProducts = dailyTopProducts;
+            this.dailyProductRevenue = dailyProductRevenue;
+        }
+
+        private void merge(Shard other) {
+            hourlyCustomers.merge(other.hourlyCustomers, HyperLogLog::copy, HyperLogLog::merge);
+            dailyCustomers.merge(other.dailyCustomers, HyperLogLog::copy, HyperLogLog::merge);
+            dailyTopProducts.merge(other.dailyTopProducts, SpaceSaving::copy, SpaceSaving::merge);
+            dailyProductRevenue.merge(other.dailyProductRevenue, CountMinSketch::copy, CountMinSketch::merge);
+        }
+
+        private void replace(Shard other) {
+            hourlyCustomers = other.hourlyCustomers;
+            dailyCustomers = other.dailyCustomers;
+            dailyTopProducts = other.dailyTopProducts;
+            dailyProductRevenue = other.dailyProductRevenue;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ma.emsi.dhissiayman.tp4.analytics.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Ring of one sketch per tumbling window, same slot layout as {@link TimeWindows}
+ * Not thread-safe, each shard of {@link SketchAnalyticsService} is guarded by its own monitor.
+ */
+class SketchWindows<S> {
+
+    interface Writer<S> {
+        void write(S sketch, DataOutput out) throws IOException;
+    }
+
+    interface Reader<S> {
+        S read(DataInput in) throws IOException;
+    }
+
+    private final long windowMs;
+    private final int capacity;
+    private final Supplier<S> factory;
+    private final long[] windowNumbers;
+    private final Object[] sketches;
+    private long newestWindow = Long.MIN_VALUE;
+
+    SketchWindows(long windowMs, int capacity, Supplier<S> factory) {
+        this.windowMs = windowMs;
+        this.capacity = capacity;
+        this.factory = factory;
+        this.windowNumbers = new long[capacity];
+        this.sketches = new Object[capacity];
+        Arrays.fill(windowNumbers, -1);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long windowMs() {
+        return windowMs;
+    }
+
+    long windowOf(long timestamp) {
+        return Math.floorDiv(timestamp, windowMs);
+    }
+
+    /**
+     * Sketch of the window holding the timestamp, or null if that window left the ring
+     */
+    @SuppressWarnings("unchecked")
+    S forWrite(long timestamp) {
+        long window = windowOf(timestamp);
+        if (newestWindow != Long.MIN_VALUE && window <= newestWindow - capacity) {
+            return null;
+        }
+        int slot = (int) Math.floorMod(window, (long) capacity);
+        if (windowNumbers[slot] != window || sketches[slot] == null) {
+            windowNumbers[slot] = window;
+            sketches[slot] = factory.get();
+        }
+        newestWindow = Math.max(newestWindow, window);
+        return (S) sketches[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    S forRead(long window) {
+        int slot = (int) Math.floorMod(window, (long) capacity);
+        return windowNumbers[slot] == window ? (S) sketches[slot] : null;
+    }
+
+    /**
+     * Merge the sketches of another ring of the same size, keeping the newer window where slots differ
+     */
+    @SuppressWarnings("unchecked")
+    void merge(SketchWindows<S> other, UnaryOperator<S> copy, BiConsumer<S, S> merge) {
+        for (int slot = 0; slot < capacity; slot++) {
+            S sketch = (S) other.sketches[slot];
+            long window = other.windowNumbers[slot];
+            if (sketch == null || window < windowNumbers[slot]) {
+                continue;
+            }
+            if (window > windowNumbers[slot] || sketches[slot] == null) {
+                windowNumbers[slot] = window;
+                sketches[slot] = copy.apply(sketch);
+            } else {
+                merge.accept((S) sketches[slot], sketch);
+            }
+        }
+        newestWindow = Math.max(newestWindow, other.newestWindow);
+    }
+
+    void writeTo(DataOutput out, Writer<S> writer) throws IOException {
+        out.writeLong(windowMs);
+        out.writeInt(capacity);
+        out.writeLong(newestWindow);
+        for (int slot = 0; slot < capacity; slot++) {
+            boolean present = sketches[slot] != null;
+            out.writeBoolean(present);
+            if (present) {
+                out.writeLong(windowNumbers[slot]);
+                writeSketch(slot, out, writer);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeSketch(int slot, DataOutput out, Writer<S> writer) throws IOException {
+        writer.write((S) sketches[slot], out);
+    }
+
+    /**
+     * Restore a ring written by writeTo
+     * Sketches rejected by {@code compatible} (other dimensions than the factory's, which
+     * could not be merged) are dropped. Returns false, after consuming the ring, if it was
+     * written with another window size or capacity or if any sketch was dropped.
+     */
+    boolean readFrom(DataInput in, Reader<S> reader, Predicate<S> compatible) throws IOException {
+        long storedWindowMs = in.readLong();
+        int storedCapacity = in.readInt();
+        long storedNewest = in.readLong();
+        boolean sameLayout = storedWindowMs == windowMs && storedCapacity == capacity;
+        boolean complete = sameLayout;
+        for (int slot = 0; slot < storedCapacity; slot++) {
+            if (!in.readBoolean()) {
+                continue;
+            }
+            long window = in.readLong();
+            S sketch = reader.read(in);
+            if (!compatible.test(sketch)) {
+                complete = false;
+            } else if (sameLayout) {
+                windowNumbers[slot] = window;
+                sketches[slot] = sketch;
+            }
+        }
+        if (sameLayout) {
+            newestWindow = storedNewest;
+        }
+        return complete;
+    }
+}
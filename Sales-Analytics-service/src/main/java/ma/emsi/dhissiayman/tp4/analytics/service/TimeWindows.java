@@ -0,0 +1,193 @@
+package ma.emsi.dhissiayman.tp4.analytics.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Ring of fixed-size tumbling windows for one granularity (minute, hour or day)
+ *
+ * Slot i holds the window whose number (eventTime / windowMs) is congruent to i
+ * modulo the capacity. All counters are primitive arrays allocated once; only the
+ * per-product quantity rows grow, up to the size of the {@link ProductDictionary}.
+ * Sliding windows are answered by summing consecutive tumbling windows.
+ * Not thread-safe, each shard of {@link WindowedAnalyticsService} is guarded by its own monitor.
+ */
+class TimeWindows {
+    private final long windowMs;
+    private final int capacity;
+    private final long[] windowNumbers;
+    private final long[] billCounts;
+    private final double[] revenues;
+    private final long[][] productQuantities;
+    private long newestWindow = Long.MIN_VALUE;
+
+    TimeWindows(long windowMs, int capacity) {
+        this.windowMs = windowMs;
+        this.capacity = capacity;
+        this.windowNumbers = new long[capacity];
+        this.billCounts = new long[capacity];
+        this.revenues = new double[capacity];
+        this.productQuantities = new long[capacity][];
+        Arrays.fill(windowNumbers, -1);
+    }
+
+    long windowMs() {
+        return windowMs;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long windowOf(long timestamp) {
+        return Math.floorDiv(timestamp, windowMs);
+    }
+
+    /**
+     * Slot of the given window, reset if it still holds an older window
+     * Returns -1 when the window has already left the ring
+     */
+    private int slotForWrite(long window) {
+        if (newestWindow != Long.MIN_VALUE && window <= newestWindow - capacity) {
+            return -1;
+        }
+        int slot = (int) Math.floorMod(window, (long) capacity);
+        if (windowNumbers[slot] != window) {
+            windowNumbers[slot] = window;
+            billCounts[slot] = 0;
+            revenues[slot] = 0;
+            if (productQuantities[slot] != null) {
+                Arrays.fill(productQuantities[slot], 0);
+            }
+        }
+        newestWindow = Math.max(newestWindow, window);
+        return slot;
+    }
+
+    private int slotForRead(long window) {
+        int slot = (int) Math.floorMod(window, (long) capacity);
+        return windowNumbers[slot] == window ? slot : -1;
+    }
+
+    /**
+     * @return false if the event is older than the oldest window kept
+     */
+    boolean addBill(long timestamp, double revenue) {
+        int slot = slotForWrite(windowOf(timestamp));
+        if (slot < 0) {
+            return false;
+        }
+        billCounts[slot]++;
+        revenues[slot] += revenue;
+        return true;
+    }
+
+    void addQuantity(long timestamp, int productIndex, long quantity) {
+        int slot = slotForRead(windowOf(timestamp));
+        if (slot < 0) {
+            return;
+        }
+        long[] quantities = productQuantities[slot];
+        if (quantities == null || quantities.length <= productIndex) {
+            int length = Math.max(productIndex + 1, quantities == null ? 16 : quantities.length * 2);
+            quantities = quantities == null ? new long[length] : Arrays.copyOf(quantities, length);
+            productQuantities[slot] = quantities;
+        }
+        quantities[productIndex] += quantity;
+    }
+
+    long billCount(long window) {
+        int slot = slotForRead(window);
+        return slot < 0 ? 0 : billCounts[slot];
+    }
+
+    double revenue(long window) {
+        int slot = slotForRead(window);
+        return slot < 0 ? 0 : revenues[slot];
+    }
+
+    /**
+     * Add the product quantities of a window into the given totals
+     */
+    void sumQuantities(long window, long[] totals) {
+        int slot = slotForRead(window);
+        if (slot < 0 || productQuantities[slot] == null) {
+            return;
+        }
+        long[] quantities = productQuantities[slot];
+        for (int i = 0; i < Math.min(quantities.length, totals.length); i++) {
+            totals[i] += quantities[i];
+        }
+    }
+
+    /**
+     * Add the windows of another ring of the same size, keeping the newer window where slots differ
+     */
+    void merge(TimeWindows other) {
+        for (int slot = 0; slot < capacity; slot++) {
+            long window = other.windowNumbers[slot];
+            if (window == -1 || window < windowNumbers[slot]) {
+                continue;
+            }
+            if (window > windowNumbers[slot]) {
+                windowNumbers[slot] = window;
+                billCounts[slot] = 0;
+                revenues[slot] = 0;
+                productQuantities[slot] = null;
+            }
+            billCounts[slot] += other.billCounts[slot];
+            revenues[slot] += other.revenues[slot];
+            long[] quantities = other.productQuantities[slot];
+            if (quantities != null) {
+                long[] target = productQuantities[slot];
+                if (target == null || target.length < quantities.length) {
+                    target = target == null ? new long[quantities.length] : Arrays.copyOf(target, quantities.length);
+                    productQuantities[slot] = target;
+                }
+                for (int i = 0; i < quantities.length; i++) {
+                    target[i] += quantities[i];
+                }
+            }
+        }
+        newestWindow = Math.max(newestWindow, other.newestWindow);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(windowMs);
+        out.writeInt(capacity);
+        out.writeLong(newestWindow);
+        for (int slot = 0; slot < capacity; slot++) {
+            out.writeLong(windowNumbers[slot]);
+            out.writeLong(billCounts[slot]);
+            out.writeDouble(revenues[slot]);
+            long[] quantities = productQuantities[slot];
+            out.writeInt(quantities == null ? 0 : quantities.length);
+            if (quantities != null) {
+                for (long quantity : quantities) {
+                    out.writeLong(quantity);
+                }
+            }
+        }
+    }
+
+    static TimeWindows readFrom(DataInput in) throws IOException {
+        TimeWindows ring = new TimeWindows(in.readLong(), in.readInt());
+        ring.newestWindow = in.readLong();
+        for (int slot = 0; slot < ring.capacity; slot++) {
+            ring.windowNumbers[slot] = in.readLong();
+            ring.billCounts[slot] = in.readLong();
+            ring.revenues[slot] = in.readDouble();
+            int length = in.readInt();
+            if (length > 0) {
+                long[] quantities = new long[length];
+                for (int i = 0; i < length; i++) {
+                    quantities[i] = in.readLong();
+                }
+                ring.productQuantities[slot] = quantities;
+            }
+        }
+        return ring;
+    }
+}
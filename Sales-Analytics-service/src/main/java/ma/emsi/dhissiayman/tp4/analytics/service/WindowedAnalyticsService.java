@@ -0,0 +1,230 @@
+package ma.emsi.dhissiayman.tp4.analytics.service;
+
+import ma.emsi.dhissiayman.tp4.analytics.events.BillEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Windowed Analytics Service
+ *
+ * Streaming aggregation of bill-topic events into per-minute, per-hour and
+ * per-day tumbling windows (bill count, revenue, average basket and quantity
+ * per product), keyed on the bill date. Memory is bounded by the number of
+ * windows kept per granularity and by analytics.windows.max-products;
+ * events older than the oldest window kept are counted as late and dropped.
+ *
+ * Listener threads record into analytics.shards independent sets of windows,
+ * picked by thread, each guarded by its own monitor, so concurrent batches do not
+ * serialize on one lock; queries and snapshots sum the shards window by window.
+ */
+@Service
+public class WindowedAnalyticsService {
+
+    public enum Granularity { MINUTE, HOUR, DAY }
+
+    private final ProductDictionary products;
+    private final int minutes;
+    private final int hours;
+    private final int days;
+    private final Map<Granularity, TimeWindows>[] shards;
+    private final AtomicLong lateEvents = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public WindowedAnalyticsService(@Value("${analytics.windows.minutes:120}") int minutes,
+                                    @Value("${analytics.windows.hours:48}") int hours,
+                                    @Value("${analytics.windows.days:31}") int days,
+                                    @Value("${analytics.windows.max-products:10000}") int maxProducts,
+                                    @Value("${analytics.shards:4}") int shards) {
+        this.products = new ProductDictionary(maxProducts);
+        this.minutes = minutes;
+        this.hours = hours;
+        this.days = days;
+        this.shards = new Map[Math.max(1, shards)];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = newWindows();
+        }
+    }
+
+    private Map<Granularity, TimeWindows> newWindows() {
+        Map<Granularity, TimeWindows> windows = new LinkedHashMap<>();
+        windows.put(Granularity.MINUTE, new TimeWindows(TimeUnit.MINUTES.toMillis(1), minutes));
+        windows.put(Granularity.HOUR, new TimeWindows(TimeUnit.HOURS.toMillis(1), hours));
+        windows.put(Granularity.DAY, new TimeWindows(TimeUnit.DAYS.toMillis(1), days));
+        return windows;
+    }
+
+    /**
+     * Aggregate a batch of events under a single acquisition of the calling thread's shard
+     */
+    public void recordAll(List<BillEvent> events) {
+        Map<Granularity, TimeWindows> windows = shards[(int) (Thread.currentThread().getId() % shards.length)];
+        synchronized (windows) {
+            for (BillEvent event : events) {
+                record(windows, event);
+            }
+        }
+    }
+
+    public void record(BillEvent event) {
+        recordAll(List.of(event));
+    }
+
+    private void record(Map<Granularity, TimeWindows> windows, BillEvent event) {
+        long timestamp = event.billingDate();
+        boolean counted = false;
+        for (TimeWindows granularity : windows.values()) {
+            counted |= granularity.addBill(timestamp, event.total());
+        }
+        if (!counted) {
+            lateEvents.incrementAndGet();
+            return;
+        }
+        for (BillEvent.LineItem item : event.lineItems()) {
+            int productIndex = products.indexOf(item.productId());
+            for (TimeWindows granularity : windows.values()) {
+                granularity.addQuantity(timestamp, productIndex, item.quantity());
+            }
+        }
+    }
+
+    /**
+     * The last {@code count} tumbling windows of a granularity, oldest first, with
+     * their sliding aggregate and the {@code top} products by quantity over that span
+     */
+    public Map<String, Object> query(Granularity granularity, int count, int top) {
+        TimeWindows ring;
+        synchronized (shards[0]) {
+            ring = shards[0].get(granularity);
+        }
+        int span = Math.max(1, Math.min(count, ring.capacity()));
+        long newest = ring.windowOf(System.currentTimeMillis());
+        long oldest = newest - span + 1;
+
+        long[] windowBillCounts = new long[span];
+        double[] windowRevenues = new double[span];
+        long[] quantities = new long[products.size()];
+        for (Map<Granularity, TimeWindows> shard : shards) {
+            synchronized (shard) {
+                TimeWindows shardRing = shard.get(granularity);
+                for (int i = 0; i < span; i++) {
+                    windowBillCounts[i] += shardRing.billCount(oldest + i);
+                    windowRevenues[i] += shardRing.revenue(oldest + i);
+                    shardRing.sumQuantities(oldest + i, quantities);
+                }
+            }
+        }
+
+        List<Map<String, Object>> tumbling = new ArrayList<>(span);
+        long billCount = 0;
+        double revenue = 0;
+        for (long window = oldest; window <= newest; window++) {
+            long windowBills = windowBillCounts[(int) (window - oldest)];
+            double windowRevenue = windowRevenues[(int) (window - oldest)];
+            billCount += windowBills;
+            revenue += windowRevenue;
+
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("start", window * ring.windowMs());
+            view.put("end", (window + 1) * ring.windowMs());
+            view.put("billCount", windowBills);
+            view.put("revenue", windowRevenue);
+            view.put("averageBasket", windowBills > 0 ? windowRevenue / windowBills : 0.0);
+            tumbling.add(view);
+        }
+
+        Map<String, Object> sliding = new LinkedHashMap<>();
+        sliding.put("start", oldest * ring.windowMs());
+        sliding.put("end", (newest + 1) * ring.windowMs());
+        sliding.put("billCount", billCount);
+        sliding.put("revenue", revenue);
+        sliding.put("averageBasket", billCount > 0 ? revenue / billCount : 0.0);
+        sliding.put("topProducts", topProducts(quantities, top));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("granularity", granularity.name().toLowerCase(Locale.ROOT));
+        result.put("windowMs", ring.windowMs());
+        result.put("windows", tumbling);
+        result.put("sliding", sliding);
+        result.put("lateEvents", lateEvents.get());
+        return result;
+    }
+
+    /**
+     * Serialize every window, the shards summed, and the product dictionary, for the analytics state store
+     */
+    public void writeState(DataOutput out) throws IOException {
+        Map<Granularity, TimeWindows> merged = newWindows();
+        for (Map<Granularity, TimeWindows> shard : shards) {
+            synchronized (shard) {
+                merged.forEach((granularity, windows) -> windows.merge(shard.get(granularity)));
+            }
+        }
+        products.writeTo(out);
+        out.writeLong(lateEvents.get());
+        out.writeInt(merged.size());
+        for (Map.Entry<Granularity, TimeWindows> entry : merged.entrySet()) {
+            out.writeUTF(entry.getKey().name());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    /**
+     * Restore the state written by writeState into the first shard, the others start empty
+     * A granularity whose window size or capacity changed since is started empty
+     */
+    public void readState(DataInput in) throws IOException {
+        products.readFrom(in);
+        lateEvents.set(in.readLong());
+        Map<Granularity, TimeWindows> restoredWindows = newWindows();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Granularity granularity = Granularity.valueOf(in.readUTF());
+            TimeWindows restored = TimeWindows.readFrom(in);
+            TimeWindows current = restoredWindows.get(granularity);
+            if (current.windowMs() == restored.windowMs() && current.capacity() == restored.capacity()) {
+                restoredWindows.put(granularity, restored);
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            Map<Granularity, TimeWindows> shard = shards[i];
+            Map<Granularity, TimeWindows> replacement = i == 0 ? restoredWindows : newWindows();
+            synchronized (shard) {
+                shard.putAll(replacement);
+            }
+        }
+    }
+
+    private List<Map<String, Object>> topProducts(long[] quantities, int top) {
+        PriorityQueue<Integer> heap = new PriorityQueue<>((a, b) -> Long.compare(quantities[a], quantities[b]));
+        for (int i = 0; i < quantities.length; i++) {
+            if (quantities[i] == 0) {
+                continue;
+            }
+            heap.offer(i);
+            if (heap.size() > top) {
+                heap.poll();
+            }
+        }
+        List<Map<String, Object>> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            int index = heap.poll();
+            Map<String, Object> product = new LinkedHashMap<>();
+            product.put("productId", products.productId(index));
+            product.put("quantity", quantities[index]);
+            result.add(0, product);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+package ma.emsi.dhissiayman.tp4.analytics.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch of non-negative weights
+ *
+ * With width w and depth d, an estimate never underestimates and exceeds the true
+ * weight by at most (e / w) * totalWeight with probability 1 - e^-d.
+ * Sketches of the same dimensions merge by adding their cells.
+ * Not thread-safe.
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final double[][] cells;
+    private double totalWeight;
+
+    public CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.cells = new double[depth][width];
+    }
+
+    public void add(long hash, double weight) {
+        if (weight <= 0) {
+            return;
+        }
+        for (int row = 0; row < depth; row++) {
+            cells[row][bucket(hash, row)] += weight;
+        }
+        totalWeight += weight;
+    }
+
+    public double estimate(long hash) {
+        double estimate = Double.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, cells[row][bucket(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Bound on the overestimate of estimate(), holding with probability confidence()
+     */
+    public double errorBound() {
+        return Math.E / width * totalWeight;
+    }
+
+    public double confidence() {
+        return 1 - Math.exp(-depth);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public double totalWeight() {
+        return totalWeight;
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge Count-Min sketches of different dimensions");
+        }
+        for (int row = 0; row < depth; row++) {
+            for (int column = 0; column < width; column++) {
+                cells[row][column] += other.cells[row][column];
+            }
+        }
+        totalWeight += other.totalWeight;
+    }
+
+    public CountMinSketch copy() {
+        CountMinSketch copy = new CountMinSketch(width, depth);
+        copy.merge(this);
+        return copy;
+    }
+
+    public void clear() {
+        for (double[] row : cells) {
+            Arrays.fill(row, 0);
+        }
+        totalWeight = 0;
+    }
+
+    // Kirsch-Mitzenmacher: row hashes derived from the two halves of one 64-bit hash
+    private int bucket(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return Math.floorMod(h1 + row * h2, width);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(depth);
+        out.writeDouble(totalWeight);
+        for (double[] row : cells) {
+            for (double cell : row) {
+                out.writeDouble(cell);
+            }
+        }
+    }
+
+    public static CountMinSketch readFrom(DataInput in) throws IOException {
+        CountMinSketch sketch = new CountMinSketch(in.readInt(), in.readInt());
+        sketch.totalWeight = in.readDouble();
+        for (double[] row : sketch.cells) {
+            for (int column = 0; column < row.length; column++) {
+                row[column] = in.readDouble();
+            }
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,36 @@
+package ma.emsi.dhissiayman.tp4.analytics.sketch;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit hashes for the sketches (FNV-1a followed by the MurmurHash3 finalizer)
+ */
+public final class Hashing {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    public static long hash(long value) {
+        return fmix64(value ^ FNV_OFFSET);
+    }
+
+    public static long hash(String value) {
+        long hash = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return fmix64(hash);
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
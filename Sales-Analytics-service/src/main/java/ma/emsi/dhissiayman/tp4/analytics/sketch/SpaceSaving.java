@@ -0,0 +1,144 @@
+package ma.emsi.dhissiayman.tp4.analytics.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Weighted Space-Saving heavy-hitters summary
+ *
+ * Tracks at most {@code capacity} items. When a new item arrives and the summary is
+ * full, it takes over the counter with the smallest weight, inheriting that weight
+ * as its error. Every item whose true weight exceeds totalWeight / capacity is kept,
+ * and for each kept item  weight - error <= true weight <= weight.
+ * Summaries merge by adding counters, following Agarwal et al., "Mergeable Summaries".
+ * Counters are also kept ordered by weight, so an update costs O(log capacity).
+ * Not thread-safe.
+ */
+public class SpaceSaving {
+    private static final Comparator<Counter> BY_WEIGHT =
+            Comparator.comparingDouble(Counter::weight).thenComparing(Counter::item);
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    /** The same counters, lightest first */
+    private final NavigableSet<Counter> byWeight = new TreeSet<>(BY_WEIGHT);
+    private double totalWeight;
+
+    public record Counter(String item, double weight, double error) {
+    }
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public void add(String item, double weight) {
+        if (!(weight > 0)) {
+            return;
+        }
+        totalWeight += weight;
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            byWeight.remove(counter);
+            put(new Counter(item, counter.weight() + weight, counter.error()));
+        } else if (counters.size() < capacity) {
+            put(new Counter(item, weight, 0));
+        } else {
+            Counter min = byWeight.pollFirst();
+            counters.remove(min.item());
+            put(new Counter(item, min.weight() + weight, min.weight()));
+        }
+    }
+
+    public void merge(SpaceSaving other) {
+        double thisMin = counters.size() < capacity ? 0 : byWeight.first().weight();
+        double otherMin = other.counters.size() < other.capacity ? 0 : other.byWeight.first().weight();
+        Map<String, Counter> merged = new HashMap<>(counters.size() + other.counters.size());
+        for (Counter counter : counters.values()) {
+            Counter match = other.counters.get(counter.item());
+            merged.put(counter.item(), match != null
+                    ? new Counter(counter.item(), counter.weight() + match.weight(), counter.error() + match.error())
+                    : new Counter(counter.item(), counter.weight() + otherMin, counter.error() + otherMin));
+        }
+        for (Counter counter : other.counters.values()) {
+            merged.computeIfAbsent(counter.item(), item ->
+                    new Counter(item, counter.weight() + thisMin, counter.error() + thisMin));
+        }
+        counters.clear();
+        byWeight.clear();
+        merged.values().stream()
+                .sorted(BY_WEIGHT.reversed())
+                .limit(capacity)
+                .forEach(this::put);
+        totalWeight += other.totalWeight;
+    }
+
+    /**
+     * The k heaviest items, heaviest first
+     */
+    public List<Counter> top(int k) {
+        List<Counter> top = new ArrayList<>(Math.min(k, counters.size()));
+        Iterator<Counter> heaviest = byWeight.descendingIterator();
+        while (top.size() < k && heaviest.hasNext()) {
+            top.add(heaviest.next());
+        }
+        return top;
+    }
+
+    public double totalWeight() {
+        return totalWeight;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(capacity);
+        copy.counters.putAll(counters);
+        copy.byWeight.addAll(byWeight);
+        copy.totalWeight = totalWeight;
+        return copy;
+    }
+
+    public void clear() {
+        counters.clear();
+        byWeight.clear();
+        totalWeight = 0;
+    }
+
+    private void put(Counter counter) {
+        counters.put(counter.item(), counter);
+        byWeight.add(counter);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeDouble(totalWeight);
+        out.writeInt(counters.size());
+        for (Counter counter : counters.values()) {
+            out.writeUTF(counter.item());
+            out.writeDouble(counter.weight());
+            out.writeDouble(counter.error());
+        }
+    }
+
+    public static SpaceSaving readFrom(DataInput in) throws IOException {
+        SpaceSaving sketch = new SpaceSaving(in.readInt());
+        sketch.totalWeight = in.readDouble();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            sketch.put(new Counter(in.readUTF(), in.readDouble(), in.readDouble()));
+        }
+        return sketch;
+    }
+}
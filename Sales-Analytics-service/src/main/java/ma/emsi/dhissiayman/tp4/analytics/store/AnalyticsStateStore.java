@@ -0,0 +1,375 @@
+package ma.emsi.dhissiayman.tp4.analytics.store;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Analytics State Store
+ *
+ * Local, restart-safe store of the analytics aggregates and of the Kafka offsets
+ * they include. Every consumed batch is applied, then appended to a changelog (its
+ * events and the next offset of each partition, CRC-protected, fsync'ed) before the
+ * batch is acknowledged. Every {@code analytics.state.snapshot-interval-ms} the whole
+ * state is written to a snapshot file and the changelog is truncated.
+ *
+ * Files are read and written through plain channel I/O, never memory-mapped: a live
+ * mapping would make the truncate and the atomic snapshot replace fail on Windows.
+ *
+ * On start the snapshot is loaded and the changelog replayed on top of it; the
+ * listeners then seek each partition to the offset recorded here rather than to
+ * the group offset. A batch is therefore either fully in the state with its
+ * offsets, or not at all, and no event is counted twice. Restart time is bounded
+ * by the snapshot interval.
+ */
+@Component
+public class AnalyticsStateStore {
+    private static final Logger logger = LoggerFactory.getLogger(AnalyticsStateStore.class);
+    // Bumped whenever the layout of the handler state changes
+    private static final int SNAPSHOT_MAGIC = 0x414E5333; // "ANS3"
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final String CHANGELOG = "changelog.log";
+
+    /**
+     * Owner of the aggregates
+     * apply() may be called by several listener threads at once; writeState() and
+     * readState() are called while no batch is being applied
+     */
+    public interface StateHandler {
+        void apply(String topic, List<byte[]> events);
+
+        void writeState(DataOutput out) throws IOException;
+
+        void readState(DataInput in) throws IOException;
+    }
+
+    private final Path directory;
+    private final boolean fsyncEveryBatch;
+    private final Map<TopicPartition, Long> offsets = new ConcurrentHashMap<>();
+    // Batches are applied under the read lock, snapshots taken under the write lock
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    // Serializes changelog appends, so changelog order is sequence order
+    private final Object appendLock = new Object();
+    private StateHandler handler;
+    private FileChannel changelog;
+    private long sequence;
+    private long snapshotSequence;
+
+    public AnalyticsStateStore(@Value("${analytics.state.dir:./data/analytics-state}") String directory,
+                               @Value("${analytics.state.fsync-every-batch:true}") boolean fsyncEveryBatch) {
+        this.directory = Path.of(directory);
+        this.fsyncEveryBatch = fsyncEveryBatch;
+    }
+
+    /**
+     * Restore the handler's state from the snapshot and the changelog
+     */
+    public void open(StateHandler handler) {
+        stateLock.writeLock().lock();
+        this.handler = handler;
+        try {
+            Files.createDirectories(directory);
+            if (!loadSnapshot()) {
+                // The changelog only makes sense on top of its snapshot
+                Files.deleteIfExists(directory.resolve(CHANGELOG));
+            }
+            changelog = FileChannel.open(directory.resolve(CHANGELOG),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int replayed = replayChangelog();
+            logger.info("Analytics state restored from {}: snapshot at sequence {}, {} changelog batches replayed, offsets {}",
+                    directory, snapshotSequence, replayed, offsets);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open analytics state store in " + directory, e);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Next offset to read for a partition, if the store has already consumed it
+     */
+    public Optional<Long> offset(TopicPartition partition) {
+        return Optional.ofNullable(offsets.get(partition));
+    }
+
+    /**
+     * Apply a batch to the state, then log it
+     * Records at or below the stored offset of their partition were already applied
+     * (redelivery after a rebalance) and are skipped.
+     *
+     * @param records events of one topic with their partition and offset
+     */
+    public void commit(String topic, List<Record> records) {
+        stateLock.readLock().lock();
+        try {
+            commitBatch(topic, records);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    private void commitBatch(String topic, List<Record> records) {
+        List<byte[]> events = new ArrayList<>(records.size());
+        Map<Integer, Long> nextOffsets = new HashMap<>();
+        for (Record record : records) {
+            Long stored = offsets.get(new TopicPartition(topic, record.partition()));
+            if (stored != null && record.offset() < stored) {
+                continue;
+            }
+            events.add(record.value());
+            nextOffsets.merge(record.partition(), record.offset() + 1, Math::max);
+        }
+        if (nextOffsets.isEmpty()) {
+            return;
+        }
+        // Partitions are owned by one listener thread, so batches of different threads commute.
+        // Applying first means a batch whose apply fails is never logged, so its redelivery
+        // cannot be replayed twice; a failed append after a successful apply leaves the batch
+        // in memory with its offsets, and the next snapshot persists it.
+        applyBatch(topic, nextOffsets, events);
+        synchronized (appendLock) {
+            long batchSequence = sequence + 1;
+            try {
+                appendChangelog(batchSequence, topic, nextOffsets, events);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot append to the analytics changelog", e);
+            }
+            sequence = batchSequence;
+        }
+    }
+
+    public record Record(int partition, long offset, byte[] value) {
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.state.snapshot-interval-ms:60000}",
+            initialDelayString = "${analytics.state.snapshot-interval-ms:60000}")
+    public void snapshot() {
+        stateLock.writeLock().lock();
+        try {
+            if (handler == null || sequence == snapshotSequence) {
+                return;
+            }
+            writeSnapshot();
+            // Everything in the changelog is now in the snapshot
+            changelog.truncate(0);
+            changelog.force(true);
+            logger.debug("Analytics state snapshot written at sequence {}", sequence);
+        } catch (IOException e) {
+            logger.warn("Failed to write analytics state snapshot: {}", e.getMessage());
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        stateLock.writeLock().lock();
+        try {
+            snapshot();
+            if (changelog != null) {
+                changelog.close();
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    private void applyBatch(String topic, Map<Integer, Long> nextOffsets, List<byte[]> events) {
+        handler.apply(topic, events);
+        nextOffsets.forEach((partition, offset) -> offsets.merge(new TopicPartition(topic, partition), offset, Math::max));
+    }
+
+    /*
+     * Changelog record: length:int crc:int payload
+     * payload = sequence:long topic:utf partitions:int {partition:int nextOffset:long}* events:int {length:int bytes}*
+     */
+    private void appendChangelog(long batchSequence, String topic, Map<Integer, Long> nextOffsets, List<byte[]> events)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + events.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(batchSequence);
+        out.writeUTF(topic);
+        out.writeInt(nextOffsets.size());
+        for (Map.Entry<Integer, Long> entry : nextOffsets.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeInt(events.size());
+        for (byte[] event : events) {
+            out.writeInt(event.length);
+            out.write(event);
+        }
+        byte[] payload = bytes.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt(crc(payload, 0, payload.length)).put(payload).flip();
+        changelog.position(changelog.size());
+        while (record.hasRemaining()) {
+            changelog.write(record);
+        }
+        if (fsyncEveryBatch) {
+            changelog.force(false);
+        }
+    }
+
+    private int replayChangelog() throws IOException {
+        long size = changelog.size();
+        if (size == 0) {
+            return 0;
+        }
+        int replayed = 0;
+        long valid = 0;
+        try (DataInputStream log = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(directory.resolve(CHANGELOG)), 1 << 16))) {
+            while (size - valid >= 8) {
+                int length = log.readInt();
+                int crc = log.readInt();
+                if (length < 0 || length > size - valid - 8) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                log.readFully(payload);
+                if (crc(payload, 0, length) != crc) {
+                    break;
+                }
+                valid += 8 + length;
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                long batchSequence = in.readLong();
+                String topic = in.readUTF();
+                Map<Integer, Long> nextOffsets = new HashMap<>();
+                int partitions = in.readInt();
+                for (int i = 0; i < partitions; i++) {
+                    nextOffsets.put(in.readInt(), in.readLong());
+                }
+                List<byte[]> events = new ArrayList<>();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    byte[] event = new byte[in.readInt()];
+                    in.readFully(event);
+                    events.add(event);
+                }
+                if (batchSequence <= sequence) {
+                    // Already in the snapshot
+                    continue;
+                }
+                applyBatch(topic, nextOffsets, events);
+                sequence = batchSequence;
+                replayed++;
+            }
+        } catch (EOFException e) {
+            // The file ended inside a record header; it is the torn tail handled below
+        }
+        if (valid < size) {
+            // Torn write at the tail, left by a crash during an append
+            logger.warn("Truncating {} trailing bytes of the analytics changelog", size - valid);
+            changelog.truncate(valid);
+            changelog.force(true);
+        }
+        return replayed;
+    }
+
+    /*
+     * Snapshot: magic:int length:int crc:int content
+     * content = sequence:long offsets:int {topic:utf partition:int offset:long}* state
+     */
+    private void writeSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(sequence);
+        out.writeInt(offsets.size());
+        for (Map.Entry<TopicPartition, Long> entry : offsets.entrySet()) {
+            out.writeUTF(entry.getKey().topic());
+            out.writeInt(entry.getKey().partition());
+            out.writeLong(entry.getValue());
+        }
+        handler.writeState(out);
+        out.flush();
+        byte[] content = bytes.toByteArray();
+
+        Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(12 + content.length);
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(content.length).putInt(crc(content, 0, content.length)).put(content);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotSequence = sequence;
+    }
+
+    /**
+     * @return false if the snapshot was written by an incompatible version and was discarded;
+     * the state is then rebuilt from the beginning of the topics
+     */
+    private boolean loadSnapshot() throws IOException {
+        Path file = directory.resolve(SNAPSHOT);
+        if (!Files.exists(file)) {
+            return true;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            if (buffer.getInt() != SNAPSHOT_MAGIC) {
+                logger.warn("Discarding analytics snapshot {} written in another format", file);
+                Files.delete(file);
+                return false;
+            }
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() || crc(bytes, buffer.position(), length) != crc) {
+                throw new IOException("Corrupted analytics snapshot: " + file);
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, buffer.position(), length));
+            sequence = in.readLong();
+            snapshotSequence = sequence;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                offsets.put(new TopicPartition(in.readUTF(), in.readInt()), in.readLong());
+            }
+            handler.readState(in);
+            return true;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated analytics snapshot: " + file, e);
+        }
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
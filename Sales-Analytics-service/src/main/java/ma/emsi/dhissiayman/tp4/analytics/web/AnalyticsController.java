@@ -1,22 +1,98 @@
 package ma.emsi.dhissiayman.tp4.analytics.web;
 
 import ma.emsi.dhissiayman.tp4.analytics.service.AnalyticsService;
+import ma.emsi.dhissiayman.tp4.analytics.service.AnalyticsStreamPublisher;
+import ma.emsi.dhissiayman.tp4.analytics.service.SketchAnalyticsService;
+import ma.emsi.dhissiayman.tp4.analytics.service.WindowedAnalyticsService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
 public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
+    private final WindowedAnalyticsService windowedAnalyticsService;
+    private final SketchAnalyticsService sketchAnalyticsService;
+    private final AnalyticsStreamPublisher analyticsStreamPublisher;
 
-    public AnalyticsController(AnalyticsService analyticsService) {
+    public AnalyticsController(AnalyticsService analyticsService,
+                               WindowedAnalyticsService windowedAnalyticsService,
+                               SketchAnalyticsService sketchAnalyticsService,
+                               AnalyticsStreamPublisher analyticsStreamPublisher) {
         this.analyticsService = analyticsService;
+        this.windowedAnalyticsService = windowedAnalyticsService;
+        this.sketchAnalyticsService = sketchAnalyticsService;
+        this.analyticsStreamPublisher = analyticsStreamPublisher;
     }
 
     @GetMapping("/analytics")
-    public Map<String, Long> getAnalytics() {
+    public Map<String, Object> getAnalytics() {
         return analyticsService.getAnalyticsData();
     }
+
+    /**
+     * Live analytics as server-sent events
+     * GET /analytics/stream
+     * One "snapshot" event with every counter, then "delta" events with the counters that changed
+     */
+    @GetMapping(path = "/analytics/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAnalytics() {
+        return analyticsStreamPublisher.subscribe();
+    }
+
+    /**
+     * Windowed bill analytics
+     * GET /analytics/windows?granularity=minute|hour|day&last=N&top=K
+     * Returns the last N tumbling windows and their sliding aggregate (with the top K products)
+     */
+    @GetMapping("/analytics/windows")
+    public ResponseEntity<Map<String, Object>> getWindows(@RequestParam(defaultValue = "minute") String granularity,
+                                                          @RequestParam(defaultValue = "60") int last,
+                                                          @RequestParam(defaultValue = "10") int top) {
+        WindowedAnalyticsService.Granularity parsed;
+        try {
+            parsed = WindowedAnalyticsService.Granularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "Unknown granularity '" + granularity + "', expected minute, hour or day"));
+        }
+        return ResponseEntity.ok(windowedAnalyticsService.query(parsed, last, Math.max(0, top)));
+    }
+
+    /**
+     * Approximate distinct customers (HyperLogLog)
+     * GET /analytics/customers/distinct?granularity=hour|day&last=N
+     */
+    @GetMapping("/analytics/customers/distinct")
+    public ResponseEntity<Map<String, Object>> getDistinctCustomers(@RequestParam(defaultValue = "hour") String granularity,
+                                                                    @RequestParam(defaultValue = "1") int last) {
+        WindowedAnalyticsService.Granularity parsed;
+        try {
+            parsed = WindowedAnalyticsService.Granularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            parsed = null;
+        }
+        if (parsed != WindowedAnalyticsService.Granularity.HOUR && parsed != WindowedAnalyticsService.Granularity.DAY) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "Unknown granularity '" + granularity + "', expected hour or day"));
+        }
+        return ResponseEntity.ok(sketchAnalyticsService.distinctCustomers(parsed, last));
+    }
+
+    /**
+     * Approximate top products by revenue (Space-Saving + Count-Min)
+     * GET /analytics/products/top?days=N&k=K
+     */
+    @GetMapping("/analytics/products/top")
+    public Map<String, Object> getTopProducts(@RequestParam(defaultValue = "1") int days,
+                                              @RequestParam(defaultValue = "20") int k) {
+        return sketchAnalyticsService.topProductsByRevenue(days, Math.max(0, k));
+    }
 }
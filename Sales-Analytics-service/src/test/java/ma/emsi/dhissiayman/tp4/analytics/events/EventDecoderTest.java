@@ -0,0 +1,76 @@
+package ma.emsi.dhissiayman.tp4.analytics.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Decoding of the bytes produced by BillEventCodec (Billing-service) and
+ * SupplierEventCodec (Supplier-service): the hex strings are the ones their tests encode.
+ */
+class EventDecoderTest {
+
+    private static final String BILL = "012a0780d095ffbc31404dfc28f5c28f5c0203502d31034033fd70a3d70a3d"
+            + "05436166c3a9010000000000000000";
+    private static final String SUPPLIER = "01ac0280d095ffbc310541636dc3a90f636f6e746163744061636d652e6d61";
+
+    @Test
+    void decodesBillEncodedByBillingService() {
+        BillEvent event = EventDecoder.decodeBill(bytes(BILL));
+
+        assertThat(event).isEqualTo(new BillEvent(42, 7, 1_700_000_000_000L, 59.97, List.of(
+                new BillEvent.LineItem("P-1", 3, 19.99),
+                new BillEvent.LineItem("Café", 1, 0.0))));
+    }
+
+    @Test
+    void decodesSupplierEncodedBySupplierService() {
+        SupplierEvent event = EventDecoder.decodeSupplier(bytes(SUPPLIER));
+
+        assertThat(event).isEqualTo(new SupplierEvent(300, 1_700_000_000_000L, "Acmé", "contact@acme.ma"));
+    }
+
+    @Test
+    void ignoresFieldsAppendedByNewerVersions() {
+        byte[] newer = bytes("02" + BILL.substring(2) + "0505");
+
+        assertThat(EventDecoder.decodeBill(newer).lineItems()).hasSize(2);
+    }
+
+    @Test
+    void rejectsTruncatedEvents() {
+        byte[] bill = bytes(BILL);
+        byte[] supplier = bytes(SUPPLIER);
+
+        assertThatThrownBy(() -> EventDecoder.decodeBill(Arrays.copyOf(bill, bill.length - 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EventDecoder.decodeSupplier(Arrays.copyOf(supplier, supplier.length - 3)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsItemCountLargerThanTheRemainingBytes() {
+        // Header of a bill claiming 2^31 - 1 line items, followed by a single byte
+        byte[] corrupt = bytes("01" + "010203" + "0000000000000000" + "ffffffff07" + "00");
+
+        assertThatThrownBy(() -> EventDecoder.decodeBill(corrupt))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Truncated bill event");
+    }
+
+    @Test
+    void rejectsOlderVersions() {
+        assertThatThrownBy(() -> EventDecoder.decodeBill(bytes("00" + BILL.substring(2))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("version");
+    }
+
+    private static byte[] bytes(String hex) {
+        return HexFormat.of().parseHex(hex);
+    }
+}
@@ -0,0 +1,73 @@
+package ma.emsi.dhissiayman.tp4.analytics.metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of one counter increment per bill event: the former
+ * ConcurrentHashMap.merge("Total Bills", 1L, Long::sum) against StripedCounterRegistry
+ *
+ * Run with the test classpath, e.g. from the IDE, or
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=ma.emsi.dhissiayman.tp4.analytics.metrics.CounterContentionBenchmark
+ * The main method runs both benchmarks at 1, 2, 4, 8, 16 and 32 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterContentionBenchmark {
+
+    private final Map<String, Long> analyticsData = new ConcurrentHashMap<>();
+    private final StripedCounterRegistry registry = new StripedCounterRegistry();
+    private final StripedCounterRegistry.LongCounter totalBills = registry.longCounter("Total Bills");
+    private final StripedCounterRegistry.DoubleCounter totalRevenue = registry.doubleCounter("Total Revenue");
+
+    @Benchmark
+    public Long mapMerge() {
+        return analyticsData.merge("Total Bills", 1L, Long::sum);
+    }
+
+    @Benchmark
+    public void stripedAdd() {
+        registry.add(totalBills, 1);
+    }
+
+    /**
+     * Two counters updated together, as AnalyticsService does per batch
+     */
+    @Benchmark
+    public void stripedUpdate() {
+        registry.update(updater -> {
+            updater.add(totalBills, 1);
+            updater.add(totalRevenue, 42.5);
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32}) {
+            Options options = new OptionsBuilder()
+                    .include(CounterContentionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ma.emsi.dhissiayman.tp4.analytics.service;
+
+import ma.emsi.dhissiayman.tp4.analytics.events.BillEvent;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SketchAnalyticsServiceTest {
+
+    @Test
+    void snapshotRoundTripsAcrossShardCounts() throws IOException {
+        SketchAnalyticsService service = service(14, 2048, 4);
+        service.recordAll(bills(500));
+
+        SketchAnalyticsService restored = service(14, 2048, 1);
+        restored.readState(snapshot(service));
+
+        assertThat(restored.distinctCustomers(WindowedAnalyticsService.Granularity.DAY, 1))
+                .isEqualTo(service.distinctCustomers(WindowedAnalyticsService.Granularity.DAY, 1));
+        assertThat(restored.topProductsByRevenue(1, 3)).isEqualTo(service.topProductsByRevenue(1, 3));
+    }
+
+    @Test
+    void dropsStoredSketchesOfAnotherPrecisionOrSize() throws IOException {
+        SketchAnalyticsService service = service(12, 1024, 2);
+        service.recordAll(bills(500));
+
+        SketchAnalyticsService restored = service(14, 2048, 2);
+        restored.readState(snapshot(service));
+        restored.recordAll(bills(10));
+
+        // Only the sketches recorded after the restore are left, and they merge
+        Map<String, Object> customers = restored.distinctCustomers(WindowedAnalyticsService.Granularity.HOUR, 1);
+        assertThat(customers.get("distinctCustomers")).isEqualTo(10L);
+        Map<String, Object> products = restored.topProductsByRevenue(1, 3);
+        assertThat((List<?>) products.get("products")).hasSize(3);
+        assertThat(products).containsKey("countMinErrorBound");
+    }
+
+    private static SketchAnalyticsService service(int hllPrecision, int countMinWidth, int shards) {
+        return new SketchAnalyticsService(hllPrecision, 64, countMinWidth, 4, 48, 31, shards);
+    }
+
+    private static DataInputStream snapshot(SketchAnalyticsService service) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        service.writeState(new DataOutputStream(bytes));
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static List<BillEvent> bills(int customers) {
+        long now = System.currentTimeMillis();
+        return LongStream.range(0, customers)
+                .mapToObj(customer -> new BillEvent(customer, customer, now, 0, List.of(
+                        new BillEvent.LineItem("P-" + customer % 5, 1, 10.0 * (customer % 5 + 1)))))
+                .toList();
+    }
+}
@@ -0,0 +1,65 @@
+package ma.emsi.dhissiayman.tp4.analytics.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountMinSketchTest {
+
+    private static final int PRODUCTS = 20_000;
+
+    @Test
+    void neverUnderestimatesAndRarelyExceedsTheErrorBound() {
+        CountMinSketch sketch = new CountMinSketch(2048, 5);
+        double[] revenue = zipfRevenue(sketch, new Random(7));
+
+        int beyondBound = 0;
+        for (int product = 0; product < PRODUCTS; product++) {
+            double estimate = sketch.estimate(Hashing.hash("P-" + product));
+            assertThat(estimate).isGreaterThanOrEqualTo(revenue[product] - 1e-6);
+            if (estimate - revenue[product] > sketch.errorBound()) {
+                beyondBound++;
+            }
+        }
+        // The bound holds with probability 1 - e^-5, about 99.3%
+        assertThat(beyondBound).isLessThanOrEqualTo((int) (PRODUCTS * (1 - sketch.confidence()) * 2));
+    }
+
+    @Test
+    void mergeMatchesASingleSketch() {
+        CountMinSketch single = new CountMinSketch(512, 4);
+        CountMinSketch first = new CountMinSketch(512, 4);
+        CountMinSketch second = new CountMinSketch(512, 4);
+        Random random = new Random(11);
+        for (int i = 0; i < 50_000; i++) {
+            long hash = Hashing.hash("P-" + random.nextInt(5_000));
+            double weight = 1 + random.nextInt(100);
+            single.add(hash, weight);
+            (i % 2 == 0 ? first : second).add(hash, weight);
+        }
+
+        first.merge(second);
+
+        assertThat(first.totalWeight()).isEqualTo(single.totalWeight());
+        for (int product = 0; product < 5_000; product++) {
+            long hash = Hashing.hash("P-" + product);
+            assertThat(first.estimate(hash)).isEqualTo(single.estimate(hash));
+        }
+    }
+
+    /** Zipf-like revenue: product i sells about 1 / (i + 1) as much as product 0 */
+    private static double[] zipfRevenue(CountMinSketch sketch, Random random) {
+        double[] revenue = new double[PRODUCTS];
+        for (int product = 0; product < PRODUCTS; product++) {
+            int sales = 1 + (int) (2_000.0 / (product + 1));
+            for (int sale = 0; sale < sales; sale++) {
+                double amount = 1 + random.nextInt(50);
+                revenue[product] += amount;
+                sketch.add(Hashing.hash("P-" + product), amount);
+            }
+        }
+        return revenue;
+    }
+}
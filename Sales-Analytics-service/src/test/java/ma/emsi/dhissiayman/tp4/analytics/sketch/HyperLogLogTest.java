@@ -0,0 +1,60 @@
+package ma.emsi.dhissiayman.tp4.analytics.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimatesStayWithinThreeStandardErrors() {
+        for (int cardinality : new int[]{100, 1_000, 10_000, 100_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog(14);
+            for (long customer = 0; customer < cardinality; customer++) {
+                sketch.add(Hashing.hash(customer));
+                // Duplicates must not move the estimate
+                sketch.add(Hashing.hash(customer));
+            }
+            double error = Math.abs(sketch.estimate() - cardinality) / (double) cardinality;
+            assertThat(error).as("cardinality %d", cardinality).isLessThan(3 * sketch.relativeStandardError());
+        }
+    }
+
+    @Test
+    void smallRegisterCountsUseTheirOwnAlpha() {
+        // Every register at rank 10: the estimate is alpha * m * 2^10
+        assertThat(withEveryRegisterAt(4, 10).estimate()).isEqualTo(Math.round(0.673 * 16 * 1024));
+        assertThat(withEveryRegisterAt(5, 10).estimate()).isEqualTo(Math.round(0.697 * 32 * 1024));
+        assertThat(withEveryRegisterAt(6, 10).estimate()).isEqualTo(Math.round(0.709 * 64 * 1024));
+        assertThat(withEveryRegisterAt(7, 10).estimate()).isEqualTo(Math.round(0.7213 / (1 + 1.079 / 128) * 128 * 1024));
+    }
+
+    @Test
+    void mergeEstimatesTheUnion() {
+        HyperLogLog first = new HyperLogLog(12);
+        HyperLogLog second = new HyperLogLog(12);
+        HyperLogLog union = new HyperLogLog(12);
+        for (long customer = 0; customer < 30_000; customer++) {
+            // 10 000 customers are seen by both
+            (customer < 20_000 ? first : second).add(Hashing.hash(customer));
+            if (customer >= 10_000 && customer < 20_000) {
+                second.add(Hashing.hash(customer));
+            }
+            union.add(Hashing.hash(customer));
+        }
+
+        first.merge(second);
+
+        assertThat(first.estimate()).isEqualTo(union.estimate());
+        assertThatThrownBy(() -> first.merge(new HyperLogLog(14))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static HyperLogLog withEveryRegisterAt(int precision, int rank) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (long index = 0; index < 1 << precision; index++) {
+            sketch.add(index << (64 - precision) | 1L << (64 - precision - rank));
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,107 @@
+package ma.emsi.dhissiayman.tp4.analytics.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+class SpaceSavingTest {
+
+    private static final int CAPACITY = 100;
+    private static final int PRODUCTS = 10_000;
+
+    @Test
+    void keepsEveryHeavyHitterWithinItsErrorBounds() {
+        SpaceSaving sketch = new SpaceSaving(CAPACITY);
+        Map<String, Double> revenue = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 200_000; i++) {
+            String product = zipfProduct(random);
+            double amount = 1 + random.nextInt(20);
+            sketch.add(product, amount);
+            revenue.merge(product, amount, Double::sum);
+        }
+
+        assertGuarantees(sketch, revenue);
+        // The summary is skewed enough for its top 10 to be the exact top 10
+        List<String> exactTop = revenue.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(10).map(Map.Entry::getKey).toList();
+        assertThat(sketch.top(10).stream().map(SpaceSaving.Counter::item).toList()).isEqualTo(exactTop);
+    }
+
+    @Test
+    void mergedSummariesKeepTheGuarantees() {
+        SpaceSaving first = new SpaceSaving(CAPACITY);
+        SpaceSaving second = new SpaceSaving(CAPACITY);
+        Map<String, Double> revenue = new HashMap<>();
+        Random random = new Random(9);
+        for (int i = 0; i < 100_000; i++) {
+            String product = zipfProduct(random);
+            double amount = 1 + random.nextInt(20);
+            (i % 3 == 0 ? first : second).add(product, amount);
+            revenue.merge(product, amount, Double::sum);
+        }
+
+        first.merge(second);
+
+        assertGuarantees(first, revenue);
+    }
+
+    @Test
+    void replacesTheLightestCounterAfterARoundTrip() throws IOException {
+        SpaceSaving sketch = new SpaceSaving(3);
+        sketch.add("a", 5);
+        sketch.add("b", 1);
+        sketch.add("c", 3);
+        sketch.add("a", 1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.writeTo(new DataOutputStream(bytes));
+        SpaceSaving restored = SpaceSaving.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        restored.add("d", 2);
+
+        assertThat(restored.top(3)).containsExactly(
+                new SpaceSaving.Counter("a", 6, 0),
+                new SpaceSaving.Counter("d", 3, 1),
+                new SpaceSaving.Counter("c", 3, 0));
+        assertThat(restored.totalWeight()).isEqualTo(12);
+    }
+
+    private static void assertGuarantees(SpaceSaving sketch, Map<String, Double> revenue) {
+        double total = revenue.values().stream().mapToDouble(Double::doubleValue).sum();
+        assertThat(sketch.totalWeight()).isCloseTo(total, offset(1e-6));
+        List<SpaceSaving.Counter> tracked = sketch.top(CAPACITY);
+        assertThat(tracked).hasSizeLessThanOrEqualTo(CAPACITY)
+                .isSortedAccordingTo(Comparator.comparingDouble(SpaceSaving.Counter::weight).reversed());
+        for (SpaceSaving.Counter counter : tracked) {
+            double exact = revenue.get(counter.item());
+            assertThat(counter.weight() - counter.error()).isLessThanOrEqualTo(exact + 1e-6);
+            assertThat(counter.weight()).isGreaterThanOrEqualTo(exact - 1e-6);
+            assertThat(counter.error()).isLessThanOrEqualTo(total / CAPACITY + 1e-6);
+        }
+        Map<String, SpaceSaving.Counter> byItem = new HashMap<>();
+        tracked.forEach(counter -> byItem.put(counter.item(), counter));
+        revenue.forEach((product, exact) -> {
+            if (exact > total / CAPACITY) {
+                assertThat(byItem).as(product).containsKey(product);
+            }
+        });
+    }
+
+    /** Product i is drawn with probability about proportional to 1 / (i + 1) */
+    private static String zipfProduct(Random random) {
+        return "P-" + Math.min(PRODUCTS - 1, (int) Math.exp(random.nextDouble() * Math.log(PRODUCTS)) - 1);
+    }
+}
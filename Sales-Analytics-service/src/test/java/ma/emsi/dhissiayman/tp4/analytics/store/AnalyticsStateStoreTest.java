@@ -0,0 +1,162 @@
+package ma.emsi.dhissiayman.tp4.analytics.store;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Recovery of the analytics state store: reopen, changelog replay, torn tail,
+ * snapshot plus changelog, redelivered and failed batches.
+ * A store that is not closed stands for a crash.
+ */
+class AnalyticsStateStoreTest {
+
+    private static final String TOPIC = "bill-topic";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysChangelogAfterCrash() {
+        AnalyticsStateStore store = open(new EventsHandler());
+        store.commit(TOPIC, List.of(record(0, 0, "a"), record(0, 1, "b")));
+        store.commit(TOPIC, List.of(record(1, 0, "c")));
+
+        EventsHandler restored = new EventsHandler();
+        AnalyticsStateStore reopened = open(restored);
+
+        assertThat(restored.events).containsExactly("a", "b", "c");
+        assertThat(reopened.offset(new TopicPartition(TOPIC, 0))).contains(2L);
+        assertThat(reopened.offset(new TopicPartition(TOPIC, 1))).contains(1L);
+    }
+
+    @Test
+    void truncatesTornTailAndKeepsAppending() throws IOException {
+        AnalyticsStateStore store = open(new EventsHandler());
+        store.commit(TOPIC, List.of(record(0, 0, "a")));
+        Path changelog = directory.resolve("changelog.log");
+        long validSize = Files.size(changelog);
+        // Half-written record: a length header announcing more bytes than follow
+        Files.write(changelog, new byte[]{0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        EventsHandler restored = new EventsHandler();
+        AnalyticsStateStore reopened = open(restored);
+        assertThat(restored.events).containsExactly("a");
+        assertThat(Files.size(changelog)).isEqualTo(validSize);
+
+        reopened.commit(TOPIC, List.of(record(0, 1, "b")));
+        EventsHandler again = new EventsHandler();
+        open(again);
+        assertThat(again.events).containsExactly("a", "b");
+    }
+
+    @Test
+    void replaysOnlyBatchesAfterTheSnapshot() throws IOException {
+        AnalyticsStateStore store = open(new EventsHandler());
+        store.commit(TOPIC, List.of(record(0, 0, "a"), record(0, 1, "b")));
+        store.snapshot();
+        assertThat(Files.size(directory.resolve("changelog.log"))).isZero();
+        store.commit(TOPIC, List.of(record(0, 2, "c")));
+
+        EventsHandler restored = new EventsHandler();
+        AnalyticsStateStore reopened = open(restored);
+
+        assertThat(restored.restoredFromSnapshot).containsExactly("a", "b");
+        assertThat(restored.events).containsExactly("a", "b", "c");
+        assertThat(reopened.offset(new TopicPartition(TOPIC, 0))).contains(3L);
+        reopened.close();
+
+        EventsHandler afterClose = new EventsHandler();
+        open(afterClose);
+        assertThat(afterClose.restoredFromSnapshot).containsExactly("a", "b", "c");
+        assertThat(afterClose.events).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void skipsRedeliveredRecords() {
+        EventsHandler handler = new EventsHandler();
+        AnalyticsStateStore store = open(handler);
+        store.commit(TOPIC, List.of(record(0, 0, "a"), record(0, 1, "b")));
+        store.commit(TOPIC, List.of(record(0, 1, "b"), record(0, 2, "c")));
+
+        assertThat(handler.events).containsExactly("a", "b", "c");
+        EventsHandler restored = new EventsHandler();
+        open(restored);
+        assertThat(restored.events).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void failedApplyIsNotLoggedSoItsRedeliveryCountsOnce() {
+        EventsHandler handler = new EventsHandler();
+        handler.failNext = true;
+        AnalyticsStateStore store = open(handler);
+        List<AnalyticsStateStore.Record> batch = List.of(record(0, 0, "a"));
+
+        assertThatThrownBy(() -> store.commit(TOPIC, batch)).isInstanceOf(IllegalStateException.class);
+        assertThat(store.offset(new TopicPartition(TOPIC, 0))).isEqualTo(Optional.empty());
+        store.commit(TOPIC, batch);
+
+        EventsHandler restored = new EventsHandler();
+        open(restored);
+        assertThat(restored.events).containsExactly("a");
+    }
+
+    private AnalyticsStateStore open(EventsHandler handler) {
+        AnalyticsStateStore store = new AnalyticsStateStore(directory.toString(), true);
+        store.open(handler);
+        return store;
+    }
+
+    private static AnalyticsStateStore.Record record(int partition, long offset, String value) {
+        return new AnalyticsStateStore.Record(partition, offset, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Keeps every applied event, in order
+     */
+    private static class EventsHandler implements AnalyticsStateStore.StateHandler {
+        final List<String> events = new ArrayList<>();
+        final List<String> restoredFromSnapshot = new ArrayList<>();
+        boolean failNext;
+
+        @Override
+        public synchronized void apply(String topic, List<byte[]> batch) {
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("apply failed");
+            }
+            batch.forEach(event -> events.add(new String(event, StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public void writeState(DataOutput out) throws IOException {
+            out.writeInt(events.size());
+            for (String event : events) {
+                out.writeUTF(event);
+            }
+        }
+
+        @Override
+        public void readState(DataInput in) throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                restoredFromSnapshot.add(in.readUTF());
+            }
+            events.addAll(restoredFromSnapshot);
+        }
+    }
+}
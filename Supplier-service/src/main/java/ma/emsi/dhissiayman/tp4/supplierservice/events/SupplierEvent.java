@@ -0,0 +1,7 @@
+package ma.emsi.dhissiayman.tp4.supplierservice.events;
+
+/**
+ * Payload of supplier-topic messages, encoded with {@link SupplierEventCodec}
+ */
+public record SupplierEvent(long supplierId, long createdAt, String name, String email) {
+}
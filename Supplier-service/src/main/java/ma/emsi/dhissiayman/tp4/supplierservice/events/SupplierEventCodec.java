@@ -0,0 +1,51 @@
+package ma.emsi.dhissiayman.tp4.supplierservice.events;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoder of supplier-topic messages
+ *
+ * Layout (version 1), integers as unsigned LEB128 varints:
+ * <pre>
+ * version:byte supplierId:varint createdAt:varint(epoch ms) name:string email:string
+ * string = length:varint utf8-bytes
+ * </pre>
+ * New versions only append fields, so a reader decodes any version at least
+ * equal to its own and ignores the trailing bytes it does not know.
+ * Decoded by EventDecoder in Sales-Analytics-service; SupplierEventCodecTest and
+ * EventDecoderTest pin the same bytes on both sides.
+ */
+public final class SupplierEventCodec {
+    public static final byte VERSION = 1;
+
+    private SupplierEventCodec() {
+    }
+
+    public static byte[] encode(SupplierEvent event) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(VERSION);
+        writeVarLong(out, event.supplierId());
+        writeVarLong(out, event.createdAt());
+        writeString(out, event.name());
+        writeString(out, event.email());
+        return out.toByteArray();
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] utf8 = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, utf8.length);
+        out.writeBytes(utf8);
+    }
+}
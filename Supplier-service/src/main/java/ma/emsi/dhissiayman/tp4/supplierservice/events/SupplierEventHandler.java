@@ -11,16 +11,18 @@ import org.springframework.stereotype.Component;
 @Component
 @RepositoryEventHandler(Supplier.class)
 public class SupplierEventHandler {
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
     private static final Logger logger = LoggerFactory.getLogger(SupplierEventHandler.class);
 
-    public SupplierEventHandler(KafkaTemplate<String, String> kafkaTemplate) {
+    public SupplierEventHandler(KafkaTemplate<String, byte[]> kafkaTemplate) {
         this.kafkaTemplate = kafkaTemplate;
     }
 
     @HandleAfterCreate
     public void handleSupplierCreate(Supplier supplier) {
         logger.info("New supplier created: {}", supplier.getName());
-        kafkaTemplate.send("supplier-topic", "New Supplier Created: " + supplier.getName());
+        SupplierEvent event = new SupplierEvent(supplier.getId(), System.currentTimeMillis(),
+                supplier.getName(), supplier.getEmail());
+        kafkaTemplate.send("supplier-topic", String.valueOf(supplier.getId()), SupplierEventCodec.encode(event));
     }
 }
@@ -0,0 +1,29 @@
+package ma.emsi.dhissiayman.tp4.supplierservice.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Wire format of supplier-topic messages. Sales-Analytics-service EventDecoderTest decodes
+ * the same bytes back into this event, which makes the round trip across both services.
+ */
+class SupplierEventCodecTest {
+
+    static final SupplierEvent EVENT = new SupplierEvent(300, 1_700_000_000_000L, "Acmé", "contact@acme.ma");
+    static final String ENCODED = "01ac0280d095ffbc310541636dc3a90f636f6e746163744061636d652e6d61";
+
+    @Test
+    void encodesVersionVarintsAndStrings() {
+        assertThat(HexFormat.of().formatHex(SupplierEventCodec.encode(EVENT))).isEqualTo(ENCODED);
+    }
+
+    @Test
+    void encodesMissingEmailAsEmptyString() {
+        byte[] bytes = SupplierEventCodec.encode(new SupplierEvent(1, 2, "A", null));
+
+        assertThat(HexFormat.of().formatHex(bytes)).isEqualTo("010102014100");
+    }
+}
@@ -0,0 +1,16 @@
+package org.sid.customerservice.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+public class KafkaConfig {
+
+    @Bean
+    public NewTopic customerTopic() {
+        return TopicBuilder.name("customer-topic")
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package org.sid.customerservice.events;
+
+import org.sid.customerservice.entities.Customer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the id of every updated or deleted customer on customer-topic
+ * Billing-service listens to it to invalidate its customer near-cache
+ */
+@Component
+@RepositoryEventHandler(Customer.class)
+public class CustomerEventHandler {
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private static final Logger logger = LoggerFactory.getLogger(CustomerEventHandler.class);
+
+    public CustomerEventHandler(KafkaTemplate<String, String> kafkaTemplate) {
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+    @HandleAfterSave
+    public void handleCustomerSave(Customer customer) {
+        publishChange(customer);
+    }
+
+    @HandleAfterDelete
+    public void handleCustomerDelete(Customer customer) {
+        publishChange(customer);
+    }
+
+    private void publishChange(Customer customer) {
+        logger.info("Customer changed: {}", customer.getId());
+        String id = String.valueOf(customer.getId());
+        kafkaTemplate.send("customer-topic", id, id);
+    }
+}
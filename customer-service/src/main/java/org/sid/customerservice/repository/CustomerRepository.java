@@ -2,9 +2,20 @@ package org.sid.customerservice.repository;
 
 import org.sid.customerservice.entities.Customer;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
+
+import java.util.Collection;
+import java.util.List;
 
 @RepositoryRestResource
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
 
+    /**
+     * Bulk lookup used by Billing-service to enrich many bills at once
+     * GET /api/customers/search/byIds?ids=1&ids=2
+     */
+    @RestResource(path = "byIds", rel = "byIds")
+    List<Customer> findByIdIn(@Param("ids") Collection<Long> ids);
 }